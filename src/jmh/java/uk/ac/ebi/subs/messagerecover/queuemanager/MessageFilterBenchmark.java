@@ -0,0 +1,62 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building the QDB query string with {@link MessageFilter}
+ * and evaluating the criteria on a message with {@link LocalMessageFilter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageFilterBenchmark {
+
+    private MessageFilter messageFilter;
+    private LocalMessageFilter localMessageFilter;
+    private MessageToReplay message;
+
+    @Setup
+    public void setup() {
+        RecoverProperties.QdbProp.MessageFilter messageFilterProperties = new RecoverProperties.QdbProp.MessageFilter();
+        messageFilterProperties.setGrep("sample\\d+");
+        messageFilterProperties.setFrom("2017-09-29T08:00:00Z");
+        messageFilterProperties.setTo("2017-09-29T10:00:00Z");
+        messageFilterProperties.setRoutingKey("usi.sample.submitted");
+        messageFilterProperties.setRoutingKeyPattern("usi.*.#");
+        messageFilterProperties.getBodyConditions().put("$.submission.id", "sub_\\d+");
+
+        messageFilter = new MessageFilter(messageFilterProperties);
+        messageFilter.setLimit("1000");
+        localMessageFilter = new LocalMessageFilter(messageFilterProperties);
+
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setRoutingKey("usi.sample.submitted");
+        messageProperties.setTimestamp("1506675600000");
+        message = new MessageToReplay(messageProperties, SyntheticQDBResponse.buildPayload(4096));
+    }
+
+    @Benchmark
+    public String toQueryString() {
+        return messageFilter.toQueryString();
+    }
+
+    @Benchmark
+    public boolean testMessageLocally() {
+        return localMessageFilter.test(message);
+    }
+}
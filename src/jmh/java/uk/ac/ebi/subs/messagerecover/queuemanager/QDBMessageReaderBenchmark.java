@@ -0,0 +1,49 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures reading and parsing a whole QDB response with {@link QDBMessageReader}.
+ * The response is generated while it is read, the generation is a plain array copy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QDBMessageReaderBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    private long messageCount;
+
+    @Param({"256", "4096"})
+    private int payloadSize;
+
+    @Benchmark
+    public long readResponse(Blackhole blackhole) throws IOException {
+        long readMessageCount = 0;
+        try (QDBMessageReader messageReader =
+                     new QDBMessageReader(SyntheticQDBResponse.openResponse(messageCount, payloadSize))) {
+            while (messageReader.hasNext()) {
+                blackhole.consume(messageReader.next());
+                readMessageCount++;
+            }
+        }
+
+        return readMessageCount;
+    }
+}
@@ -0,0 +1,60 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the decoding of a single QDB record by {@link QDBRecordDecoder}
+ * with the previous String based parsing, which created a new ObjectMapper for every message.
+ * Run it with the gc profiler (enabled in build.gradle) to see the allocation per message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QDBRecordDecoderBenchmark {
+
+    @Param({"256", "4096", "65536"})
+    private int payloadSize;
+
+    private byte[] record;
+    private String recordString;
+    private QDBRecordDecoder recordDecoder;
+
+    @Setup
+    public void setup() {
+        recordString = SyntheticQDBResponse.buildRecord(1, "usi.sample.submitted", payloadSize);
+        record = recordString.getBytes(StandardCharsets.UTF_8);
+        recordDecoder = new QDBRecordDecoder();
+    }
+
+    @Benchmark
+    public MessageToReplay decodeFromBytes() {
+        return recordDecoder.decode(record, 0, record.length);
+    }
+
+    @Benchmark
+    public MessageToReplay parseWithObjectMapperPerMessage() throws IOException {
+        String[] lines = recordString.split("\n");
+        String header = lines[0].substring(lines[0].indexOf(":{") + 1);
+        MessageProperties messageProperties = new ObjectMapper().readValue(header, MessageProperties.class);
+
+        return new MessageToReplay(messageProperties, lines[1]);
+    }
+}
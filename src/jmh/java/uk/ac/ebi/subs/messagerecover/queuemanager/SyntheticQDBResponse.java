@@ -0,0 +1,120 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds QDB responses with generated messages for the benchmarks.
+ */
+public final class SyntheticQDBResponse {
+
+    private SyntheticQDBResponse() {
+    }
+
+    /**
+     * Builds a QDB response holding the given number of messages separated like QDB does.
+     *
+     * @param messageCount the number of the messages
+     * @param payloadSize the approximate size of the JSON body of a message in bytes
+     * @return the bytes of the response
+     */
+    public static byte[] buildResponse(int messageCount, int payloadSize) {
+        String payload = buildPayload(payloadSize);
+        StringBuilder response = new StringBuilder(messageCount * (payload.length() + 200));
+        for (int i = 1; i <= messageCount; i++) {
+            response.append(buildHeader(i, "usi.sample.submitted", payload.length()))
+                    .append('\n')
+                    .append(payload)
+                    .append(QDBMessageReader.ENCODED_MESSAGE_SEPARATOR);
+        }
+
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Opens a QDB response holding the given number of copies of the same message.
+     * The response is generated while it is read, so even a response of millions of messages
+     * does not have to fit in the memory.
+     *
+     * @param messageCount the number of the messages
+     * @param payloadSize the approximate size of the JSON body of a message in bytes
+     * @return the stream of the response
+     */
+    public static InputStream openResponse(long messageCount, int payloadSize) {
+        byte[] record = (buildRecord(1, "usi.sample.submitted", payloadSize)
+                + QDBMessageReader.ENCODED_MESSAGE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+
+        return new RepeatingInputStream(record, messageCount);
+    }
+
+    /**
+     * Builds a single QDB record with a properties line and a JSON body.
+     */
+    public static String buildRecord(long id, String routingKey, int payloadSize) {
+        String payload = buildPayload(payloadSize);
+
+        return buildHeader(id, routingKey, payload.length()) + "\n" + payload;
+    }
+
+    /**
+     * Builds a submission like JSON document of roughly the given size.
+     */
+    public static String buildPayload(int payloadSize) {
+        StringBuilder payload = new StringBuilder(payloadSize + 64)
+                .append("{\"submission\":{\"id\":\"sub_1\"},\"samples\":[");
+        int sampleIndex = 0;
+        while (payload.length() < payloadSize) {
+            if (sampleIndex > 0) {
+                payload.append(',');
+            }
+            payload.append("{\"alias\":\"sample").append(sampleIndex)
+                    .append("\",\"taxonId\":9606,\"title\":\"synthetic sample ").append(sampleIndex).append("\"}");
+            sampleIndex++;
+        }
+
+        return payload.append("]}").toString();
+    }
+
+    private static String buildHeader(long id, String routingKey, int payloadSize) {
+        return String.format("%d:{\"id\":%d,\"timestamp\":\"1506675200000\",\"payloadSize\":%d,\"routingKey\":\"%s\"}",
+                id, id, payloadSize, routingKey);
+    }
+
+    private static class RepeatingInputStream extends InputStream {
+        private final byte[] record;
+        private long remainingRecordCount;
+        private int position;
+
+        private RepeatingInputStream(byte[] record, long recordCount) {
+            this.record = record;
+            this.remainingRecordCount = recordCount;
+        }
+
+        @Override
+        public int read() {
+            byte[] value = new byte[1];
+            return read(value, 0, 1) < 0 ? -1 : value[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (remainingRecordCount == 0) {
+                return -1;
+            }
+
+            int readByteCount = 0;
+            while (readByteCount < length && remainingRecordCount > 0) {
+                int copiedByteCount = Math.min(length - readByteCount, record.length - position);
+                System.arraycopy(record, position, buffer, offset + readByteCount, copiedByteCount);
+                readByteCount += copiedByteCount;
+                position += copiedByteCount;
+                if (position == record.length) {
+                    position = 0;
+                    remainingRecordCount--;
+                }
+            }
+
+            return readByteCount;
+        }
+    }
+}
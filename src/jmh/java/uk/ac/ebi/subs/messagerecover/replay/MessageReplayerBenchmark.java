@@ -0,0 +1,96 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.CorrelationData;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+import uk.ac.ebi.subs.messagerecover.queuemanager.SyntheticQDBResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures replaying messages through a {@link RabbitMessagingTemplate} whose {@link RabbitTemplate} does not
+ * send the messages anywhere, so the cost of the message conversion and of the replayers is measured
+ * without the broker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageReplayerBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    @Param({"256", "4096"})
+    private int payloadSize;
+
+    private MessageReplayer messageReplayer;
+    private List<MessageToReplay> messages;
+    private LongAdder deliveredMessageCount = new LongAdder();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        RabbitMessagingTemplate rabbitMessagingTemplate = new RabbitMessagingTemplate(new StubRabbitTemplate());
+        rabbitMessagingTemplate.afterPropertiesSet();
+
+        messageReplayer = parallelism <= 1
+                ? new SimpleMessageReplayer(rabbitMessagingTemplate, "benchmark-exchange")
+                : new ShardedMessageReplayer(
+                        () -> new SimpleMessageReplayer(rabbitMessagingTemplate, "benchmark-exchange"),
+                        parallelism, BATCH_SIZE, new ShardKeyExtractor(null));
+
+        String payload = SyntheticQDBResponse.buildPayload(payloadSize);
+        messages = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MessageToReplay message = new MessageToReplay("usi.sample." + (i % 16), payload);
+            message.setBodyToReplay(payload);
+            messages.add(message);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        messageReplayer.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void replayBatch() {
+        for (MessageToReplay message : messages) {
+            messageReplayer.replay(message, deliveredMessage -> deliveredMessageCount.increment());
+        }
+        messageReplayer.flush();
+    }
+
+    private static class StubRabbitTemplate extends RabbitTemplate {
+        private final LongAdder sentBytes = new LongAdder();
+
+        @Override
+        public void send(String exchange, String routingKey, Message message, CorrelationData correlationData) {
+            sentBytes.add(message.getBody().length);
+        }
+    }
+}
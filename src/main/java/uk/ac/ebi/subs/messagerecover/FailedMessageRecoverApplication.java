@@ -6,10 +6,15 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
-import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.MetricsReporter;
+import uk.ac.ebi.subs.messagerecover.service.DirectDeadLetterQueueRecoverer;
+import uk.ac.ebi.subs.messagerecover.service.LoadGenerator;
 import uk.ac.ebi.subs.messagerecover.service.MessageRecoverService;
-
-import java.util.List;
+import uk.ac.ebi.subs.messagerecover.service.MultiQueueRecoverer;
+import uk.ac.ebi.subs.messagerecover.service.ReactiveRecoveryPipeline;
+import uk.ac.ebi.subs.messagerecover.service.RecoveryDaemon;
+import uk.ac.ebi.subs.messagerecover.service.RecoveryPipeline;
 
 @SpringBootApplication
 public class FailedMessageRecoverApplication implements CommandLineRunner {
@@ -17,9 +22,30 @@ public class FailedMessageRecoverApplication implements CommandLineRunner {
     private static final Logger logger = LoggerFactory.getLogger(FailedMessageRecoverApplication.class);
 
     private MessageRecoverService recoverService;
+    private RecoveryPipeline recoveryPipeline;
+    private ReactiveRecoveryPipeline reactiveRecoveryPipeline;
+    private DirectDeadLetterQueueRecoverer directRecoverer;
+    private MultiQueueRecoverer multiQueueRecoverer;
+    private RecoveryDaemon recoveryDaemon;
+    private RecoverProperties recoverProperties;
+    private MetricsReporter metricsReporter;
+    private LoadGenerator loadGenerator;
 
-    public FailedMessageRecoverApplication(MessageRecoverService recoverService) {
+    public FailedMessageRecoverApplication(MessageRecoverService recoverService, RecoveryPipeline recoveryPipeline,
+                                           ReactiveRecoveryPipeline reactiveRecoveryPipeline,
+                                           DirectDeadLetterQueueRecoverer directRecoverer,
+                                           MultiQueueRecoverer multiQueueRecoverer, RecoveryDaemon recoveryDaemon,
+                                           RecoverProperties recoverProperties, MetricsReporter metricsReporter,
+                                           LoadGenerator loadGenerator) {
         this.recoverService = recoverService;
+        this.recoveryPipeline = recoveryPipeline;
+        this.reactiveRecoveryPipeline = reactiveRecoveryPipeline;
+        this.directRecoverer = directRecoverer;
+        this.multiQueueRecoverer = multiQueueRecoverer;
+        this.recoveryDaemon = recoveryDaemon;
+        this.recoverProperties = recoverProperties;
+        this.metricsReporter = metricsReporter;
+        this.loadGenerator = loadGenerator;
     }
 
     public static void main(String[] args) {
@@ -30,19 +56,51 @@ public class FailedMessageRecoverApplication implements CommandLineRunner {
     public void run(String... args) throws Exception {
         logger.info("Application has started");
 
-        recoverService.transferMessagesToQDBDeadLetterQueue();
+        if (recoverProperties.getDaemonProp().isEnabled()) {
+            recoveryDaemon.start();
+            recoveryDaemon.awaitStop();
+            logger.info("Application has finished");
+            return;
+        }
 
-        List<MessageToReplay> messagesToReplay = recoverService.readFilterMessagesFromQDBDaedLetterQueue();
-        logger.info("Messages from QDB queue: {}", messagesToReplay);
+        if (loadGenerator.isEnabled()) {
+            loadGenerator.publishMessages();
+        }
 
-        if (messagesToReplay.size() > 0) {
-            recoverService.fixFailedMessages(messagesToReplay);
+        long replayedMessageCount;
+        try {
+            if (recoverProperties.getTransferMode() == RecoverProperties.TransferMode.DIRECT) {
+                replayedMessageCount = directRecoverer.recoverMessages();
+            } else if (multiQueueRecoverer.isEnabled()) {
+                replayedMessageCount = multiQueueRecoverer.recoverMessages();
+            } else {
+                recoverService.transferMessagesToQDBDeadLetterQueue();
 
-            recoverService.replayFailedMessages(messagesToReplay);
+                replayedMessageCount = recoverProperties.getPipelineProp().isReactive()
+                        ? reactiveRecoveryPipeline.recoverMessages()
+                        : recoveryPipeline.recoverMessages();
+                if (!recoverProperties.getDryRunProp().isEnabled()) {
+                    recoverService.completeRecovery();
+                }
+            }
+        } finally {
+            metricsReporter.report();
+        }
+
+        if (recoverProperties.getDryRunProp().isEnabled()) {
+            logger.info("Dry run has finished after {} messages, nothing has been replayed", replayedMessageCount);
+            logger.info("The transferred messages are kept in QDB, " +
+                    "the next run with the same checkpointProp.file replays them");
+        } else if (replayedMessageCount > 0) {
+            logger.info("Replayed {} messages", replayedMessageCount);
         } else {
             logger.info("No messages to replay");
         }
 
+        if (loadGenerator.isEnabled()) {
+            logger.info("Load test result:\n{}", loadGenerator.buildReport(replayedMessageCount));
+        }
+
         logger.info("Application has finished");
     }
 }
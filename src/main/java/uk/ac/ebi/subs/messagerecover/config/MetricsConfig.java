@@ -0,0 +1,19 @@
+package uk.ac.ebi.subs.messagerecover.config;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Creates the registry of the recovery metrics. The metrics are kept in the Prometheus format,
+ * so they can be written to a file or pushed to a Prometheus push gateway at the end of the run.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public PrometheusMeterRegistry meterRegistry() {
+        return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+    }
+}
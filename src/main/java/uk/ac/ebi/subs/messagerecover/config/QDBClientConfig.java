@@ -0,0 +1,59 @@
+package uk.ac.ebi.subs.messagerecover.config;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import uk.ac.ebi.subs.messagerecover.queuemanager.RetryingRequestInterceptor;
+
+import java.util.Collections;
+
+/**
+ * Creates the HTTP client used to communicate with the QDB server.
+ * The connections are pooled and kept alive between the requests, the requests have connect and read timeouts,
+ * the responses are requested gzip compressed and the idempotent requests are retried with a backoff.
+ * The settings are coming from the httpProp section of the application.yml file.
+ */
+@Configuration
+public class QDBClientConfig {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient qdbHttpClient(RecoverProperties recoverProperties) {
+        RecoverProperties.QdbProp.HttpProp httpProp = recoverProperties.getQdbProp().getHttpProp();
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(httpProp.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(httpProp.getMaxConnections());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(httpProp.getConnectTimeoutInMs())
+                .setConnectionRequestTimeout(httpProp.getConnectionRequestTimeoutInMs())
+                .setSocketTimeout(httpProp.getReadTimeoutInMs())
+                .build();
+
+        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .disableAutomaticRetries();
+        if (!httpProp.isCompression()) {
+            httpClientBuilder.disableContentCompression();
+        }
+
+        return httpClientBuilder.build();
+    }
+
+    @Bean
+    public RestTemplate qdbRestTemplate(CloseableHttpClient qdbHttpClient, RecoverProperties recoverProperties) {
+        RecoverProperties.QdbProp.HttpProp httpProp = recoverProperties.getQdbProp().getHttpProp();
+
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(qdbHttpClient));
+        restTemplate.setInterceptors(Collections.singletonList(
+                new RetryingRequestInterceptor(httpProp.getMaxRetries(), httpProp.getRetryBackoffInMs())));
+
+        return restTemplate;
+    }
+}
@@ -5,6 +5,11 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Reading property values from application.yml file.
  */
@@ -14,9 +19,42 @@ import org.springframework.stereotype.Component;
 @Data
 public class RecoverProperties {
 
+    private TransferMode transferMode = TransferMode.QDB;
     private String inputBindingRemovalDelayInSec;
+    private int inputBindingRemovalTimeoutInSec = 600;
+    private int drainCheckIntervalInMs = 500;
     private RabbitMQProp rabbitMQProp;
+    private DirectProp directProp = new DirectProp();
     private QdbProp qdbProp;
+    private PipelineProp pipelineProp = new PipelineProp();
+    private SpoolProp spoolProp = new SpoolProp();
+    private CheckpointProp checkpointProp = new CheckpointProp();
+    private ReplayProp replayProp = new ReplayProp();
+    private MetricsProp metricsProp = new MetricsProp();
+    private MultiQueueProp multiQueueProp = new MultiQueueProp();
+    private DaemonProp daemonProp = new DaemonProp();
+    private DryRunProp dryRunProp = new DryRunProp();
+    private LoadTestProp loadTestProp = new LoadTestProp();
+
+    /**
+     * Returns the number of the threads fixing the messages. A dry run does not publish the messages,
+     * so the fixers can run on its own number of threads, by default on one thread per processor.
+     *
+     * @return the number of the threads fixing the messages
+     */
+    public int fixParallelism() {
+        if (dryRunProp.isEnabled()) {
+            return dryRunProp.getFixParallelism() > 0
+                    ? dryRunProp.getFixParallelism()
+                    : Runtime.getRuntime().availableProcessors();
+        }
+
+        return pipelineProp.getFixParallelism();
+    }
+
+    public enum TransferMode {
+        QDB, DIRECT
+    }
 
     @Data
     public static class RabbitMQProp {
@@ -25,11 +63,37 @@ public class RecoverProperties {
         private String deadLetterQueueName;
     }
 
+    @Data
+    public static class DirectProp {
+        private int prefetchCount = 5000;
+        private int idleTimeoutInMs = 2000;
+    }
+
     @Data
     public static class QdbProp {
         private String baseURL;
+        private int pageSize;
         private Queue queue;
         private MessageFilter messageFilter;
+        private HttpProp httpProp = new HttpProp();
+        private ShardProp shardProp = new ShardProp();
+
+        @Data
+        public static class HttpProp {
+            private int maxConnections = 10;
+            private int connectTimeoutInMs = 5000;
+            private int connectionRequestTimeoutInMs = 5000;
+            private int readTimeoutInMs = 60000;
+            private boolean compression = true;
+            private int maxRetries = 3;
+            private int retryBackoffInMs = 1000;
+        }
+
+        @Data
+        public static class ShardProp {
+            private int concurrency = 1;
+            private int messagesPerShard = 10000;
+        }
 
         @Data
         public static class Queue {
@@ -50,7 +114,134 @@ public class RecoverProperties {
             private String from;
             private String to;
             private String routingKey;
+            private String routingKeyPattern;
+            private Map<String, String> bodyConditions = new LinkedHashMap<>();
             private String fromId;
         }
     }
-}
\ No newline at end of file
+
+    @Data
+    public static class PipelineProp {
+        private int bufferSize = 1000;
+        private int fixParallelism = 1;
+        private boolean reactive;
+    }
+
+    @Data
+    public static class SpoolProp {
+        private String directory;
+        private int segmentSizeInMb = 64;
+
+        public boolean isEnabled() {
+            return directory != null && !directory.isEmpty();
+        }
+    }
+
+    @Data
+    public static class DryRunProp {
+        private boolean enabled;
+        private String reportFile = "message-recover-dry-run.txt";
+        private int sampleSize = 20;
+        private int fixParallelism;
+    }
+
+    @Data
+    public static class LoadTestProp {
+        private boolean enabled;
+        private int messageCount = 10000;
+        private Map<String, Integer> payloadSizes = new LinkedHashMap<>();
+        private Map<String, Integer> routingKeys = new LinkedHashMap<>();
+    }
+
+    @Data
+    public static class DaemonProp {
+        private boolean enabled;
+        private int intervalInSec = 300;
+        private String controlQueueName;
+        private int httpPort;
+    }
+
+    @Data
+    public static class MultiQueueProp {
+        private List<QueueMapping> queueMappings = new ArrayList<>();
+        private int parallelism = 4;
+
+        /**
+         * A RabbitMQ dead letter queue to recover, the QDB queue to transfer its messages to
+         * and the exchange to replay them to.
+         */
+        @Data
+        public static class QueueMapping {
+            private String deadLetterQueueName;
+            private String qdbDeadLetterQueueName;
+            private String exchangeName;
+        }
+    }
+
+    @Data
+    public static class MetricsProp {
+        private String file;
+        private String pushGatewayURL;
+        private String jobName = "failed-message-recoverer";
+    }
+
+    @Data
+    public static class CheckpointProp {
+        private String file;
+        private int saveInterval = 1000;
+    }
+
+    @Data
+    public static class ReplayProp {
+        private ReplayMode mode = ReplayMode.SIMPLE;
+        private int confirmWindowSize = 1000;
+        private int confirmTimeoutInSec = 60;
+        private int transactionBatchSize = 100;
+        private int parallelism = 1;
+        private String shardKeyPattern;
+        private boolean passthrough;
+        private ThrottleProp throttleProp = new ThrottleProp();
+        private DedupProp dedupProp = new DedupProp();
+        private RetryProp retryProp = new RetryProp();
+
+        public enum ReplayMode {
+            SIMPLE, CONFIRM, TRANSACTIONAL
+        }
+
+        @Data
+        public static class ThrottleProp {
+            private int maxRatePerSec;
+            private int burstSize = 100;
+            private List<String> monitoredQueues = new ArrayList<>();
+            private int maxQueueDepth = 10000;
+            private int resumeQueueDepth = 1000;
+            private int queueDepthCheckIntervalInSec = 5;
+
+            public boolean isEnabled() {
+                return maxRatePerSec > 0 || !monitoredQueues.isEmpty();
+            }
+        }
+
+        @Data
+        public static class DedupProp {
+            private String file;
+            private long expectedEntries = 10000000;
+            private String keyPattern;
+
+            public boolean isEnabled() {
+                return file != null && !file.isEmpty();
+            }
+        }
+
+        @Data
+        public static class RetryProp {
+            private boolean enabled;
+            private int initialDelayInSec = 60;
+            private int multiplier = 2;
+            private int tierCount = 4;
+            private int maxFailureCount = 5;
+            private String delayQueuePrefix = "message-recover.delay";
+            private String parkingQueueName = "message-recover.parking-lot";
+        }
+    }
+}
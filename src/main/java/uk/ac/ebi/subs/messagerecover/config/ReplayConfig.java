@@ -0,0 +1,22 @@
+package uk.ac.ebi.subs.messagerecover.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayer;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayerFactory;
+import uk.ac.ebi.subs.messagerecover.replay.RenewableMessageReplayer;
+
+/**
+ * Creates the {@link MessageReplayer} of the exchange set in the application.yml file.
+ * The recovery daemon renews it after every recovery cycle.
+ */
+@Configuration
+public class ReplayConfig {
+
+    @Bean
+    public RenewableMessageReplayer messageReplayer(RecoverProperties recoverProperties,
+                                                    MessageReplayerFactory messageReplayerFactory) {
+        return new RenewableMessageReplayer(() ->
+                messageReplayerFactory.create(recoverProperties.getRabbitMQProp().getExchangeName()));
+    }
+}
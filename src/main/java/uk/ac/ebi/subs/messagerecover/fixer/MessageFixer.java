@@ -0,0 +1,32 @@
+package uk.ac.ebi.subs.messagerecover.fixer;
+
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+/**
+ * Fixes/corrects a failed message before it is replayed.
+ * The implementations are picked up as Spring beans or from the
+ * META-INF/services/uk.ac.ebi.subs.messagerecover.fixer.MessageFixer file of the classpath.
+ * The fixers matching the routing key of a message are applied one after the other,
+ * in the order defined by {@link org.springframework.core.Ordered} or {@link org.springframework.core.annotation.Order}.
+ * If the fix phase runs on several threads, then the implementations have to be thread-safe.
+ */
+public interface MessageFixer {
+
+    /**
+     * Returns the routing key pattern of the messages this fixer has to be applied to,
+     * with the syntax of the topic exchange bindings. By default it is applied to every message.
+     *
+     * @return the routing key pattern of the messages to fix
+     */
+    default String getRoutingKeyPattern() {
+        return "#";
+    }
+
+    /**
+     * Fixes the given message by changing its body to replay.
+     * The body to replay holds the original body or the output of the previous fixer of the chain.
+     *
+     * @param message the {@link MessageToReplay} to fix
+     */
+    void fix(MessageToReplay message);
+}
@@ -0,0 +1,95 @@
+package uk.ac.ebi.subs.messagerecover.fixer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.AnnotationAwareOrderComparator;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+import uk.ac.ebi.subs.messagerecover.queuemanager.RoutingKeyPattern;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * This class is responsible for applying the {@link MessageFixer}s to the failed messages.
+ * The chain of the fixers matching a routing key is built once and reused for the following messages.
+ * Without any matching fixer the message is replayed unchanged.
+ */
+@Component
+public class MessageFixerChain {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageFixerChain.class);
+
+    private final List<MatchingFixer> fixers = new ArrayList<>();
+    private final Map<String, List<MessageFixer>> chains = new ConcurrentHashMap<>();
+
+    @Autowired
+    public MessageFixerChain(ObjectProvider<List<MessageFixer>> springFixers) {
+        this(collectFixers(springFixers.getIfAvailable()));
+    }
+
+    MessageFixerChain(List<MessageFixer> fixers) {
+        List<MessageFixer> sortedFixers = new ArrayList<>(fixers);
+        AnnotationAwareOrderComparator.sort(sortedFixers);
+        sortedFixers.forEach(fixer -> this.fixers.add(new MatchingFixer(fixer)));
+
+        logger.info("[MessageFixerChain] Registered message fixers: {}", this.fixers);
+    }
+
+    /**
+     * Sets the body to replay of the given message to its original body,
+     * then applies the fixers matching its routing key.
+     *
+     * @param message the {@link MessageToReplay} to fix
+     */
+    public void fix(MessageToReplay message) {
+        message.setBodyToReplay(message.getBody());
+
+        for (MessageFixer fixer : getChain(message.getRoutingKey())) {
+            fixer.fix(message);
+        }
+    }
+
+    List<MessageFixer> getChain(String routingKey) {
+        return chains.computeIfAbsent(routingKey == null ? "" : routingKey, key -> fixers.stream()
+                .filter(fixer -> fixer.routingKeyPattern.test(key))
+                .map(fixer -> fixer.fixer)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * The fixers registered in META-INF/services are added to the Spring beans,
+     * unless a bean of the same class already exists.
+     */
+    private static List<MessageFixer> collectFixers(List<MessageFixer> springFixers) {
+        List<MessageFixer> fixers = springFixers == null ? new ArrayList<>() : new ArrayList<>(springFixers);
+        for (MessageFixer fixer : ServiceLoader.load(MessageFixer.class)) {
+            if (fixers.stream().noneMatch(existingFixer -> existingFixer.getClass() == fixer.getClass())) {
+                fixers.add(fixer);
+            }
+        }
+
+        return fixers;
+    }
+
+    private static class MatchingFixer {
+        private final MessageFixer fixer;
+        private final RoutingKeyPattern routingKeyPattern;
+
+        private MatchingFixer(MessageFixer fixer) {
+            this.fixer = fixer;
+            this.routingKeyPattern = new RoutingKeyPattern(fixer.getRoutingKeyPattern());
+        }
+
+        @Override
+        public String toString() {
+            return fixer.getClass().getSimpleName() + "(" + routingKeyPattern + ")";
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package uk.ac.ebi.subs.messagerecover.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from the wrapped stream.
+ */
+public class CountingInputStream extends FilterInputStream {
+
+    private long byteCount;
+
+    public CountingInputStream(InputStream inputStream) {
+        super(inputStream);
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int value = super.read();
+        if (value >= 0) {
+            byteCount++;
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        int readByteCount = super.read(buffer, offset, length);
+        if (readByteCount > 0) {
+            byteCount += readByteCount;
+        }
+        return readByteCount;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skippedByteCount = super.skip(n);
+        byteCount += skippedByteCount;
+        return skippedByteCount;
+    }
+}
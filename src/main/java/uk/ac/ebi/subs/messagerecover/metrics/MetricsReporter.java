@@ -0,0 +1,160 @@
+package uk.ac.ebi.subs.messagerecover.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for reporting the metrics at the end of a recovery.
+ * It logs a summary of the recovery, writes the metrics in the Prometheus text format to a file
+ * and pushes them to a Prometheus push gateway, if they are configured in the application.yml file.
+ */
+@Component
+public class MetricsReporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsReporter.class);
+
+    private static final String PROMETHEUS_TEXT_FORMAT = "text/plain; version=0.0.4";
+
+    private MeterRegistry meterRegistry;
+    private RecoverProperties.MetricsProp metricsProp;
+    private RestTemplate restTemplate = new RestTemplate();
+
+    public MetricsReporter(RecoveryMetrics recoveryMetrics, RecoverProperties recoverProperties) {
+        this.meterRegistry = recoveryMetrics.getMeterRegistry();
+        this.metricsProp = recoverProperties.getMetricsProp();
+    }
+
+    /**
+     * Logs the summary of the recovery and exports the metrics.
+     * A failing export is only logged, it does not fail the recovery.
+     */
+    public void report() {
+        logger.info("[MetricsReporter] Recovery summary:\n{}", buildSummary());
+
+        if (meterRegistry instanceof PrometheusMeterRegistry) {
+            String metrics = ((PrometheusMeterRegistry) meterRegistry).scrape();
+            writeMetricsFile(metrics);
+            pushMetrics(metrics);
+        }
+    }
+
+    /**
+     * Returns the duration of the phases, the message counts with their rates and the failures per routing key.
+     *
+     * @return the human readable summary of the recovery
+     */
+    public String buildSummary() {
+        StringBuilder summary = new StringBuilder();
+
+        meterRegistry.find(RecoveryMetrics.PHASE_TIMER).timers().stream()
+                .sorted(Comparator.comparing(timer -> timer.getId().getTag("phase")))
+                .forEach(timer -> summary.append(String.format("  phase %-20s %10.1f s%n",
+                        timer.getId().getTag("phase"), timer.totalTime(TimeUnit.SECONDS))));
+
+        meterRegistry.find(RecoveryMetrics.QDB_REQUEST_TIMER).timers().stream()
+                .sorted(Comparator.comparing(timer -> timer.getId().getTag("operation")))
+                .forEach(timer -> summary.append(String.format("  QDB %-15s %-8s %6d calls %10.1f s%n",
+                        timer.getId().getTag("operation"), timer.getId().getTag("outcome"),
+                        timer.count(), timer.totalTime(TimeUnit.SECONDS))));
+
+        appendCount(summary, "messages transferred", RecoveryMetrics.MESSAGES_TRANSFERRED_COUNTER);
+        appendCount(summary, "messages read", RecoveryMetrics.MESSAGES_READ_COUNTER);
+        appendCount(summary, "bytes read", RecoveryMetrics.BYTES_READ_COUNTER);
+        appendTimer(summary, "messages parsed", RecoveryMetrics.DECODE_TIMER);
+        appendTimer(summary, "messages fixed", RecoveryMetrics.FIX_TIMER);
+        appendTimer(summary, "messages replayed", RecoveryMetrics.REPLAY_TIMER);
+        appendCount(summary, "messages delivered", RecoveryMetrics.MESSAGES_DELIVERED_COUNTER);
+        appendCount(summary, "duplicates skipped", RecoveryMetrics.MESSAGES_DUPLICATE_COUNTER);
+        appendCount(summary, "messages delayed", RecoveryMetrics.MESSAGES_DELAYED_COUNTER);
+        appendCount(summary, "messages parked", RecoveryMetrics.MESSAGES_PARKED_COUNTER);
+
+        meterRegistry.find(RecoveryMetrics.MESSAGES_FAILED_COUNTER).counters().forEach(counter ->
+                summary.append(String.format("  failed in %-7s %-35s %10.0f%n", counter.getId().getTag("phase"),
+                        counter.getId().getTag("routingKey"), counter.count())));
+
+        return summary.toString();
+    }
+
+    private void appendCount(StringBuilder summary, String name, String counterName) {
+        Counter counter = meterRegistry.find(counterName).counter();
+        if (counter != null) {
+            summary.append(String.format("  %-25s %12.0f%n", name, counter.count()));
+        }
+    }
+
+    /**
+     * Besides the count it appends the rate of the measured operation on a single thread
+     * and the median and the 99th percentile of its duration, if they are published.
+     */
+    private void appendTimer(StringBuilder summary, String name, String timerName) {
+        Timer timer = meterRegistry.find(timerName).timer();
+        if (timer != null) {
+            double totalSeconds = timer.totalTime(TimeUnit.SECONDS);
+            summary.append(String.format("  %-25s %12d %12.0f msg/s, max %.1f ms", name, timer.count(),
+                    totalSeconds > 0 ? timer.count() / totalSeconds : 0, timer.max(TimeUnit.MILLISECONDS)));
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            double median = RecoveryMetrics.percentileInMs(snapshot, 0.5);
+            if (!Double.isNaN(median)) {
+                summary.append(String.format(", p50 %.3f ms, p99 %.3f ms", median,
+                        RecoveryMetrics.percentileInMs(snapshot, 0.99)));
+            }
+            summary.append(String.format("%n"));
+        }
+    }
+
+    /**
+     * The metrics are written to a temporary file first, so a reader never sees a partially written file.
+     */
+    private void writeMetricsFile(String metrics) {
+        if (metricsProp.getFile() == null || metricsProp.getFile().isEmpty()) {
+            return;
+        }
+
+        Path metricsFile = Paths.get(metricsProp.getFile()).toAbsolutePath();
+        try {
+            Path temporaryFile = metricsFile.resolveSibling(metricsFile.getFileName() + ".tmp");
+            Files.write(temporaryFile, metrics.getBytes(StandardCharsets.UTF_8));
+            Files.move(temporaryFile, metricsFile, StandardCopyOption.REPLACE_EXISTING);
+            logger.info("[MetricsReporter] Metrics are written to {}", metricsFile);
+        } catch (IOException e) {
+            logger.warn("Error happened writing the metrics to {}: {}", metricsFile, e.getMessage());
+        }
+    }
+
+    private void pushMetrics(String metrics) {
+        if (metricsProp.getPushGatewayURL() == null || metricsProp.getPushGatewayURL().isEmpty()) {
+            return;
+        }
+
+        String url = String.join("/", metricsProp.getPushGatewayURL(), "metrics", "job", metricsProp.getJobName());
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(PROMETHEUS_TEXT_FORMAT));
+        try {
+            restTemplate.put(url, new HttpEntity<>(metrics, headers));
+            logger.info("[MetricsReporter] Metrics are pushed to {}", url);
+        } catch (RestClientException e) {
+            logger.warn("Error happened pushing the metrics to {}: {}", url, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package uk.ac.ebi.subs.messagerecover.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * This class is responsible for recording the counters and timers of a recovery.
+ * <ul>
+ *     <li>recovery.phase: the duration of the phases of the recovery (tagged by phase)</li>
+ *     <li>qdb.requests: the duration of the QDB HTTP calls (tagged by operation and outcome)</li>
+ *     <li>qdb.bytes.read, qdb.messages.read: the size and the number of the messages read from QDB</li>
+ *     <li>qdb.messages.decode: the time spent on parsing the QDB records</li>
+ *     <li>recovery.messages.transferred: the number of the messages transferred to the QDB queue</li>
+ *     <li>recovery.message.fix: the latency of fixing a message</li>
+ *     <li>recovery.message.replay: the latency of publishing a message until it is delivered to the broker</li>
+ *     <li>recovery.messages.delivered: the number of the messages delivered to the broker</li>
+ *     <li>recovery.messages.failed: the number of the failures (tagged by phase and routing key)</li>
+ *     <li>recovery.messages.delayed, recovery.messages.parked: the number of the messages failed before,
+ *     sent to a delay queue or to the parking queue</li>
+ * </ul>
+ */
+@Component
+public class RecoveryMetrics {
+
+    public static final String PHASE_TIMER = "recovery.phase";
+    public static final String QDB_REQUEST_TIMER = "qdb.requests";
+    public static final String BYTES_READ_COUNTER = "qdb.bytes.read";
+    public static final String MESSAGES_READ_COUNTER = "qdb.messages.read";
+    public static final String DECODE_TIMER = "qdb.messages.decode";
+    public static final String MESSAGES_TRANSFERRED_COUNTER = "recovery.messages.transferred";
+    public static final String FIX_TIMER = "recovery.message.fix";
+    public static final String REPLAY_TIMER = "recovery.message.replay";
+    public static final String MESSAGES_DELIVERED_COUNTER = "recovery.messages.delivered";
+    public static final String MESSAGES_FAILED_COUNTER = "recovery.messages.failed";
+    public static final String MESSAGES_DUPLICATE_COUNTER = "recovery.messages.duplicate";
+    public static final String MESSAGES_DELAYED_COUNTER = "recovery.messages.delayed";
+    public static final String MESSAGES_PARKED_COUNTER = "recovery.messages.parked";
+
+    private static final String UNKNOWN_ROUTING_KEY = "unknown";
+
+    private final MeterRegistry meterRegistry;
+    private final Counter bytesRead;
+    private final Counter messagesRead;
+    private final Counter messagesTransferred;
+    private final Counter messagesDelivered;
+    private final Counter messagesDuplicate;
+    private final Counter messagesDelayed;
+    private final Counter messagesParked;
+    private final Timer decodeTimer;
+    private final Timer fixTimer;
+    private final Timer replayTimer;
+
+    public RecoveryMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.bytesRead = Counter.builder(BYTES_READ_COUNTER).baseUnit("bytes").register(meterRegistry);
+        this.messagesRead = meterRegistry.counter(MESSAGES_READ_COUNTER);
+        this.messagesTransferred = meterRegistry.counter(MESSAGES_TRANSFERRED_COUNTER);
+        this.messagesDelivered = meterRegistry.counter(MESSAGES_DELIVERED_COUNTER);
+        this.messagesDuplicate = meterRegistry.counter(MESSAGES_DUPLICATE_COUNTER);
+        this.messagesDelayed = meterRegistry.counter(MESSAGES_DELAYED_COUNTER);
+        this.messagesParked = meterRegistry.counter(MESSAGES_PARKED_COUNTER);
+        this.decodeTimer = meterRegistry.timer(DECODE_TIMER);
+        this.fixTimer = Timer.builder(FIX_TIMER).publishPercentileHistogram().publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        this.replayTimer = Timer.builder(REPLAY_TIMER).publishPercentileHistogram().publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * Measures the duration of a phase of the recovery.
+     *
+     * @param phase the name of the phase
+     * @param action the phase to run
+     * @return the result of the phase
+     */
+    public <T> T recordPhase(String phase, Supplier<T> action) {
+        return meterRegistry.timer(PHASE_TIMER, "phase", phase).record(action);
+    }
+
+    public void recordPhase(String phase, Runnable action) {
+        meterRegistry.timer(PHASE_TIMER, "phase", phase).record(action);
+    }
+
+    public void recordPhase(String phase, long durationInNanos) {
+        meterRegistry.timer(PHASE_TIMER, "phase", phase).record(durationInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Measures the duration of a QDB HTTP call. The failed calls are measured separately.
+     *
+     * @param operation the name of the QDB operation
+     * @param request the call to QDB
+     * @return the result of the call
+     */
+    public <T> T recordQDBRequest(String operation, Supplier<T> request) {
+        long start = System.nanoTime();
+        String outcome = "failure";
+        try {
+            T result = request.get();
+            outcome = "success";
+            return result;
+        } finally {
+            meterRegistry.timer(QDB_REQUEST_TIMER, "operation", operation, "outcome", outcome)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public <T> T recordDecode(Supplier<T> decoding) {
+        return decodeTimer.record(decoding);
+    }
+
+    public void bytesRead(long byteCount) {
+        bytesRead.increment(byteCount);
+    }
+
+    public void messageRead() {
+        messagesRead.increment();
+    }
+
+    public void messagesTransferred(long messageCount) {
+        messagesTransferred.increment(messageCount);
+    }
+
+    /**
+     * Measures fixing the given message. If it fails, then the failure is counted for the routing key of the message.
+     *
+     * @param message the {@link MessageToReplay} being fixed
+     * @param fix the fix of the message
+     */
+    public void recordFix(MessageToReplay message, Runnable fix) {
+        recordMessageAction("fix", fixTimer, message, fix);
+    }
+
+    /**
+     * Measures publishing the given message until the broker has taken responsibility for it,
+     * i.e. until the delivery callback of the replayer is called.
+     * If it fails, then the failure is counted for the routing key of the message.
+     *
+     * @param message the {@link MessageToReplay} being published
+     * @param replay the publishing of the message with the delivery callback
+     * @param deliveryCallback called with the message when it has been delivered to the broker
+     */
+    public void recordReplay(MessageToReplay message, BiConsumer<MessageToReplay, Consumer<MessageToReplay>> replay,
+                             Consumer<MessageToReplay> deliveryCallback) {
+        long start = System.nanoTime();
+        try {
+            replay.accept(message, deliveredMessage -> {
+                replayTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                deliveryCallback.accept(deliveredMessage);
+            });
+        } catch (RuntimeException e) {
+            messageFailed("replay", message);
+            throw e;
+        }
+    }
+
+    public void messageDelivered() {
+        messagesDelivered.increment();
+    }
+
+    public void messageSkippedAsDuplicate() {
+        messagesDuplicate.increment();
+    }
+
+    public void messageDelayed() {
+        messagesDelayed.increment();
+    }
+
+    public void messageParked() {
+        messagesParked.increment();
+    }
+
+    public void messageFailed(String phase, MessageToReplay message) {
+        String routingKey = message.getRoutingKey() == null ? UNKNOWN_ROUTING_KEY : message.getRoutingKey();
+        meterRegistry.counter(MESSAGES_FAILED_COUNTER, "phase", phase, "routingKey", routingKey).increment();
+    }
+
+    /**
+     * Returns a percentile published by a timer.
+     *
+     * @param snapshot the snapshot of the timer
+     * @param percentile the published percentile, e.g. 0.99
+     * @return the value of the percentile in milliseconds or NaN, if the timer does not publish it
+     */
+    public static double percentileInMs(HistogramSnapshot snapshot, double percentile) {
+        for (ValueAtPercentile valueAtPercentile : snapshot.percentileValues()) {
+            if (valueAtPercentile.percentile() == percentile) {
+                return valueAtPercentile.value(TimeUnit.MILLISECONDS);
+            }
+        }
+
+        return Double.NaN;
+    }
+
+    private void recordMessageAction(String phase, Timer timer, MessageToReplay message, Runnable action) {
+        try {
+            timer.record(action);
+        } catch (RuntimeException e) {
+            messageFailed(phase, message);
+            throw e;
+        }
+    }
+}
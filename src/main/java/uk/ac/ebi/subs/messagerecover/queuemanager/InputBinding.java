@@ -5,7 +5,6 @@ import lombok.NoArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Component;
-import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
 
 /**
  * Input binding configuration between RabbitMQ and QDB.
@@ -19,8 +18,8 @@ public class InputBinding {
     private String url;
     private String queue;
 
-    public InputBinding(RecoverProperties.RabbitMQProp rabbitProp, String url) {
-        this.queue = rabbitProp.getDeadLetterQueueName();
+    public InputBinding(String queue, String url) {
+        this.queue = queue;
         this.url = url;
     }
 }
@@ -0,0 +1,211 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.ToString;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * This class is responsible to filter messages in the application.
+ * Besides the criteria that {@link MessageFilter} sends to the QDB server it supports routing key patterns
+ * and conditions on the fields of the JSON body of the messages, which QDB can not evaluate.
+ * The criteria are compiled once into a single predicate, the cheaper criteria are evaluated first.
+ * The parameters are coming from the application.yml file.
+ */
+@ToString(of = "criteria")
+public class LocalMessageFilter implements Predicate<MessageToReplay> {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final List<String> criteria = new ArrayList<>();
+    private final Predicate<MessageToReplay> predicate;
+
+    /**
+     * Creates a filter with all the criteria of the given message filter.
+     *
+     * @param messageFilter the message filter parameters from the application.yml file
+     */
+    public LocalMessageFilter(RecoverProperties.QdbProp.MessageFilter messageFilter) {
+        this(messageFilter, true);
+    }
+
+    /**
+     * Creates a filter with the criteria of the given message filter.
+     *
+     * @param messageFilter the message filter parameters from the application.yml file
+     * @param includeQDBCriteria if false, the criteria already evaluated by the QDB server are left out
+     */
+    public LocalMessageFilter(RecoverProperties.QdbProp.MessageFilter messageFilter, boolean includeQDBCriteria) {
+        List<Predicate<MessageToReplay>> predicates = new ArrayList<>();
+
+        if (includeQDBCriteria) {
+            if (!isEmpty(messageFilter.getRoutingKey())) {
+                predicates.add(routingKeyEquals(messageFilter.getRoutingKey()));
+            }
+            if (!isEmpty(messageFilter.getFrom()) || !isEmpty(messageFilter.getTo())) {
+                predicates.add(publishedBetween(messageFilter.getFrom(), messageFilter.getTo()));
+            }
+        }
+        if (!isEmpty(messageFilter.getRoutingKeyPattern())) {
+            predicates.add(routingKeyMatches(messageFilter.getRoutingKeyPattern()));
+        }
+        if (includeQDBCriteria && !isEmpty(messageFilter.getGrep())) {
+            predicates.add(bodyContains(messageFilter.getGrep()));
+        }
+        if (messageFilter.getBodyConditions() != null && !messageFilter.getBodyConditions().isEmpty()) {
+            predicates.add(bodyFieldsMatch(messageFilter.getBodyConditions()));
+        }
+
+        this.predicate = predicates.stream().reduce(Predicate::and).orElse(message -> true);
+    }
+
+    /**
+     * Returns true, if the given message matches all the defined criteria.
+     *
+     * @param message the {@link MessageToReplay} to check
+     * @return true, if the given message matches all the defined criteria
+     */
+    @Override
+    public boolean test(MessageToReplay message) {
+        return predicate.test(message);
+    }
+
+    /**
+     * Returns true, if there is any criteria to evaluate.
+     *
+     * @return true, if there is any criteria to evaluate
+     */
+    public boolean hasCriteria() {
+        return !criteria.isEmpty();
+    }
+
+    private Predicate<MessageToReplay> routingKeyEquals(String routingKey) {
+        criteria.add("routingKey=" + routingKey);
+        return message -> routingKey.equals(message.getRoutingKey());
+    }
+
+    private Predicate<MessageToReplay> publishedBetween(String fromValue, String toValue) {
+        Instant from = isEmpty(fromValue) ? null : parseTimestamp(fromValue);
+        Instant to = isEmpty(toValue) ? null : parseTimestamp(toValue);
+        criteria.add("from=" + from + ", to=" + to);
+
+        return message -> {
+            Instant timestamp = getTimestamp(message);
+            return timestamp != null
+                    && (from == null || !timestamp.isBefore(from))
+                    && (to == null || !timestamp.isAfter(to));
+        };
+    }
+
+    private Predicate<MessageToReplay> routingKeyMatches(String routingKeyPattern) {
+        criteria.add("routingKeyPattern=" + routingKeyPattern);
+        RoutingKeyPattern pattern = new RoutingKeyPattern(routingKeyPattern);
+
+        return message -> pattern.test(message.getRoutingKey());
+    }
+
+    private Predicate<MessageToReplay> bodyContains(String grep) {
+        criteria.add("grep=" + grep);
+        Pattern pattern = Pattern.compile(grep);
+
+        return message -> message.getBody() != null && pattern.matcher(message.getBody()).find();
+    }
+
+    /**
+     * The body is parsed only once for all the conditions.
+     */
+    private Predicate<MessageToReplay> bodyFieldsMatch(Map<String, String> bodyConditions) {
+        criteria.add("bodyConditions=" + bodyConditions);
+        Map<JsonPointer, Pattern> conditions = new LinkedHashMap<>();
+        bodyConditions.forEach((path, regex) -> conditions.put(compileJsonPath(path), Pattern.compile(regex)));
+
+        return message -> {
+            JsonNode body = parseBody(message);
+            if (body == null) {
+                return false;
+            }
+
+            return conditions.entrySet().stream().allMatch(condition -> {
+                JsonNode field = body.at(condition.getKey());
+                return !field.isMissingNode() && !field.isContainerNode()
+                        && condition.getValue().matcher(field.asText()).matches();
+            });
+        };
+    }
+
+    /**
+     * Accepts a JSON pointer (/submission/id) or a simple JSON path ($.submission.id or $.samples[0].alias).
+     */
+    static JsonPointer compileJsonPath(String path) {
+        if (path.startsWith("/")) {
+            return JsonPointer.compile(path);
+        }
+
+        String pointer = path.replaceFirst("^\\$\\.?", "")
+                .replaceAll("\\[(\\d+)]", ".$1")
+                .replace('.', '/');
+
+        return JsonPointer.compile("/" + pointer);
+    }
+
+    private static JsonNode parseBody(MessageToReplay message) {
+        if (message.getBody() == null) {
+            return null;
+        }
+
+        try {
+            return mapper.readTree(message.getBody());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Instant getTimestamp(MessageToReplay message) {
+        MessageProperties messageProperties = message.getMessageProperties();
+        if (messageProperties == null || isEmpty(messageProperties.getTimestamp())) {
+            return null;
+        }
+
+        return parseTimestamp(messageProperties.getTimestamp());
+    }
+
+    /**
+     * Parses a timestamp given in milliseconds since the epoch, as an ISO-8601 instant,
+     * or as a local ISO-8601 date or date-time.
+     */
+    static Instant parseTimestamp(String timestamp) {
+        String value = timestamp.trim();
+        if (value.chars().allMatch(Character::isDigit)) {
+            return Instant.ofEpochMilli(Long.parseLong(value));
+        }
+
+        try {
+            return Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            // not an instant, try it as a local date-time
+        }
+        try {
+            return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        }
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.equals("");
+    }
+}
@@ -20,13 +20,15 @@ public class MessageFilter {
     public static final String LINE_SEPARATOR = System.getProperty("line.separator");
 
     private static final String QUERY_STRING_STARTER = "?";
+    private static final String DEFAULT_FROM_ID = "1";
     public static final String QUERY_STRING_SEPARATOR = "&";
 
     private String grep;
     private String from;
     private String to;
     private String routingKey;
-    private String fromId = "1";
+    private String fromId = DEFAULT_FROM_ID;
+    private String limit;
     private String timeoutMs = "1";
 
     public MessageFilter(RecoverProperties.QdbProp.MessageFilter messageFilter) {
@@ -34,17 +36,35 @@ public class MessageFilter {
         this.from = messageFilter.getFrom();
         this.to = messageFilter.getTo();
         this.routingKey = messageFilter.getRoutingKey();
+        if (messageFilter.getFromId() != null && !messageFilter.getFromId().equals("")) {
+            this.fromId = messageFilter.getFromId();
+        }
     }
 
     /**
      * Returns a query string from the parameters set in the application.yml file.
-     * If the query string is not empty, then it will append some additional necessary parameters to the string.
+     * If the query string is not empty or the messages are read in pages,
+     * then it will append some additional necessary parameters to the string.
      * @return
      */
     String toQueryString() {
         String queryString = addDefinedQueryStringParameters();
 
-        return queryString.length() > 0 ? queryString + QUERY_STRING_SEPARATOR + addAdditionalQueryString() + addMessageSeparator() : "";
+        if (queryString.length() == 0 && !isPaged()) {
+            return "";
+        }
+
+        return (queryString.length() > 0 ? queryString + QUERY_STRING_SEPARATOR : "")
+                + addAdditionalQueryString() + addMessageSeparator();
+    }
+
+    /**
+     * Returns true, if the number of the messages returned by one query is limited.
+     *
+     * @return true, if the number of the messages returned by one query is limited
+     */
+    boolean isPaged() {
+        return limit != null && !limit.equals("");
     }
 
     private String addDefinedQueryStringParameters() {
@@ -58,14 +78,16 @@ public class MessageFilter {
     }
 
     /**
-     * If the calculated query string is not empty, then we need to add the 'fromId=1' and 'timeouts=1' parameters
-     * to the query string to query the messages from the beginning and we also have to set the timeout value.
+     * If the calculated query string is not empty, then we need to add the 'fromId' and 'timeouts=1' parameters
+     * to the query string to query the messages from the given (by default the first) message
+     * and we also have to set the timeout value. When the messages are read in pages the 'limit' is added, too.
      *
      * @return additional parameters for the calculated query string.
      */
     String addAdditionalQueryString() {
         return addToQueryString(Arrays.asList(
                 new SimpleEntry<>("fromId", fromId),
+                new SimpleEntry<>("limit", limit),
                 new SimpleEntry<>("timeoutMs", timeoutMs)
                 )
         );
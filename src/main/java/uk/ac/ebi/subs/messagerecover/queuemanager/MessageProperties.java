@@ -3,11 +3,21 @@ package uk.ac.ebi.subs.messagerecover.queuemanager;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
+/**
+ * The properties of a stored message. The AMQP properties (content type and encoding, message ID and headers)
+ * are only known, if the store of the message has kept them.
+ */
 @Data
 @NoArgsConstructor
 public class MessageProperties {
-    private int id;
+    private long id;
     private String timestamp;
     private int payloadSize;
     private String routingKey;
+    private String contentType;
+    private String contentEncoding;
+    private String messageId;
+    private Map<String, Object> headers;
 }
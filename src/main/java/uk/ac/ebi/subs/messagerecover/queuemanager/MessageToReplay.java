@@ -5,6 +5,7 @@ import lombok.Data;
 /**
  * This entity holds a failed message, its routing key and its corrected message or the same message,
  * if the message was correct, but it failed because some service was down.
+ * The original bytes of the message are kept in the payload, if they are needed for a passthrough replay.
  */
 @Data
 public class MessageToReplay {
@@ -12,9 +13,25 @@ public class MessageToReplay {
     private String routingKey;
     private String body;
     private String bodyToReplay;
+    private MessageProperties messageProperties;
+    private byte[] payload;
 
     public MessageToReplay(String routingKey, String body) {
         this.routingKey = routingKey;
         this.body = body;
     }
+
+    public MessageToReplay(MessageProperties messageProperties, String body) {
+        this(messageProperties.getRoutingKey(), body);
+        this.messageProperties = messageProperties;
+    }
+
+    /**
+     * Returns true, if no fixer has changed the body of the message.
+     *
+     * @return true, if the body to replay is the same as the original body
+     */
+    public boolean isUnchanged() {
+        return bodyToReplay == null || bodyToReplay.equals(body);
+    }
 }
@@ -5,25 +5,47 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.CountingInputStream;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 @Component
 public class QDBManager {
 
     private static final Logger logger = LoggerFactory.getLogger(QDBManager.class);
 
+    private static final MessageToReplay END_OF_SHARD = new MessageToReplay("", "");
+
     private RestTemplate restTemplate;
 
     private RecoverProperties recoverProperties;
 
+    private RecoveryMetrics recoveryMetrics;
+
+    private QDBRecordDecoder recordDecoder;
+
     @Value("${spring.rabbitmq.host}")
     private String host;
 
+    @Value("${spring.rabbitmq.port:5672}")
+    private int port;
+
     @Value("${spring.rabbitmq.username}")
     private String username;
 
@@ -33,59 +55,339 @@ public class QDBManager {
     @Value("${spring.rabbitmq.virtual-host}")
     private String vhost;
 
-    public QDBManager(RecoverProperties recoverProperties) {
-        this.restTemplate = new RestTemplate();
+    public QDBManager(RestTemplate qdbRestTemplate, RecoverProperties recoverProperties,
+                      RecoveryMetrics recoveryMetrics) {
+        this.restTemplate = qdbRestTemplate;
         this.recoverProperties = recoverProperties;
+        this.recoveryMetrics = recoveryMetrics;
+        this.recordDecoder = new TimedQDBRecordDecoder(recoveryMetrics,
+                recoverProperties.getReplayProp().isPassthrough());
     }
 
     public ResponseEntity<String> createQDBDeadLetterQueue(String queueName) {
         logger.info("[QDBManager] Creating a QDB queue: {}", queueName);
-        return restTemplate.postForEntity(buildCreateQueueURL(queueName), null, String.class);
+        return recoveryMetrics.recordQDBRequest("createQueue",
+                () -> restTemplate.postForEntity(buildCreateQueueURL(queueName), null, String.class));
+    }
+
+    /**
+     * Returns the number of the messages stored in the given QDB queue.
+     *
+     * @param queueName the name of the QDB queue
+     * @return the number of the messages stored in the QDB queue
+     */
+    public long getQDBQueueMessageCount(String queueName) {
+        QDBQueueStatus queueStatus = recoveryMetrics.recordQDBRequest("queueStatus",
+                () -> restTemplate.getForObject(buildCreateQueueURL(queueName), QDBQueueStatus.class));
+        return queueStatus == null ? 0 : queueStatus.getMessageCount();
     }
 
     public void addInputBindingToQDBDeadLetterQueue(String rabbitQueueName, String qdbQueueName) {
         logger.info("[QDBManager] Creating an input binding between **{}** RabbitMQ queue and **{}** QDB queue",
                 rabbitQueueName, qdbQueueName);
-        RecoverProperties.RabbitMQProp rabbitProp = recoverProperties.getRabbitMQProp();
 
-        InputBinding inputBinding = new InputBinding(rabbitProp, constructUrl());
+        InputBinding inputBinding = new InputBinding(rabbitQueueName, constructUrl());
 
         HttpHeaders headers = new HttpHeaders();
         headers.setContentType(MediaType.APPLICATION_JSON);
 
         HttpEntity<InputBinding> entity = new HttpEntity<>(inputBinding, headers);
 
-        restTemplate.postForEntity(buildInputQueueBindingURL(qdbQueueName), entity, InputBinding.class);
+        recoveryMetrics.recordQDBRequest("addInputBinding",
+                () -> restTemplate.postForEntity(buildInputQueueBindingURL(qdbQueueName), entity, InputBinding.class));
     }
 
     public void removeInputBindingFromQDBDeadLetterQueue(String rabbitQueueName, String qdbQueueName) {
         logger.info("[QDBManager] Removing the input binding between **{}** RabbitMQ queue and **{}** QDB queue",
                 rabbitQueueName, qdbQueueName);
 
-        restTemplate.delete(buildInputQueueBindingURL(qdbQueueName));
+        recoveryMetrics.recordQDBRequest("removeInputBinding", () -> {
+            restTemplate.delete(buildInputQueueBindingURL(qdbQueueName));
+            return null;
+        });
+    }
+
+    /**
+     * Reads the filtered messages of the given QDB queue and passes them one by one to the given consumer
+     * while the response is still being downloaded.
+     *
+     * @param qdbQueueName the name of the QDB queue to read the messages from
+     * @param messageConsumer the {@link Consumer} that processes the read messages
+     */
+    public void filterMessagesFromQDBDeadLetterQueue(String qdbQueueName, Consumer<MessageToReplay> messageConsumer) {
+        filterMessagesFromQDBDeadLetterQueue(qdbQueueName, null, messageConsumer);
     }
 
-    public ResponseEntity<String> filterMessagesFromQDBDeadLetterQueue(String qdbQueueName) {
-        MessageFilter messageFilter = new MessageFilter(recoverProperties.getQdbProp().getMessageFilter());
+    /**
+     * Reads the filtered messages of the given QDB queue starting from the given message ID
+     * and passes them one by one to the given consumer while the response is still being downloaded.
+     * If the page size is configured, then the messages are read with several requests,
+     * each of them continuing from the ID following the last read message.
+     * If the shard concurrency is more than 1, then the queue is split into ID ranges read concurrently
+     * and the messages are still passed to the consumer in the order of their IDs.
+     * The criteria that QDB can not evaluate are applied on the read messages by a {@link LocalMessageFilter}.
+     *
+     * @param qdbQueueName the name of the QDB queue to read the messages from
+     * @param fromId the ID of the first message to read or null to use the configured filter
+     * @param messageConsumer the {@link Consumer} that processes the read messages
+     */
+    public void filterMessagesFromQDBDeadLetterQueue(String qdbQueueName, String fromId,
+                                                     Consumer<MessageToReplay> messageConsumer) {
+        RecoverProperties.QdbProp qdbProp = recoverProperties.getQdbProp();
+        MessageFilter messageFilter = buildMessageFilter(qdbProp, fromId);
+        LocalMessageFilter localMessageFilter = new LocalMessageFilter(qdbProp.getMessageFilter(), false);
         logger.info("[QDBManager] Reading messages from the QDB Failure queue");
         logger.info("Applied filter: {}", messageFilter);
+        if (localMessageFilter.hasCriteria()) {
+            logger.info("Applied local filter: {}", localMessageFilter);
+        }
+
+        Consumer<MessageToReplay> filteredMessageConsumer = message -> {
+            if (localMessageFilter.test(message)) {
+                messageConsumer.accept(message);
+            }
+        };
+        if (qdbProp.getShardProp().getConcurrency() > 1) {
+            readShards(qdbQueueName, Long.parseLong(messageFilter.getFromId()), filteredMessageConsumer);
+        } else {
+            readRange(qdbQueueName, messageFilter, qdbProp.getPageSize(), Long.MAX_VALUE, filteredMessageConsumer);
+        }
+    }
+
+    /**
+     * Splits the IDs from the first to the last message into the given number of ranges of the same size
+     * and returns the first ID of every range.
+     */
+    static long[] splitIdRange(long firstMessageId, long lastMessageId, int shardCount) {
+        long idCount = lastMessageId - firstMessageId + 1;
+        long[] shardStartIds = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardStartIds[i] = firstMessageId + idCount * i / shardCount;
+        }
+
+        return shardStartIds;
+    }
+
+    /**
+     * Reads the ID ranges of the queue on several threads. Every range is streamed into a bounded queue
+     * of a page size, the consumer drains the queues one after the other in the order of the ranges.
+     * The reading of a range blocks while its queue is full, so at most as many pages are held in memory
+     * as the concurrency.
+     * The number of the ranges comes from the number of the messages in the queue, assuming that their IDs
+     * are evenly distributed. The last range is not closed, it also reads the messages stored meanwhile.
+     */
+    private void readShards(String qdbQueueName, long fromId, Consumer<MessageToReplay> messageConsumer) {
+        RecoverProperties.QdbProp qdbProp = recoverProperties.getQdbProp();
+        RecoverProperties.QdbProp.ShardProp shardProp = qdbProp.getShardProp();
+        Long firstMessageId = findMessageId(qdbQueueName, fromId);
+        if (firstMessageId == null) {
+            return;
+        }
+        long lastMessageId = findLastMessageId(qdbQueueName, firstMessageId);
+        long messageCount = getQDBQueueMessageCount(qdbQueueName);
+        int shardCount = (int) Math.min(lastMessageId - firstMessageId + 1, Math.max(shardProp.getConcurrency(),
+                (messageCount + shardProp.getMessagesPerShard() - 1) / shardProp.getMessagesPerShard()));
+        long[] shardStartIds = splitIdRange(firstMessageId, lastMessageId, shardCount);
+        int pageSize = qdbProp.getPageSize() > 0 ? qdbProp.getPageSize() : shardProp.getMessagesPerShard();
+        logger.info("[QDBManager] Reading the messages from ID {} to {} in {} shards with {} threads",
+                firstMessageId, lastMessageId, shardCount, shardProp.getConcurrency());
+
+        ExecutorService executor = Executors.newFixedThreadPool(shardProp.getConcurrency());
+        Deque<Shard> shards = new ArrayDeque<>();
+        try {
+            int nextShard = 0;
+            while (nextShard < shardCount || !shards.isEmpty()) {
+                while (nextShard < shardCount && shards.size() < shardProp.getConcurrency()) {
+                    MessageFilter messageFilter =
+                            buildMessageFilter(qdbProp, String.valueOf(shardStartIds[nextShard]));
+                    messageFilter.setLimit(String.valueOf(pageSize));
+                    long toId = nextShard + 1 < shardCount ? shardStartIds[nextShard + 1] : Long.MAX_VALUE;
+                    BlockingQueue<MessageToReplay> messages = new ArrayBlockingQueue<>(pageSize);
+                    shards.addLast(new Shard(messages, executor.submit(() -> {
+                        try {
+                            readRange(qdbQueueName, messageFilter, pageSize, toId, message -> put(messages, message));
+                        } finally {
+                            messages.put(END_OF_SHARD);
+                        }
+                        return null;
+                    })));
+                    nextShard++;
+                }
+                shards.pollFirst().drainTo(messageConsumer);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The reading of the QDB shards has been interrupted.", e);
+        } catch (ExecutionException e) {
+            String errorMessage =
+                    String.format("Error happened reading a shard of the QDB queue: %s", e.getCause().getMessage());
+            logger.error(errorMessage);
+            throw new IllegalStateException(errorMessage, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void put(BlockingQueue<MessageToReplay> queue, MessageToReplay message) {
+        try {
+            queue.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Handing over the message of a QDB shard is interrupted.", e);
+        }
+    }
+
+    /**
+     * The messages of a shard being read and the result of its reading.
+     */
+    private static class Shard {
+        private final BlockingQueue<MessageToReplay> messages;
+        private final Future<?> reading;
 
+        private Shard(BlockingQueue<MessageToReplay> messages, Future<?> reading) {
+            this.messages = messages;
+            this.reading = reading;
+        }
+
+        /**
+         * Passes the messages of the shard to the given consumer as they are read,
+         * then throws the error of the reading, if there is any.
+         */
+        private void drainTo(Consumer<MessageToReplay> messageConsumer)
+                throws InterruptedException, ExecutionException {
+            MessageToReplay message;
+            while ((message = messages.take()) != END_OF_SHARD) {
+                messageConsumer.accept(message);
+            }
+            reading.get();
+        }
+    }
+
+    /**
+     * Reads the messages from the ID of the given filter until the given ID (exclusive) or the end of the queue.
+     * A page may contain messages after the range, they are skipped.
+     */
+    private void readRange(String qdbQueueName, MessageFilter messageFilter, int pageSize, long toId,
+                           Consumer<MessageToReplay> messageConsumer) {
+        long[] lastMessageId = {-1};
+        boolean[] endOfRange = {false};
+        int readMessageCount;
+        do {
+            readMessageCount = readMessages(qdbQueueName, messageFilter, message -> {
+                if (message.getMessageProperties() != null) {
+                    lastMessageId[0] = message.getMessageProperties().getId();
+                    endOfRange[0] = lastMessageId[0] >= toId;
+                }
+                if (!endOfRange[0]) {
+                    messageConsumer.accept(message);
+                }
+            });
+            messageFilter.setFromId(String.valueOf(lastMessageId[0] + 1));
+        } while (pageSize > 0 && readMessageCount >= pageSize && !endOfRange[0]);
+    }
+
+    /**
+     * Finds the ID of the last message of the queue with single message requests. The distance from the first
+     * message is doubled until there is no message after it, then the remaining interval is halved.
+     */
+    private long findLastMessageId(String qdbQueueName, long firstMessageId) {
+        long lastMessageId = firstMessageId;
+        long distance = 1;
+        Long messageId;
+        while ((messageId = findMessageId(qdbQueueName, firstMessageId + distance)) != null) {
+            lastMessageId = messageId;
+            distance *= 2;
+        }
+        long upperBound = firstMessageId + distance;
+        while (lastMessageId + 1 < upperBound) {
+            long middleId = lastMessageId + (upperBound - lastMessageId) / 2;
+            messageId = findMessageId(qdbQueueName, middleId);
+            if (messageId == null) {
+                upperBound = middleId;
+            } else {
+                lastMessageId = messageId;
+            }
+        }
+
+        return lastMessageId;
+    }
+
+    /**
+     * Returns the ID of the first message of the queue from the given ID regardless of the filter,
+     * or null if there is no such message.
+     */
+    private Long findMessageId(String qdbQueueName, long fromId) {
+        MessageFilter messageFilter = new MessageFilter(new RecoverProperties.QdbProp.MessageFilter());
+        messageFilter.setFromId(String.valueOf(fromId));
+        messageFilter.setLimit("1");
         UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(buildGetMessagesURL(qdbQueueName))
                 .query(messageFilter.toQueryString());
 
-        return restTemplate.getForEntity(builder.toUriString(), String.class);
+        return recoveryMetrics.recordQDBRequest("findMessageId", () ->
+                restTemplate.execute(builder.toUriString(), HttpMethod.GET, null, response -> {
+                    try (QDBMessageReader messageReader = new QDBMessageReader(response.getBody())) {
+                        MessageProperties messageProperties = messageReader.hasNext()
+                                ? messageReader.next().getMessageProperties()
+                                : null;
+                        return messageProperties == null ? null : messageProperties.getId();
+                    }
+                }));
+    }
+
+    /**
+     * Builds the filter of the first page of the messages to read.
+     */
+    static MessageFilter buildMessageFilter(RecoverProperties.QdbProp qdbProp, String fromId) {
+        MessageFilter messageFilter = new MessageFilter(qdbProp.getMessageFilter());
+        if (fromId != null) {
+            messageFilter.setFromId(fromId);
+        }
+        if (qdbProp.getPageSize() > 0) {
+            messageFilter.setLimit(String.valueOf(qdbProp.getPageSize()));
+        }
+
+        return messageFilter;
+    }
+
+    private int readMessages(String qdbQueueName, MessageFilter messageFilter,
+                             Consumer<MessageToReplay> messageConsumer) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(buildGetMessagesURL(qdbQueueName))
+                .query(messageFilter.toQueryString());
+
+        return recoveryMetrics.recordQDBRequest("readMessages", () ->
+                restTemplate.execute(builder.toUriString(), HttpMethod.GET, null, response -> {
+                    int readMessageCount = 0;
+                    CountingInputStream responseBody = new CountingInputStream(response.getBody());
+                    try (QDBMessageReader messageReader = new QDBMessageReader(responseBody, recordDecoder)) {
+                        while (messageReader.hasNext()) {
+                            recoveryMetrics.messageRead();
+                            messageConsumer.accept(messageReader.next());
+                            readMessageCount++;
+                        }
+                    } finally {
+                        recoveryMetrics.bytesRead(responseBody.getByteCount());
+                    }
+                    return readMessageCount;
+                }));
     }
 
     private String constructUrl() {
-        return "amqp://" + username + ":" + password + "@" + host + "/" + vhost;
+        return "amqp://" + username + ":" + password + "@" + host + ":" + port + "/" + vhost;
     }
 
     private String buildGetMessagesURL(String queueName) {
-        return String.join("/", buildCreateQueueURL(queueName), "messages");
+        return buildGetMessagesURL(recoverProperties.getQdbProp(), queueName);
     }
 
     private String buildCreateQueueURL(String queueName) {
-        RecoverProperties.QdbProp qdbProp = recoverProperties.getQdbProp();
+        return buildCreateQueueURL(recoverProperties.getQdbProp(), queueName);
+    }
+
+    static String buildGetMessagesURL(RecoverProperties.QdbProp qdbProp, String queueName) {
+        return String.join("/", buildCreateQueueURL(qdbProp, queueName), "messages");
+    }
+
+    static String buildCreateQueueURL(RecoverProperties.QdbProp qdbProp, String queueName) {
         StringBuilder builder = new StringBuilder(qdbProp.getBaseURL());
         builder
                 .append(qdbProp.getQueue().getBasePath())
@@ -0,0 +1,85 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * This class is responsible to read the messages of a QDB queue from the response of a filter query one by one.
+ * Only the messages of the chunk currently being read are kept in memory, so the memory usage is bounded
+ * by the size of the largest message and not by the size of the whole QDB queue.
+ * The records are split on the bytes of the stream by a {@link QDBRecordSplitter}
+ * without converting the whole record to characters.
+ */
+public class QDBMessageReader implements Iterator<MessageToReplay>, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(QDBMessageReader.class);
+
+    static final String ENCODED_MESSAGE_SEPARATOR = QDBRecordSplitter.ENCODED_MESSAGE_SEPARATOR;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final InputStream inputStream;
+    private final QDBRecordSplitter recordSplitter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final Deque<MessageToReplay> messages = new ArrayDeque<>();
+
+    private boolean endOfStream;
+
+    public QDBMessageReader(InputStream inputStream) {
+        this(inputStream, new QDBRecordDecoder());
+    }
+
+    public QDBMessageReader(InputStream inputStream, QDBRecordDecoder recordDecoder) {
+        this.inputStream = inputStream;
+        this.recordSplitter = new QDBRecordSplitter(recordDecoder);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (messages.isEmpty() && !endOfStream) {
+            readNextChunk();
+        }
+
+        return !messages.isEmpty();
+    }
+
+    @Override
+    public MessageToReplay next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException("There are no more messages in the QDB response.");
+        }
+
+        return messages.pollFirst();
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+
+    private void readNextChunk() {
+        try {
+            int readByteCount = inputStream.read(buffer);
+            if (readByteCount < 0) {
+                endOfStream = true;
+                recordSplitter.finish(messages::addLast);
+            } else {
+                recordSplitter.split(buffer, 0, readByteCount, messages::addLast);
+            }
+        } catch (IOException e) {
+            String errorMessage =
+                    String.format("Error happened reading the messages from the QDB response: %s", e.getMessage());
+            logger.error(errorMessage);
+            throw new UncheckedIOException(errorMessage, e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The status of a QDB queue as returned by the QDB server.
+ */
+@Data
+@NoArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class QDBQueueStatus {
+    private long messageCount;
+    private long size;
+}
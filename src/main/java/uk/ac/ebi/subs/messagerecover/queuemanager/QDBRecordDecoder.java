@@ -0,0 +1,111 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class is responsible to decode a single record of a QDB response into a {@link MessageToReplay}.
+ * The first line of a record contains the properties of the message in JSON format, the rest of the record is its body.
+ * The body might contain line feeds, too, as the records are split by the message separator,
+ * which also holds the line separators around it.
+ * The properties are parsed straight from the bytes of the record with a shared {@link ObjectReader},
+ * only the body is converted to a String. The original bytes of the body can be kept, too.
+ */
+public class QDBRecordDecoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(QDBRecordDecoder.class);
+
+    private static final ObjectReader PROPERTIES_READER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(MessageProperties.class);
+
+    private static final byte LINE_FEED = '\n';
+    private static final byte COLON = ':';
+    private static final byte OPENING_BRACE = '{';
+
+    private final boolean keepPayload;
+
+    public QDBRecordDecoder() {
+        this(false);
+    }
+
+    /**
+     * @param keepPayload if true, then the original bytes of the body are kept in the payload of the messages
+     */
+    public QDBRecordDecoder(boolean keepPayload) {
+        this.keepPayload = keepPayload;
+    }
+
+    /**
+     * Decodes the given part of a byte array.
+     *
+     * @param record the array holding the record
+     * @param offset the index of the first byte of the record
+     * @param length the number of the bytes of the record
+     * @return the decoded {@link MessageToReplay}
+     */
+    public MessageToReplay decode(byte[] record, int offset, int length) {
+        int end = offset + length;
+        int headerEnd = indexOf(record, LINE_FEED, offset, end);
+        if (headerEnd < 0) {
+            headerEnd = end;
+        }
+
+        int propertiesStart = indexOfProperties(record, offset, headerEnd);
+        MessageProperties messageProperties = readProperties(record, propertiesStart, headerEnd - propertiesStart);
+
+        int bodyStart = Math.min(headerEnd + 1, end);
+        MessageToReplay message = new MessageToReplay(messageProperties,
+                new String(record, bodyStart, end - bodyStart, StandardCharsets.UTF_8));
+        if (keepPayload) {
+            message.setPayload(Arrays.copyOfRange(record, bodyStart, end));
+        }
+
+        return message;
+    }
+
+    /**
+     * The properties JSON might be prefixed (e.g. with the ID of the message and a colon).
+     * A JSON object at the start is not searched, as its nested objects (e.g. the headers) follow a colon, too.
+     */
+    private static int indexOfProperties(byte[] record, int start, int end) {
+        if (start < end && record[start] == OPENING_BRACE) {
+            return start;
+        }
+        for (int i = start; i < end - 1; i++) {
+            if (record[i] == COLON && record[i + 1] == OPENING_BRACE) {
+                return i + 1;
+            }
+        }
+
+        return start;
+    }
+
+    private static int indexOf(byte[] record, byte value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (record[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static MessageProperties readProperties(byte[] record, int offset, int length) {
+        try {
+            return PROPERTIES_READER.readValue(record, offset, length);
+        } catch (IOException e) {
+            String errorMessage =
+                    String.format("Error happened converting the message properties from JSON: %s", e.getMessage());
+            logger.error(errorMessage);
+            throw new RuntimeException(errorMessage);
+        }
+    }
+}
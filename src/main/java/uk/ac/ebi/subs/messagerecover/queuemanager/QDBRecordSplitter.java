@@ -0,0 +1,112 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * This class is responsible to split the bytes of a QDB response into records, as the bytes arrive.
+ * The bytes can be pushed in chunks of any size, a record might span several chunks.
+ * The complete records are decoded by a {@link QDBRecordDecoder}, the blank ones are skipped.
+ * Only the record currently being split is kept in memory.
+ */
+public class QDBRecordSplitter {
+
+    /**
+     * QDB sends back the message separator in its URL encoded form.
+     */
+    static final String ENCODED_MESSAGE_SEPARATOR = urlEncode(
+            MessageFilter.LINE_SEPARATOR + MessageFilter.MESSAGE_SEPARATOR + MessageFilter.LINE_SEPARATOR);
+
+    private static final byte[] SEPARATOR_BYTES = ENCODED_MESSAGE_SEPARATOR.getBytes(StandardCharsets.US_ASCII);
+    private static final byte SEPARATOR_LAST_BYTE = SEPARATOR_BYTES[SEPARATOR_BYTES.length - 1];
+    private static final int INITIAL_RECORD_SIZE = 8192;
+
+    private final QDBRecordDecoder recordDecoder;
+
+    private byte[] record = new byte[INITIAL_RECORD_SIZE];
+    private int recordLength;
+
+    public QDBRecordSplitter(QDBRecordDecoder recordDecoder) {
+        this.recordDecoder = recordDecoder;
+    }
+
+    /**
+     * Splits the given chunk of the response and passes the completed messages to the given consumer.
+     *
+     * @param chunk the array holding the next bytes of the response
+     * @param offset the index of the first byte of the chunk
+     * @param length the number of the bytes of the chunk
+     * @param messageConsumer the {@link Consumer} of the completed messages
+     */
+    public void split(byte[] chunk, int offset, int length, Consumer<MessageToReplay> messageConsumer) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            byte value = chunk[i];
+            appendToRecord(value);
+            if (value == SEPARATOR_LAST_BYTE && endsWithSeparator()) {
+                recordLength -= SEPARATOR_BYTES.length;
+                completeRecord(messageConsumer);
+            }
+        }
+    }
+
+    /**
+     * Passes the last message of the response to the given consumer, if the response does not end with a separator.
+     *
+     * @param messageConsumer the {@link Consumer} of the last message
+     */
+    public void finish(Consumer<MessageToReplay> messageConsumer) {
+        completeRecord(messageConsumer);
+    }
+
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("The UTF-8 encoding is not supported.", e);
+        }
+    }
+
+    private void completeRecord(Consumer<MessageToReplay> messageConsumer) {
+        if (!isBlankRecord()) {
+            messageConsumer.accept(recordDecoder.decode(record, 0, recordLength));
+        }
+        recordLength = 0;
+    }
+
+    private void appendToRecord(byte value) {
+        if (recordLength == record.length) {
+            record = Arrays.copyOf(record, record.length * 2);
+        }
+        record[recordLength++] = value;
+    }
+
+    private boolean endsWithSeparator() {
+        int separatorStart = recordLength - SEPARATOR_BYTES.length;
+
+        if (separatorStart < 0) {
+            return false;
+        }
+
+        for (int i = 0; i < SEPARATOR_BYTES.length; i++) {
+            if (record[separatorStart + i] != SEPARATOR_BYTES[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isBlankRecord() {
+        for (int i = 0; i < recordLength; i++) {
+            if (!Character.isWhitespace(record[i])) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,209 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.ipc.netty.http.client.HttpClient;
+import reactor.ipc.netty.http.client.HttpClientException;
+import reactor.ipc.netty.resources.PoolResources;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class is the non-blocking counterpart of the reading methods of {@link QDBManager}.
+ * The HTTP calls run on a few shared event loop threads, so the messages of several QDB queues can be read
+ * concurrently without a thread per queue. The messages are decoded as the bytes of the response arrive
+ * and the reading of the response follows the demand of the subscriber.
+ * The creation of the QDB queue and its input binding are one-off calls, they stay in {@link QDBManager}.
+ */
+@Component
+public class ReactiveQDBManager implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveQDBManager.class);
+
+    private static final ObjectReader QUEUE_STATUS_READER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readerFor(QDBQueueStatus.class);
+
+    private static final String READ_TIMEOUT_HANDLER = "qdbReadTimeout";
+
+    private RecoverProperties recoverProperties;
+    private RecoveryMetrics recoveryMetrics;
+    private PoolResources poolResources;
+    private HttpClient httpClient;
+
+    public ReactiveQDBManager(RecoverProperties recoverProperties, RecoveryMetrics recoveryMetrics) {
+        this.recoverProperties = recoverProperties;
+        this.recoveryMetrics = recoveryMetrics;
+
+        RecoverProperties.QdbProp.HttpProp httpProp = recoverProperties.getQdbProp().getHttpProp();
+        this.poolResources = PoolResources.fixed("qdb", httpProp.getMaxConnections(),
+                httpProp.getConnectionRequestTimeoutInMs());
+        this.httpClient = HttpClient.create(options -> options
+                .poolResources(poolResources)
+                .compression(httpProp.isCompression())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, httpProp.getConnectTimeoutInMs()));
+    }
+
+    @Override
+    public void destroy() {
+        poolResources.dispose();
+    }
+
+    /**
+     * Returns the number of the messages stored in the given QDB queue.
+     *
+     * @param queueName the name of the QDB queue
+     * @return a {@link Mono} of the number of the messages stored in the QDB queue
+     */
+    public Mono<Long> getQDBQueueMessageCount(String queueName) {
+        String url = QDBManager.buildCreateQueueURL(recoverProperties.getQdbProp(), queueName);
+
+        return withRetries(Mono.defer(() -> httpClient.get(url)))
+                .flatMap(response -> response.receive().aggregate().asByteArray())
+                .map(this::readQueueStatus)
+                .map(QDBQueueStatus::getMessageCount);
+    }
+
+    /**
+     * Reads the filtered messages of the given QDB queue starting from the given message ID.
+     * If the page size is configured, then the messages are read with several requests,
+     * each of them continuing from the ID following the last read message.
+     * The criteria that QDB can not evaluate are applied on the read messages by a {@link LocalMessageFilter}.
+     *
+     * @param qdbQueueName the name of the QDB queue to read the messages from
+     * @param fromId the ID of the first message to read or null to use the configured filter
+     * @return a {@link Flux} of the filtered messages
+     */
+    public Flux<MessageToReplay> filterMessagesFromQDBDeadLetterQueue(String qdbQueueName, String fromId) {
+        RecoverProperties.QdbProp qdbProp = recoverProperties.getQdbProp();
+        MessageFilter messageFilter = QDBManager.buildMessageFilter(qdbProp, fromId);
+        LocalMessageFilter localMessageFilter = new LocalMessageFilter(qdbProp.getMessageFilter(), false);
+        logger.info("[ReactiveQDBManager] Reading messages from the {} QDB queue", qdbQueueName);
+        logger.info("Applied filter: {}", messageFilter);
+
+        return readPages(qdbQueueName, messageFilter.toQueryString(), messageFilter, qdbProp.getPageSize())
+                .filter(localMessageFilter);
+    }
+
+    /**
+     * Reads a page, then continues with the next one from the ID following the last read message,
+     * if the page was full.
+     */
+    private Flux<MessageToReplay> readPages(String qdbQueueName, String queryString, MessageFilter messageFilter,
+                                            int pageSize) {
+        return Flux.defer(() -> {
+            AtomicLong lastMessageId = new AtomicLong(-1);
+            AtomicInteger readMessageCount = new AtomicInteger();
+
+            return readMessages(qdbQueueName, queryString)
+                    .doOnNext(message -> {
+                        readMessageCount.incrementAndGet();
+                        if (message.getMessageProperties() != null) {
+                            lastMessageId.set(message.getMessageProperties().getId());
+                        }
+                    })
+                    .concatWith(Flux.defer(() -> {
+                        if (pageSize <= 0 || readMessageCount.get() < pageSize) {
+                            return Flux.empty();
+                        }
+                        messageFilter.setFromId(String.valueOf(lastMessageId.get() + 1));
+                        return readPages(qdbQueueName, messageFilter.toQueryString(), messageFilter, pageSize);
+                    }));
+        });
+    }
+
+    private Flux<MessageToReplay> readMessages(String qdbQueueName, String queryString) {
+        RecoverProperties.QdbProp qdbProp = recoverProperties.getQdbProp();
+        String url = UriComponentsBuilder
+                .fromHttpUrl(QDBManager.buildGetMessagesURL(qdbProp, qdbQueueName))
+                .query(queryString)
+                .toUriString();
+        int readTimeoutInMs = qdbProp.getHttpProp().getReadTimeoutInMs();
+
+        return withRetries(Mono.defer(() -> httpClient.get(url)))
+                .flatMapMany(response -> {
+                    QDBRecordSplitter recordSplitter = new QDBRecordSplitter(new TimedQDBRecordDecoder(
+                            recoveryMetrics, recoverProperties.getReplayProp().isPassthrough()));
+                    response.context().addHandlerFirst(READ_TIMEOUT_HANDLER,
+                            new ReadRequestTimeoutHandler(readTimeoutInMs));
+                    return response.receive()
+                            .asByteArray()
+                            .concatMapIterable(chunk -> splitChunk(recordSplitter, chunk))
+                            .concatWith(Flux.defer(() -> Flux.fromIterable(finish(recordSplitter))));
+                })
+                .doOnNext(message -> recoveryMetrics.messageRead());
+    }
+
+    private List<MessageToReplay> splitChunk(QDBRecordSplitter recordSplitter, byte[] chunk) {
+        recoveryMetrics.bytesRead(chunk.length);
+        List<MessageToReplay> messages = new ArrayList<>();
+        recordSplitter.split(chunk, 0, chunk.length, messages::add);
+
+        return messages;
+    }
+
+    private static List<MessageToReplay> finish(QDBRecordSplitter recordSplitter) {
+        List<MessageToReplay> messages = new ArrayList<>(1);
+        recordSplitter.finish(messages::add);
+
+        return messages;
+    }
+
+    /**
+     * Retries the request with a doubling delay, if it fails with an I/O error
+     * or the server is temporarily unavailable.
+     */
+    private <T> Mono<T> withRetries(Mono<T> request) {
+        RecoverProperties.QdbProp.HttpProp httpProp = recoverProperties.getQdbProp().getHttpProp();
+        int maxRetries = Math.max(0, httpProp.getMaxRetries());
+
+        return request.retryWhen(errors -> errors
+                .zipWith(Flux.range(1, maxRetries + 1), (error, attempt) -> {
+                    if (attempt > maxRetries || !isTemporaryError(error)) {
+                        throw Exceptions.propagate(error);
+                    }
+                    logger.warn("[ReactiveQDBManager] QDB request has failed: {}, retry {} of {}",
+                            error.getMessage(), attempt, maxRetries);
+                    return attempt;
+                })
+                .flatMap(attempt -> Mono.delay(
+                        Duration.ofMillis((long) httpProp.getRetryBackoffInMs() << (attempt - 1)))));
+    }
+
+    private static boolean isTemporaryError(Throwable error) {
+        if (error instanceof HttpClientException) {
+            HttpResponseStatus status = ((HttpClientException) error).status();
+            return status.equals(HttpResponseStatus.BAD_GATEWAY)
+                    || status.equals(HttpResponseStatus.SERVICE_UNAVAILABLE)
+                    || status.equals(HttpResponseStatus.GATEWAY_TIMEOUT);
+        }
+
+        return error instanceof IOException;
+    }
+
+    private QDBQueueStatus readQueueStatus(byte[] response) {
+        try {
+            return QUEUE_STATUS_READER.readValue(response);
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+}
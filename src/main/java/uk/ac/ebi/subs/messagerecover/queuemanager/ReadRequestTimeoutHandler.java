@@ -0,0 +1,69 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.ReadTimeoutException;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fails the reading of a QDB response, if no data arrives on the connection within the read timeout
+ * after a read has been requested.
+ * The HTTP client reads the connection only when the subscriber has requested more messages.
+ * Unlike the ReadTimeoutHandler of Netty this handler does not count the time while the reading is paused,
+ * so a slow replay does not fail the reading.
+ */
+class ReadRequestTimeoutHandler extends ChannelDuplexHandler {
+
+    private final long readTimeoutInMs;
+    private ScheduledFuture<?> timeout;
+    private boolean timedOut;
+
+    ReadRequestTimeoutHandler(long readTimeoutInMs) {
+        this.readTimeoutInMs = readTimeoutInMs;
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) {
+        if (timeout == null && !timedOut) {
+            timeout = ctx.executor().schedule(() -> readTimedOut(ctx), readTimeoutInMs, TimeUnit.MILLISECONDS);
+        }
+        ctx.read();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        cancelTimeout();
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancelTimeout();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        cancelTimeout();
+    }
+
+    private void readTimedOut(ChannelHandlerContext ctx) {
+        timeout = null;
+        if (!ctx.channel().isActive()) {
+            return;
+        }
+
+        timedOut = true;
+        ctx.fireExceptionCaught(ReadTimeoutException.INSTANCE);
+        ctx.close();
+    }
+
+    private void cancelTimeout() {
+        if (timeout != null) {
+            timeout.cancel(false);
+            timeout = null;
+        }
+    }
+}
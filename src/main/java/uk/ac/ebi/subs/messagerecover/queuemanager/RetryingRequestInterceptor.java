@@ -0,0 +1,79 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Retries the idempotent QDB requests (GET, HEAD, PUT, DELETE), if they fail with an I/O error
+ * or the server is temporarily unavailable. The delay before a retry is doubled after every attempt.
+ * Only the sending of the request and the receiving of the response status are retried,
+ * a response body that breaks while it is being read is not.
+ */
+public class RetryingRequestInterceptor implements ClientHttpRequestInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetryingRequestInterceptor.class);
+
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS =
+            EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.PUT, HttpMethod.DELETE);
+    private static final Set<HttpStatus> TEMPORARY_ERRORS =
+            EnumSet.of(HttpStatus.BAD_GATEWAY, HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.GATEWAY_TIMEOUT);
+
+    private final int maxRetries;
+    private final long backoffInMs;
+
+    public RetryingRequestInterceptor(int maxRetries, long backoffInMs) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.backoffInMs = Math.max(0, backoffInMs);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        if (!IDEMPOTENT_METHODS.contains(request.getMethod())) {
+            return execution.execute(request, body);
+        }
+
+        long delayInMs = backoffInMs;
+        for (int attempt = 0; ; attempt++) {
+            boolean lastAttempt = attempt >= maxRetries;
+            try {
+                ClientHttpResponse response = execution.execute(request, body);
+                if (lastAttempt || !TEMPORARY_ERRORS.contains(response.getStatusCode())) {
+                    return response;
+                }
+                logger.warn("[RetryingRequestInterceptor] {} {} has returned {}, retrying in {} ms",
+                        request.getMethod(), request.getURI(), response.getStatusCode(), delayInMs);
+                response.close();
+            } catch (IOException e) {
+                if (lastAttempt || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                logger.warn("[RetryingRequestInterceptor] {} {} has failed: {}, retrying in {} ms",
+                        request.getMethod(), request.getURI(), e.getMessage(), delayInMs);
+            }
+
+            sleep(delayInMs);
+            delayInMs *= 2;
+        }
+    }
+
+    private static void sleep(long delayInMs) throws InterruptedIOException {
+        try {
+            Thread.sleep(delayInMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Waiting for retrying the QDB request is interrupted.");
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import java.util.function.Predicate;
+
+/**
+ * A routing key pattern with the syntax of the topic exchange bindings.
+ * The words are separated by dots, '*' matches exactly one word, '#' matches zero or more words.
+ */
+public class RoutingKeyPattern implements Predicate<String> {
+
+    private final String pattern;
+    private final String[] patternWords;
+
+    public RoutingKeyPattern(String pattern) {
+        this.pattern = pattern;
+        this.patternWords = pattern.split("\\.", -1);
+    }
+
+    /**
+     * Returns true, if the given routing key matches the pattern.
+     *
+     * @param routingKey the routing key to check
+     * @return true, if the given routing key matches the pattern
+     */
+    @Override
+    public boolean test(String routingKey) {
+        if (routingKey == null) {
+            return false;
+        }
+
+        String[] words = routingKey.split("\\.", -1);
+        boolean[][] matches = new boolean[patternWords.length + 1][words.length + 1];
+        matches[0][0] = true;
+
+        for (int p = 1; p <= patternWords.length; p++) {
+            String patternWord = patternWords[p - 1];
+            for (int w = 0; w <= words.length; w++) {
+                if (patternWord.equals("#")) {
+                    matches[p][w] = matches[p - 1][w] || (w > 0 && matches[p][w - 1]);
+                } else {
+                    matches[p][w] = w > 0 && matches[p - 1][w - 1]
+                            && (patternWord.equals("*") || patternWord.equals(words[w - 1]));
+                }
+            }
+        }
+
+        return matches[patternWords.length][words.length];
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+}
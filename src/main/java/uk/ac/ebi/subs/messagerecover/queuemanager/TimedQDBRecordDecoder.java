@@ -0,0 +1,21 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+
+/**
+ * Measures the time spent on parsing the records separately from reading the response.
+ */
+class TimedQDBRecordDecoder extends QDBRecordDecoder {
+
+    private final RecoveryMetrics recoveryMetrics;
+
+    TimedQDBRecordDecoder(RecoveryMetrics recoveryMetrics, boolean keepPayload) {
+        super(keepPayload);
+        this.recoveryMetrics = recoveryMetrics;
+    }
+
+    @Override
+    public MessageToReplay decode(byte[] record, int offset, int length) {
+        return recoveryMetrics.recordDecode(() -> super.decode(record, offset, length));
+    }
+}
@@ -0,0 +1,262 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ReturnListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionProxy;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the messages with publisher confirms.
+ * At most a configured number of messages can wait for their confirmation at the same time,
+ * the publishing blocks until the broker confirms the oldest ones.
+ * The delivery callbacks are called in publishing order, so the checkpoint never gets ahead of
+ * a message that has not been confirmed yet. After a rejected (nacked) message no more callbacks are called
+ * and {@link #flush()} fails, so the recovery can be resumed from the rejected message.
+ * The messages are published as mandatory, a message that can not be routed to any queue is returned
+ * by the broker before it is confirmed, so it is handled as a rejected message instead of a delivered one.
+ *
+ * The messages are published on a plain channel of the connection, not through the RabbitTemplate,
+ * as the template adds a correlation header to every mandatory message. The confirms are matched
+ * by the publish sequence number, the returned messages by their routing key, message ID and body,
+ * so the replayed messages keep exactly their original headers.
+ */
+public class ConfirmingMessageReplayer implements MessageReplayer, ConfirmListener, ReturnListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConfirmingMessageReplayer.class);
+
+    private Supplier<Channel> channelFactory;
+    private ReplayMessageConverter messageConverter;
+    private MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+    private String exchangeName;
+    private int windowSize;
+    private int confirmTimeoutInSec;
+    private Channel channel;
+
+    private final Semaphore window;
+    private final OrderedDeliveries deliveries = new OrderedDeliveries();
+    private final ConcurrentNavigableMap<Long, PendingDelivery> pendingDeliveries = new ConcurrentSkipListMap<>();
+    private final AtomicLong confirmedMessageCount = new AtomicLong();
+
+    public ConfirmingMessageReplayer(RabbitMessagingTemplate rabbitMessagingTemplate, String exchangeName,
+                                     int windowSize, int confirmTimeoutInSec) {
+        this(rabbitMessagingTemplate, exchangeName, windowSize, confirmTimeoutInSec, false);
+    }
+
+    public ConfirmingMessageReplayer(RabbitMessagingTemplate rabbitMessagingTemplate, String exchangeName,
+                                     int windowSize, int confirmTimeoutInSec, boolean passthrough) {
+        this(() -> createPlainChannel(rabbitMessagingTemplate.getRabbitTemplate().getConnectionFactory()),
+                new ReplayMessageConverter(rabbitMessagingTemplate, passthrough),
+                exchangeName, windowSize, confirmTimeoutInSec);
+    }
+
+    ConfirmingMessageReplayer(Supplier<Channel> channelFactory, ReplayMessageConverter messageConverter,
+                              String exchangeName, int windowSize, int confirmTimeoutInSec) {
+        this.channelFactory = channelFactory;
+        this.messageConverter = messageConverter;
+        this.exchangeName = exchangeName;
+        this.windowSize = windowSize;
+        this.confirmTimeoutInSec = confirmTimeoutInSec;
+        this.window = new Semaphore(windowSize);
+    }
+
+    /**
+     * The caching connection factory wraps its channels to route the confirms and the returns
+     * by a header of the message, so the channel is created on its target connection.
+     */
+    private static Channel createPlainChannel(ConnectionFactory connectionFactory) {
+        Connection connection = connectionFactory.createConnection();
+        if (connection instanceof ConnectionProxy) {
+            connection = ((ConnectionProxy) connection).getTargetConnection();
+        }
+
+        return connection.createChannel(false);
+    }
+
+    @Override
+    public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        try {
+            window.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for the confirmation of the replayed messages is interrupted.", e);
+        }
+
+        OrderedDeliveries.Delivery delivery = deliveries.register(message, deliveryCallback);
+        Message amqpMessage = messageConverter.toAmqpMessage(message);
+        AMQP.BasicProperties properties = messagePropertiesConverter.fromMessageProperties(
+                amqpMessage.getMessageProperties(), StandardCharsets.UTF_8.name());
+        Long sequenceNumber = null;
+        try {
+            synchronized (this) {
+                Channel confirmingChannel = getChannel();
+                sequenceNumber = confirmingChannel.getNextPublishSeqNo();
+                pendingDeliveries.put(sequenceNumber,
+                        new PendingDelivery(delivery, message.getRoutingKey(), properties, amqpMessage.getBody()));
+                confirmingChannel.basicPublish(exchangeName, message.getRoutingKey(), true, properties,
+                        amqpMessage.getBody());
+            }
+        } catch (IOException | RuntimeException e) {
+            if (sequenceNumber != null) {
+                pendingDeliveries.remove(sequenceNumber);
+            }
+            deliveries.cancel(delivery);
+            window.release();
+            if (e instanceof IOException) {
+                throw new UncheckedIOException("Error happened publishing a replayed message.", (IOException) e);
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
+    /**
+     * The broker returns an unroutable mandatory message before confirming it.
+     * The oldest unconfirmed message with the same routing key, message ID and body is marked as returned.
+     */
+    @Override
+    public void handleReturn(int replyCode, String replyText, String exchange, String routingKey,
+                             AMQP.BasicProperties properties, byte[] body) {
+        for (PendingDelivery pendingDelivery : pendingDeliveries.values()) {
+            if (pendingDelivery.isReturnOf(routingKey, properties, body)) {
+                pendingDelivery.returned = true;
+                break;
+            }
+        }
+        logger.error("[ConfirmingMessageReplayer] message with routing key: {} is returned by the broker: {} {}",
+                routingKey, replyCode, replyText);
+    }
+
+    @Override
+    public void handleAck(long deliveryTag, boolean multiple) {
+        confirm(deliveryTag, multiple, true);
+    }
+
+    @Override
+    public void handleNack(long deliveryTag, boolean multiple) {
+        confirm(deliveryTag, multiple, false);
+    }
+
+    private void confirm(long deliveryTag, boolean multiple, boolean ack) {
+        List<PendingDelivery> confirmedDeliveries = new ArrayList<>();
+        if (multiple) {
+            ConcurrentNavigableMap<Long, PendingDelivery> confirmed = pendingDeliveries.headMap(deliveryTag, true);
+            confirmedDeliveries.addAll(confirmed.values());
+            confirmed.clear();
+        } else {
+            PendingDelivery pendingDelivery = pendingDeliveries.remove(deliveryTag);
+            if (pendingDelivery != null) {
+                confirmedDeliveries.add(pendingDelivery);
+            }
+        }
+
+        for (PendingDelivery pendingDelivery : confirmedDeliveries) {
+            OrderedDeliveries.Delivery delivery = pendingDelivery.delivery;
+            if (ack && !pendingDelivery.returned) {
+                confirmedMessageCount.incrementAndGet();
+                logger.debug("[ConfirmingMessageReplayer] message with routing key: {} is confirmed",
+                        delivery.getMessage().getRoutingKey());
+                deliveries.delivered(delivery);
+            } else {
+                logger.error("[ConfirmingMessageReplayer] message with routing key: {} and properties: {} " +
+                                "is rejected by the broker: {}", delivery.getMessage().getRoutingKey(),
+                        delivery.getMessage().getMessageProperties(), pendingDelivery.returned ? "unroutable" : "nack");
+                deliveries.failed(delivery);
+            }
+            window.release();
+        }
+    }
+
+    @Override
+    public void flush() {
+        try {
+            if (!window.tryAcquire(windowSize, confirmTimeoutInSec, TimeUnit.SECONDS)) {
+                throw new IllegalStateException(String.format(
+                        "%d replayed messages have not been confirmed in %d seconds.",
+                        windowSize - window.availablePermits(), confirmTimeoutInSec));
+            }
+            window.release(windowSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for the confirmation of the replayed messages is interrupted.", e);
+        }
+
+        long rejectedMessageCount = deliveries.getFailedDeliveryCount();
+        logger.info("[ConfirmingMessageReplayer] {} messages confirmed, {} messages rejected",
+                confirmedMessageCount.get(), rejectedMessageCount);
+        if (rejectedMessageCount > 0) {
+            throw new IllegalStateException(
+                    String.format("%d replayed messages have been rejected by the broker.", rejectedMessageCount));
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException | TimeoutException | RuntimeException e) {
+            logger.warn("[ConfirmingMessageReplayer] Error happened closing the channel: {}", e.getMessage());
+        }
+        channel = null;
+    }
+
+    private Channel getChannel() throws IOException {
+        if (channel == null) {
+            Channel confirmingChannel = channelFactory.get();
+            confirmingChannel.addConfirmListener(this);
+            confirmingChannel.addReturnListener(this);
+            confirmingChannel.confirmSelect();
+            channel = confirmingChannel;
+        }
+
+        return channel;
+    }
+
+    private static class PendingDelivery {
+        private final OrderedDeliveries.Delivery delivery;
+        private final String routingKey;
+        private final String messageId;
+        private final byte[] body;
+        private volatile boolean returned;
+
+        private PendingDelivery(OrderedDeliveries.Delivery delivery, String routingKey,
+                                AMQP.BasicProperties properties, byte[] body) {
+            this.delivery = delivery;
+            this.routingKey = routingKey;
+            this.messageId = properties.getMessageId();
+            this.body = body;
+        }
+
+        private boolean isReturnOf(String returnedRoutingKey, AMQP.BasicProperties properties, byte[] returnedBody) {
+            return !returned && Objects.equals(routingKey, returnedRoutingKey)
+                    && Objects.equals(messageId, properties.getMessageId()) && Arrays.equals(body, returnedBody);
+        }
+    }
+}
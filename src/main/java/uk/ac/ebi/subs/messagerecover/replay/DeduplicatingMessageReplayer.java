@@ -0,0 +1,97 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Skips the messages that have already been replayed to the same exchange by this or an earlier recovery.
+ * A message is recorded in the {@link DeduplicationIndex} when it has been delivered to the broker,
+ * so a message that could not be delivered is replayed again by the next recovery.
+ * The delivery callback of a skipped message is called, too, in the order of the replayed messages.
+ * The messages are identified by their routing key and original body or, if a key pattern is set,
+ * by the first group of its first match in the original body (e.g. a message ID).
+ * A message that has been rejected by its consumers is identified by its number of rejections, too,
+ * so a replayed message that fails again is not skipped, but replayed, delayed or parked by its new failure count.
+ */
+public class DeduplicatingMessageReplayer implements MessageReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeduplicatingMessageReplayer.class);
+
+    private MessageReplayer replayer;
+    private DeduplicationIndex deduplicationIndex;
+    private String exchangeName;
+    private Pattern keyPattern;
+    private RecoveryMetrics recoveryMetrics;
+    private final OrderedDeliveries deliveries = new OrderedDeliveries();
+
+    DeduplicatingMessageReplayer(MessageReplayer replayer, DeduplicationIndex deduplicationIndex, String exchangeName,
+                                 String keyPattern, RecoveryMetrics recoveryMetrics) {
+        this.replayer = replayer;
+        this.deduplicationIndex = deduplicationIndex;
+        this.exchangeName = exchangeName;
+        this.keyPattern = keyPattern == null || keyPattern.isEmpty() ? null : Pattern.compile(keyPattern);
+        this.recoveryMetrics = recoveryMetrics;
+    }
+
+    @Override
+    public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        long fingerprint = fingerprint(message);
+        OrderedDeliveries.Delivery delivery = deliveries.register(message, deliveryCallback);
+        if (deduplicationIndex.contains(fingerprint)) {
+            logger.debug("[DeduplicatingMessageReplayer] skipping an already replayed message with routing key: {}",
+                    message.getRoutingKey());
+            recoveryMetrics.messageSkippedAsDuplicate();
+            deliveries.delivered(delivery);
+            return;
+        }
+
+        try {
+            replayer.replay(message, deliveredMessage -> {
+                deduplicationIndex.add(fingerprint);
+                deliveries.delivered(delivery);
+            });
+        } catch (RuntimeException e) {
+            deliveries.cancel(delivery);
+            throw e;
+        }
+    }
+
+    @Override
+    public void flush() {
+        replayer.flush();
+        deduplicationIndex.force();
+    }
+
+    @Override
+    public void close() {
+        replayer.close();
+    }
+
+    /**
+     * The failure count is left out of the fingerprint of a message that has not failed,
+     * so those messages keep the fingerprints of the existing index files.
+     */
+    private long fingerprint(MessageToReplay message) {
+        long failureCount = DelayingMessageReplayer.failureCount(message);
+        String failures = failureCount == 0 ? null : String.valueOf(failureCount);
+        if (keyPattern != null && message.getBody() != null) {
+            Matcher matcher = keyPattern.matcher(message.getBody());
+            if (matcher.find()) {
+                String key = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+                return failures == null
+                        ? DeduplicationIndex.fingerprint(exchangeName, key)
+                        : DeduplicationIndex.fingerprint(exchangeName, key, failures);
+            }
+        }
+
+        return failures == null
+                ? DeduplicationIndex.fingerprint(exchangeName, message.getRoutingKey(), message.getBody())
+                : DeduplicationIndex.fingerprint(exchangeName, message.getRoutingKey(), message.getBody(), failures);
+    }
+}
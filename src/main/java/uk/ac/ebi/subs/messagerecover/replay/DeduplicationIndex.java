@@ -0,0 +1,251 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A persistent set of 64-bit message fingerprints stored in a memory-mapped file.
+ * The fingerprints are kept in an open addressing hash table with linear probing, so a lookup touches
+ * one or a few neighbouring slots of the file and the table does not use any heap.
+ * The table is sized when the file is created and it is not resized: when it gets full,
+ * the new fingerprints are not added anymore, the already added ones are still found.
+ * The file is locked while the index is open, so two recoveries can not use the same index at the same time.
+ */
+class DeduplicationIndex implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeduplicationIndex.class);
+
+    private static final long MAGIC = 0x5245434f56455231L;
+    private static final int HEADER_SIZE = 64;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET = 16;
+    private static final int SLOT_SIZE = Long.BYTES;
+    /**
+     * A mapped buffer can not be larger than 2 GB, so the table is mapped in segments of 2^27 slots (1 GB).
+     */
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long MIN_CAPACITY = 1024;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] segments;
+    private final long mask;
+    private final long segmentMask;
+    private final long maxSize;
+    private long size;
+    private boolean full;
+
+    /**
+     * Opens the index file or creates it, if it does not exist yet, and locks it.
+     * It fails without waiting, if the file is locked by another recovery.
+     *
+     * @param file the index file
+     * @param expectedEntries the number of the fingerprints a new index file is sized for,
+     *                        an existing file keeps its original size
+     */
+    DeduplicationIndex(Path file, long expectedEntries) {
+        this.file = file;
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!tryLock(channel)) {
+                throw new IOException("it is used by another recovery");
+            }
+            boolean created = channel.size() == 0;
+            long capacity = created ? capacityFor(expectedEntries) : readCapacity(channel);
+
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            if (created) {
+                header.putLong(0, MAGIC);
+                header.putLong(CAPACITY_OFFSET, capacity);
+            } else if (header.getLong(0) != MAGIC || header.getLong(CAPACITY_OFFSET) != capacity) {
+                throw new IOException("it is not a deduplication index file");
+            }
+
+            long segmentSlots = Math.min(capacity, 1L << SEGMENT_SHIFT);
+            this.segments = new MappedByteBuffer[(int) (capacity / segmentSlots)];
+            // mapping the segments extends the new file, its unwritten slots read as 0
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                        HEADER_SIZE + i * segmentSlots * SLOT_SIZE, segmentSlots * SLOT_SIZE);
+            }
+            this.mask = capacity - 1;
+            this.segmentMask = segmentSlots - 1;
+            this.maxSize = (long) (capacity * MAX_LOAD_FACTOR);
+            this.size = header.getLong(SIZE_OFFSET);
+            this.channel = channel;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            String errorMessage = String.format("Error happened opening the deduplication index %s: %s",
+                    file, e.getMessage());
+            logger.error(errorMessage);
+            throw new UncheckedIOException(errorMessage, e);
+        }
+
+        logger.info("[DeduplicationIndex] {} holds {} of at most {} message fingerprints", file, size, maxSize);
+    }
+
+    /**
+     * Returns true, if the given fingerprint has been added to the index.
+     *
+     * @param fingerprint the fingerprint created by {@link #fingerprint(String...)}
+     * @return true, if the given fingerprint has been added to the index
+     */
+    synchronized boolean contains(long fingerprint) {
+        return getLong(findSlot(fingerprint)) == fingerprint;
+    }
+
+    /**
+     * Adds the given fingerprint to the index, if the index is not full.
+     *
+     * @param fingerprint the fingerprint created by {@link #fingerprint(String...)}
+     * @return true, if the fingerprint has been added, false if it was already there or the index is full
+     */
+    synchronized boolean add(long fingerprint) {
+        long slot = findSlot(fingerprint);
+        if (getLong(slot) == fingerprint) {
+            return false;
+        }
+        if (size >= maxSize) {
+            if (!full) {
+                logger.warn("[DeduplicationIndex] {} is full, no more messages are added to it. " +
+                        "Remove the file or increase the expectedEntries to create a larger one.", file);
+                full = true;
+            }
+            return false;
+        }
+
+        putLong(slot, fingerprint);
+        header.putLong(SIZE_OFFSET, ++size);
+        return true;
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Writes the changes of the index to the file.
+     */
+    synchronized void force() {
+        header.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Writes the changes of the index to the file and releases the lock of the file.
+     */
+    @Override
+    public synchronized void close() {
+        force();
+        closeQuietly(channel);
+    }
+
+    /**
+     * Returns the slot holding the fingerprint or the empty slot where it should be added.
+     */
+    private long findSlot(long fingerprint) {
+        long slot = fingerprint & mask;
+        long storedFingerprint;
+        while ((storedFingerprint = getLong(slot)) != 0 && storedFingerprint != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    private long getLong(long slot) {
+        return segments[(int) (slot >>> SEGMENT_SHIFT)].getLong((int) ((slot & segmentMask) * SLOT_SIZE));
+    }
+
+    private void putLong(long slot, long value) {
+        segments[(int) (slot >>> SEGMENT_SHIFT)].putLong((int) ((slot & segmentMask) * SLOT_SIZE), value);
+    }
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the given parts of a message (e.g. its exchange, routing key and body),
+     * mixed with the finalizer of MurmurHash3, so its low bits can be used as the slot of the hash table.
+     * The empty slot marker 0 is never returned.
+     *
+     * @param parts the parts of the message identifying it
+     * @return the fingerprint of the message
+     */
+    static long fingerprint(String... parts) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String part : parts) {
+            hash = hashChars(hash, part);
+            hash = (hash ^ '\n') * FNV_PRIME;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long hashChars(long hash, String value) {
+        if (value == null) {
+            return hash;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+
+    private static boolean tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            // the file is locked by an index opened earlier in this application
+            return false;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("[DeduplicationIndex] Error happened closing the index file: {}", e.getMessage());
+        }
+    }
+
+    private static long capacityFor(long expectedEntries) {
+        long minCapacity = Math.max(MIN_CAPACITY, (long) Math.ceil(expectedEntries / MAX_LOAD_FACTOR));
+
+        return Long.highestOneBit(minCapacity - 1) << 1;
+    }
+
+    private static long readCapacity(FileChannel channel) throws IOException {
+        long capacity = (channel.size() - HEADER_SIZE) / SLOT_SIZE;
+        if (capacity < MIN_CAPACITY || Long.bitCount(capacity) != 1) {
+            throw new IOException("its size does not match a deduplication index");
+        }
+
+        return capacity;
+    }
+}
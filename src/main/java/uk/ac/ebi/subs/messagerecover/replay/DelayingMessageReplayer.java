@@ -0,0 +1,224 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.FanoutExchange;
+import org.springframework.amqp.core.Queue;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Replays the messages depending on how many times they have already failed.
+ * The number of the failures is the sum of the counts of the `rejected` entries of the `x-death` header
+ * RabbitMQ adds to a dead lettered message. Every message of a dead letter queue has failed at least once,
+ * so a message that has failed once is replayed right away, a message that has failed more times,
+ * but fewer than the configured maximum, is sent to a delay queue and the others are sent to the parking queue
+ * where they stay until somebody looks at them.
+ *
+ * Every delay tier has a fanout exchange and a queue with a message TTL. The expired messages are dead lettered
+ * with their original routing key to the exchange of the replay, the delay doubles (by default) with every tier.
+ * The delayed and parked messages keep their original properties and headers, so RabbitMQ keeps counting
+ * their failures. They are sent in the configured replay mode, too, and the delivery callbacks are still called
+ * in replay order.
+ */
+public class DelayingMessageReplayer implements MessageReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DelayingMessageReplayer.class);
+
+    static final String X_DEATH_HEADER = "x-death";
+    static final String REJECTED_REASON = "rejected";
+    static final String ORIGINAL_EXCHANGE_HEADER = "x-recover-exchange";
+    static final String ORIGINAL_ROUTING_KEY_HEADER = "x-recover-routing-key";
+
+    private MessageReplayer replayer;
+    private String exchangeName;
+    private RecoverProperties.ReplayProp.RetryProp retryProp;
+    private RecoveryMetrics recoveryMetrics;
+    private MessageReplayer parkingReplayer;
+
+    private final List<String> delayExchangeNames = new ArrayList<>();
+    private final List<MessageReplayer> delayReplayers = new ArrayList<>();
+    private final OrderedDeliveries deliveries = new OrderedDeliveries();
+
+    /**
+     * @param replayer the replayer of the messages to replay right away
+     * @param passthroughReplayerFactory creates a replayer sending the messages with their original bytes
+     *                                   and properties to the given exchange
+     * @param amqpAdmin declares the delay exchanges and queues and the parking queue
+     * @param exchangeName the name of the exchange the messages are replayed to
+     * @param retryProp the retryProp section of the application.yml file
+     * @param recoveryMetrics counts the delayed and parked messages
+     */
+    DelayingMessageReplayer(MessageReplayer replayer, Function<String, MessageReplayer> passthroughReplayerFactory,
+                            AmqpAdmin amqpAdmin, String exchangeName, RecoverProperties.ReplayProp.RetryProp retryProp,
+                            RecoveryMetrics recoveryMetrics) {
+        if (retryProp.getTierCount() < 1) {
+            throw new IllegalArgumentException("The retryProp.tierCount has to be at least 1: "
+                    + retryProp.getTierCount());
+        }
+        this.replayer = replayer;
+        this.exchangeName = exchangeName;
+        this.retryProp = retryProp;
+        this.recoveryMetrics = recoveryMetrics;
+
+        declareDelayTiers(amqpAdmin);
+        amqpAdmin.declareQueue(new Queue(retryProp.getParkingQueueName()));
+
+        delayExchangeNames.forEach(delayExchangeName ->
+                delayReplayers.add(passthroughReplayerFactory.apply(delayExchangeName)));
+        // the default exchange routes the parked messages to the queue named by their routing key
+        parkingReplayer = passthroughReplayerFactory.apply("");
+    }
+
+    @Override
+    public synchronized void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        OrderedDeliveries.Delivery delivery = deliveries.register(message, deliveryCallback);
+        long failureCount = failureCount(message);
+
+        Consumer<MessageToReplay> deliveredCallback = deliveredMessage -> deliveries.delivered(delivery);
+        try {
+            if (failureCount <= 1) {
+                replayer.replay(message, deliveredCallback);
+            } else if (failureCount >= retryProp.getMaxFailureCount()) {
+                park(message, failureCount, deliveredCallback);
+            } else {
+                delay(message, failureCount, deliveredCallback);
+            }
+        } catch (RuntimeException e) {
+            deliveries.cancel(delivery);
+            throw e;
+        }
+    }
+
+    @Override
+    public void flush() {
+        replayer.flush();
+        delayReplayers.forEach(MessageReplayer::flush);
+        parkingReplayer.flush();
+    }
+
+    @Override
+    public void close() {
+        replayer.close();
+        delayReplayers.forEach(MessageReplayer::close);
+        parkingReplayer.close();
+    }
+
+    /**
+     * A message failed twice goes to the first tier, the messages failed more times than the tiers
+     * go to the last one.
+     */
+    private void delay(MessageToReplay message, long failureCount, Consumer<MessageToReplay> deliveredCallback) {
+        int tier = (int) Math.min(failureCount - 1, delayExchangeNames.size()) - 1;
+        logger.debug("[DelayingMessageReplayer] message with routing key: {} has failed {} times, delaying it by {}",
+                message.getRoutingKey(), failureCount, delayExchangeNames.get(tier));
+
+        delayReplayers.get(tier).replay(message, deliveredCallback);
+        recoveryMetrics.messageDelayed();
+    }
+
+    private void park(MessageToReplay message, long failureCount, Consumer<MessageToReplay> deliveredCallback) {
+        logger.warn("[DelayingMessageReplayer] message with routing key: {} has failed {} times, parking it in {}",
+                message.getRoutingKey(), failureCount, retryProp.getParkingQueueName());
+
+        parkingReplayer.replay(toParkedMessage(message), deliveredCallback);
+        recoveryMetrics.messageParked();
+    }
+
+    /**
+     * Returns a copy of the message routed to the parking queue, its original exchange and routing key
+     * are added to its headers.
+     */
+    private MessageToReplay toParkedMessage(MessageToReplay message) {
+        MessageProperties parkedProperties = new MessageProperties();
+        Map<String, Object> headers = new HashMap<>();
+        MessageProperties originalProperties = message.getMessageProperties();
+        if (originalProperties != null) {
+            parkedProperties.setId(originalProperties.getId());
+            parkedProperties.setTimestamp(originalProperties.getTimestamp());
+            parkedProperties.setPayloadSize(originalProperties.getPayloadSize());
+            parkedProperties.setContentType(originalProperties.getContentType());
+            parkedProperties.setContentEncoding(originalProperties.getContentEncoding());
+            parkedProperties.setMessageId(originalProperties.getMessageId());
+            if (originalProperties.getHeaders() != null) {
+                headers.putAll(originalProperties.getHeaders());
+            }
+        }
+        headers.put(ORIGINAL_EXCHANGE_HEADER, exchangeName);
+        headers.put(ORIGINAL_ROUTING_KEY_HEADER, message.getRoutingKey());
+        parkedProperties.setHeaders(headers);
+        parkedProperties.setRoutingKey(retryProp.getParkingQueueName());
+
+        MessageToReplay parkedMessage = new MessageToReplay(parkedProperties, message.getBody());
+        parkedMessage.setBodyToReplay(message.getBodyToReplay());
+        parkedMessage.setPayload(message.getPayload());
+        return parkedMessage;
+    }
+
+    /**
+     * Declares the exchange and the queue of every delay tier. The queues of different exchanges are separate,
+     * as the expired messages are dead lettered to the exchange of the replay.
+     */
+    private void declareDelayTiers(AmqpAdmin amqpAdmin) {
+        long delayInSec = retryProp.getInitialDelayInSec();
+        for (int tier = 0; tier < retryProp.getTierCount(); tier++) {
+            String name = String.format("%s.%s.%ds", retryProp.getDelayQueuePrefix(), exchangeName, delayInSec);
+
+            Map<String, Object> arguments = new HashMap<>();
+            arguments.put("x-message-ttl", delayInSec * 1000);
+            arguments.put("x-dead-letter-exchange", exchangeName);
+            Queue delayQueue = new Queue(name, true, false, false, arguments);
+            FanoutExchange delayExchange = new FanoutExchange(name);
+            Binding binding = BindingBuilder.bind(delayQueue).to(delayExchange);
+
+            amqpAdmin.declareExchange(delayExchange);
+            amqpAdmin.declareQueue(delayQueue);
+            amqpAdmin.declareBinding(binding);
+            delayExchangeNames.add(name);
+
+            delayInSec *= retryProp.getMultiplier();
+        }
+
+        logger.info("[DelayingMessageReplayer] Messages failed more than once are delayed through: {}",
+                delayExchangeNames);
+    }
+
+    /**
+     * Returns the number of the times the message has been rejected by its consumers.
+     * The expirations in the delay queues are not counted.
+     */
+    static long failureCount(MessageToReplay message) {
+        if (message.getMessageProperties() == null || message.getMessageProperties().getHeaders() == null) {
+            return 0;
+        }
+        Object deaths = message.getMessageProperties().getHeaders().get(X_DEATH_HEADER);
+        if (!(deaths instanceof List)) {
+            return 0;
+        }
+
+        long failureCount = 0;
+        for (Object death : (List<?>) deaths) {
+            if (death instanceof Map) {
+                Map<?, ?> deathEntry = (Map<?, ?>) death;
+                Object count = deathEntry.get("count");
+                if (REJECTED_REASON.equals(String.valueOf(deathEntry.get("reason"))) && count instanceof Number) {
+                    failureCount += ((Number) count).longValue();
+                }
+            }
+        }
+
+        return failureCount;
+    }
+}
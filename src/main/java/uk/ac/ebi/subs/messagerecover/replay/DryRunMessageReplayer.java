@@ -0,0 +1,32 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.function.Consumer;
+
+/**
+ * Records the fixed messages in a {@link DryRunReport} instead of publishing them.
+ * The delivery callback is never called, so the checkpoint and the deduplication index are left untouched.
+ * It is used only in the qdb transfer mode, as the consumed messages of the direct mode would stay unacknowledged.
+ * The report is written, when the replayer is flushed.
+ */
+public class DryRunMessageReplayer implements MessageReplayer {
+
+    private DryRunReport dryRunReport;
+    private String exchangeName;
+
+    DryRunMessageReplayer(DryRunReport dryRunReport, String exchangeName) {
+        this.dryRunReport = dryRunReport;
+        this.exchangeName = exchangeName;
+    }
+
+    @Override
+    public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        dryRunReport.record(exchangeName, message);
+    }
+
+    @Override
+    public void flush() {
+        dryRunReport.write();
+    }
+}
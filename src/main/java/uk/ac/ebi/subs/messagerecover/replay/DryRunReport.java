@@ -0,0 +1,202 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Collects what a recovery would replay: the number of the messages per exchange and routing key,
+ * the size distribution of the original and the fixed bodies and a random sample of the changes made by the fixers.
+ * Only the counters and the sample are kept in memory, so it can be used on a backlog of any size.
+ */
+class DryRunReport {
+
+    private static final Logger logger = LoggerFactory.getLogger(DryRunReport.class);
+
+    private static final int SIZE_BUCKET_COUNT = 32;
+    private static final int DIFF_CONTEXT_LENGTH = 30;
+    private static final int MAX_DIFF_LENGTH = 200;
+
+    private final Path file;
+    private final int sampleSize;
+    private final Map<String, long[]> routingKeyCounts = new TreeMap<>();
+    private final long[] bodySizes = new long[SIZE_BUCKET_COUNT];
+    private final long[] bodyToReplaySizes = new long[SIZE_BUCKET_COUNT];
+    private final List<Sample> samples = new ArrayList<>();
+    private long messageCount;
+    private long changedMessageCount;
+
+    /**
+     * @param file the file the report is written to
+     * @param sampleSize the maximum number of the changed messages shown in the report
+     */
+    DryRunReport(Path file, int sampleSize) {
+        this.file = file;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Adds a fixed message to the report.
+     *
+     * @param exchangeName the exchange the message would be replayed to
+     * @param message the fixed message
+     */
+    synchronized void record(String exchangeName, MessageToReplay message) {
+        String bodyToReplay = message.getBodyToReplay() == null ? message.getBody() : message.getBodyToReplay();
+        boolean changed = !bodyToReplay.equals(message.getBody());
+
+        long[] counts = routingKeyCounts.computeIfAbsent(exchangeName + " " + message.getRoutingKey(),
+                key -> new long[2]);
+        counts[0]++;
+        messageCount++;
+        bodySizes[sizeBucket(message.getBody())]++;
+        bodyToReplaySizes[sizeBucket(bodyToReplay)]++;
+
+        if (changed) {
+            counts[1]++;
+            changedMessageCount++;
+            sample(new Sample(message, bodyToReplay));
+        }
+    }
+
+    /**
+     * Writes the report to its file, replacing the previous version of it.
+     */
+    synchronized void write() {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.printf("Dry run of the message recovery, no message has been replayed%n%n");
+            writer.printf("Messages: %d, changed by the fixers: %d, unchanged: %d%n%n",
+                    messageCount, changedMessageCount, messageCount - changedMessageCount);
+
+            writer.printf("Messages per exchange and routing key (changed):%n");
+            routingKeyCounts.forEach((routingKey, counts) ->
+                    writer.printf("  %s: %d (%d)%n", routingKey, counts[0], counts[1]));
+
+            writer.printf("%nSize of the original bodies in bytes:%n");
+            writeHistogram(writer, bodySizes);
+            writer.printf("%nSize of the bodies to replay in bytes:%n");
+            writeHistogram(writer, bodyToReplaySizes);
+
+            writer.printf("%nSampled changes (%d of %d), removed [-...-], added {+...+}:%n",
+                    samples.size(), changedMessageCount);
+            samples.forEach(sample -> writer.printf("  %s %s: %s%n", sample.id, sample.routingKey, sample.diff()));
+        } catch (IOException e) {
+            String errorMessage = String.format("Error happened writing the dry run report %s: %s",
+                    file, e.getMessage());
+            logger.error(errorMessage);
+            throw new UncheckedIOException(errorMessage, e);
+        }
+
+        logger.info("[DryRunReport] {} messages would be replayed, {} of them changed by the fixers, " +
+                "the report has been written to {}", messageCount, changedMessageCount, file);
+    }
+
+    /**
+     * Keeps a uniform random sample of the changed messages (reservoir sampling).
+     */
+    private void sample(Sample sample) {
+        if (samples.size() < sampleSize) {
+            samples.add(sample);
+            return;
+        }
+        long index = ThreadLocalRandom.current().nextLong(changedMessageCount);
+        if (index < sampleSize) {
+            samples.set((int) index, sample);
+        }
+    }
+
+    private static void writeHistogram(PrintWriter writer, long[] sizes) {
+        for (int bucket = 0; bucket < sizes.length; bucket++) {
+            if (sizes[bucket] > 0) {
+                long lowerBound = bucket == 0 ? 0 : 1L << (bucket - 1);
+                writer.printf("  %d - %d: %d%n", lowerBound, (1L << bucket) - 1, sizes[bucket]);
+            }
+        }
+    }
+
+    /**
+     * The bucket of a size is the number of its significant bits, so every bucket is twice as wide as the previous.
+     */
+    private static int sizeBucket(String body) {
+        long size = body == null ? 0 : utf8Length(body);
+
+        return Math.min(SIZE_BUCKET_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(size));
+    }
+
+    private static long utf8Length(String value) {
+        long length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char character = value.charAt(i);
+            if (character < 0x80) {
+                length++;
+            } else if (character < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(character)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+
+    private static String abbreviate(String value, int maxLength) {
+        return value.length() <= maxLength ? value : value.substring(0, maxLength) + "...";
+    }
+
+    private static class Sample {
+        private final String id;
+        private final String routingKey;
+        private final String body;
+        private final String bodyToReplay;
+
+        private Sample(MessageToReplay message, String bodyToReplay) {
+            this.id = message.getMessageProperties() == null ? "-" : "#" + message.getMessageProperties().getId();
+            this.routingKey = message.getRoutingKey();
+            this.body = message.getBody();
+            this.bodyToReplay = bodyToReplay;
+        }
+
+        /**
+         * Shows the changed middle part of the body between the longest common prefix and suffix.
+         */
+        private String diff() {
+            int prefixLength = 0;
+            int maxCommonLength = Math.min(body.length(), bodyToReplay.length());
+            while (prefixLength < maxCommonLength && body.charAt(prefixLength) == bodyToReplay.charAt(prefixLength)) {
+                prefixLength++;
+            }
+            int suffixLength = 0;
+            while (suffixLength < maxCommonLength - prefixLength
+                    && body.charAt(body.length() - 1 - suffixLength)
+                    == bodyToReplay.charAt(bodyToReplay.length() - 1 - suffixLength)) {
+                suffixLength++;
+            }
+
+            int contextStart = Math.max(0, prefixLength - DIFF_CONTEXT_LENGTH);
+            int contextEnd = Math.min(body.length(), body.length() - suffixLength + DIFF_CONTEXT_LENGTH);
+
+            return (contextStart > 0 ? "..." : "")
+                    + body.substring(contextStart, prefixLength)
+                    + "[-" + abbreviate(body.substring(prefixLength, body.length() - suffixLength), MAX_DIFF_LENGTH)
+                    + "-]{+" + abbreviate(bodyToReplay.substring(prefixLength, bodyToReplay.length() - suffixLength),
+                    MAX_DIFF_LENGTH) + "+}"
+                    + body.substring(body.length() - suffixLength, contextEnd)
+                    + (contextEnd < body.length() ? "..." : "");
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.function.Consumer;
+
+/**
+ * Publishes the fixed/corrected messages to a RabbitMQ exchange with their original routing key.
+ */
+public interface MessageReplayer extends AutoCloseable {
+
+    /**
+     * Publishes the given message. The message might be delivered asynchronously,
+     * the given callback is called when the broker has taken responsibility for it.
+     * The callbacks are called in the order of the replayed messages.
+     *
+     * @param message the {@link MessageToReplay} to publish
+     * @param deliveryCallback called with the message when it has been delivered to the broker
+     */
+    void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback);
+
+    /**
+     * Waits until all the replayed messages have been delivered to the broker.
+     * It throws an exception, if any of them could not be delivered.
+     */
+    void flush();
+
+    /**
+     * Releases the resources of the replayer, e.g. its threads. The messages not flushed yet might not be published.
+     */
+    @Override
+    default void close() {
+    }
+}
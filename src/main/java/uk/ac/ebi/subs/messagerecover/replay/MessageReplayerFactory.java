@@ -0,0 +1,158 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Creates the {@link MessageReplayer} selected by the replay mode set in the application.yml file
+ * for a given exchange. Every created replayer publishes on its own channels.
+ * In a dry run the messages are only recorded in the dry run report.
+ * The messages that have failed before can be delayed or parked, before they are throttled and replayed.
+ * The throttling limits the replayers of all the exchanges together.
+ */
+@Component
+public class MessageReplayerFactory implements DisposableBean {
+
+    private RecoverProperties recoverProperties;
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    private RecoveryMetrics recoveryMetrics;
+    private DeduplicationIndex deduplicationIndex;
+    private DryRunReport dryRunReport;
+    private TokenBucket tokenBucket;
+    private QueueDepthMonitor queueDepthMonitor;
+
+    public MessageReplayerFactory(RecoverProperties recoverProperties,
+                                  RabbitMessagingTemplate rabbitMessagingTemplate, RecoveryMetrics recoveryMetrics) {
+        this.recoverProperties = recoverProperties;
+        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
+        this.recoveryMetrics = recoveryMetrics;
+    }
+
+    /**
+     * Releases the deduplication index file, so another recovery can use it.
+     */
+    @Override
+    public synchronized void destroy() {
+        if (deduplicationIndex != null) {
+            deduplicationIndex.close();
+        }
+    }
+
+    /**
+     * Creates a replayer publishing the messages to the given exchange.
+     *
+     * @param exchangeName the name of the exchange to replay the messages to
+     * @return the {@link MessageReplayer} configured in the application.yml file
+     */
+    public MessageReplayer create(String exchangeName) {
+        RecoverProperties.ReplayProp replayProp = recoverProperties.getReplayProp();
+        Supplier<MessageReplayer> replayerFactory = () -> createReplayer(exchangeName);
+
+        MessageReplayer messageReplayer;
+        if (recoverProperties.getDryRunProp().isEnabled()) {
+            messageReplayer = new DryRunMessageReplayer(getDryRunReport(), exchangeName);
+        } else if (replayProp.getParallelism() <= 1) {
+            messageReplayer = replayerFactory.get();
+        } else {
+            messageReplayer = new ShardedMessageReplayer(replayerFactory, replayProp.getParallelism(),
+                    recoverProperties.getPipelineProp().getBufferSize(),
+                    new ShardKeyExtractor(replayProp.getShardKeyPattern()));
+        }
+
+        if (replayProp.getThrottleProp().isEnabled() && !recoverProperties.getDryRunProp().isEnabled()) {
+            messageReplayer = new ThrottledMessageReplayer(messageReplayer, getTokenBucket(), getQueueDepthMonitor());
+        }
+        if (replayProp.getRetryProp().isEnabled() && !recoverProperties.getDryRunProp().isEnabled()) {
+            messageReplayer = new DelayingMessageReplayer(messageReplayer,
+                    targetExchangeName -> createReplayer(targetExchangeName, true),
+                    new RabbitAdmin(rabbitMessagingTemplate.getRabbitTemplate().getConnectionFactory()), exchangeName,
+                    replayProp.getRetryProp(), recoveryMetrics);
+        }
+        if (replayProp.getDedupProp().isEnabled()) {
+            messageReplayer = new DeduplicatingMessageReplayer(messageReplayer, getDeduplicationIndex(), exchangeName,
+                    replayProp.getDedupProp().getKeyPattern(), recoveryMetrics);
+        }
+
+        return messageReplayer;
+    }
+
+    /**
+     * The replayers of all the exchanges share the same index file.
+     */
+    private synchronized DeduplicationIndex getDeduplicationIndex() {
+        if (deduplicationIndex == null) {
+            RecoverProperties.ReplayProp.DedupProp dedupProp = recoverProperties.getReplayProp().getDedupProp();
+            deduplicationIndex = new DeduplicationIndex(Paths.get(dedupProp.getFile()), dedupProp.getExpectedEntries());
+        }
+
+        return deduplicationIndex;
+    }
+
+    /**
+     * The replayers of all the exchanges share the same rate limit, so the configured rate is not multiplied
+     * by the number of the queue mappings recovered concurrently.
+     */
+    private synchronized TokenBucket getTokenBucket() {
+        RecoverProperties.ReplayProp.ThrottleProp throttleProp = recoverProperties.getReplayProp().getThrottleProp();
+        if (tokenBucket == null && throttleProp.getMaxRatePerSec() > 0) {
+            tokenBucket = new TokenBucket(throttleProp.getMaxRatePerSec(), throttleProp.getBurstSize());
+        }
+
+        return tokenBucket;
+    }
+
+    /**
+     * The replayers of all the exchanges share the same checks of the monitored queues.
+     */
+    private synchronized QueueDepthMonitor getQueueDepthMonitor() {
+        RecoverProperties.ReplayProp.ThrottleProp throttleProp = recoverProperties.getReplayProp().getThrottleProp();
+        if (queueDepthMonitor == null && !throttleProp.getMonitoredQueues().isEmpty()) {
+            queueDepthMonitor = new QueueDepthMonitor(rabbitMessagingTemplate.getRabbitTemplate(),
+                    throttleProp.getMonitoredQueues(), throttleProp.getMaxQueueDepth(),
+                    throttleProp.getResumeQueueDepth(),
+                    TimeUnit.SECONDS.toMillis(throttleProp.getQueueDepthCheckIntervalInSec()));
+        }
+
+        return queueDepthMonitor;
+    }
+
+    /**
+     * The replayers of all the exchanges write the same report.
+     */
+    private synchronized DryRunReport getDryRunReport() {
+        if (dryRunReport == null) {
+            RecoverProperties.DryRunProp dryRunProp = recoverProperties.getDryRunProp();
+            dryRunReport = new DryRunReport(Paths.get(dryRunProp.getReportFile()), dryRunProp.getSampleSize());
+        }
+
+        return dryRunReport;
+    }
+
+    private MessageReplayer createReplayer(String exchangeName) {
+        return createReplayer(exchangeName, recoverProperties.getReplayProp().isPassthrough());
+    }
+
+    private MessageReplayer createReplayer(String exchangeName, boolean passthrough) {
+        RecoverProperties.ReplayProp replayProp = recoverProperties.getReplayProp();
+
+        switch (replayProp.getMode()) {
+            case CONFIRM:
+                return new ConfirmingMessageReplayer(rabbitMessagingTemplate, exchangeName,
+                        replayProp.getConfirmWindowSize(), replayProp.getConfirmTimeoutInSec(),
+                        passthrough);
+            case TRANSACTIONAL:
+                return new TransactionalMessageReplayer(rabbitMessagingTemplate, exchangeName,
+                        replayProp.getTransactionBatchSize(), passthrough);
+            default:
+                return new SimpleMessageReplayer(rabbitMessagingTemplate, exchangeName, passthrough);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.Consumer;
+
+/**
+ * Keeps track of the messages that have been sent, but their delivery has not been acknowledged yet.
+ * The delivery callbacks are called in sending order, even if the deliveries are acknowledged in a different order,
+ * so the callbacks never get ahead of a message that has not been delivered yet.
+ * After a failed delivery no more callbacks are called.
+ */
+class OrderedDeliveries {
+
+    private final Deque<Delivery> deliveries = new ArrayDeque<>();
+    private long failedDeliveryCount;
+
+    /**
+     * Registers a message that has been sent.
+     *
+     * @param message the sent message
+     * @param deliveryCallback the callback to call when the message and all the previously sent ones are delivered
+     * @return the {@link Delivery} to acknowledge when the message has been delivered
+     */
+    synchronized Delivery register(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        Delivery delivery = new Delivery(message, deliveryCallback);
+        deliveries.addLast(delivery);
+
+        return delivery;
+    }
+
+    synchronized void delivered(Delivery delivery) {
+        delivery.completed = true;
+        completeDeliveries();
+    }
+
+    synchronized void failed(Delivery delivery) {
+        delivery.completed = true;
+        failedDeliveryCount++;
+        completeDeliveries();
+    }
+
+    /**
+     * Forgets a message that could not be sent at all.
+     */
+    synchronized void cancel(Delivery delivery) {
+        deliveries.remove(delivery);
+    }
+
+    synchronized long getFailedDeliveryCount() {
+        return failedDeliveryCount;
+    }
+
+    private void completeDeliveries() {
+        while (!deliveries.isEmpty() && deliveries.peekFirst().completed) {
+            Delivery delivery = deliveries.pollFirst();
+            if (failedDeliveryCount == 0) {
+                delivery.deliveryCallback.accept(delivery.message);
+            }
+        }
+    }
+
+    static class Delivery {
+        private final MessageToReplay message;
+        private final Consumer<MessageToReplay> deliveryCallback;
+        private boolean completed;
+
+        private Delivery(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+            this.message = message;
+            this.deliveryCallback = deliveryCallback;
+        }
+
+        MessageToReplay getMessage() {
+            return message;
+        }
+    }
+}
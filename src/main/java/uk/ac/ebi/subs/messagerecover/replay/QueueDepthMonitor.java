@@ -0,0 +1,74 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the number of messages waiting in the queues the replayed messages are routed to.
+ * The replay is paused while any of the queues holds more messages than the maximum depth
+ * and it continues when all of them are drained below the resume depth.
+ * The depth of the queues is read with a passive queue declaration.
+ */
+class QueueDepthMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueueDepthMonitor.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final List<String> queueNames;
+    private final int maxQueueDepth;
+    private final int resumeQueueDepth;
+    private final long checkIntervalInMillis;
+
+    private long lastCheck;
+
+    QueueDepthMonitor(RabbitTemplate rabbitTemplate, List<String> queueNames, int maxQueueDepth,
+                      int resumeQueueDepth, long checkIntervalInMillis) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.queueNames = queueNames;
+        this.maxQueueDepth = maxQueueDepth;
+        this.resumeQueueDepth = Math.min(resumeQueueDepth, maxQueueDepth);
+        this.checkIntervalInMillis = checkIntervalInMillis;
+    }
+
+    /**
+     * Checks the depth of the monitored queues, if the check interval has elapsed since the last check
+     * and waits while any of them is too deep.
+     *
+     * @throws InterruptedException if the waiting is interrupted
+     */
+    synchronized void awaitCapacity() throws InterruptedException {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < checkIntervalInMillis) {
+            return;
+        }
+        lastCheck = now;
+
+        if (deepestQueueDepth() <= maxQueueDepth) {
+            return;
+        }
+
+        long depth;
+        do {
+            TimeUnit.MILLISECONDS.sleep(checkIntervalInMillis);
+            depth = deepestQueueDepth();
+            logger.info("[QueueDepthMonitor] replay is paused, the deepest target queue has {} messages", depth);
+        } while (depth > resumeQueueDepth);
+        lastCheck = System.currentTimeMillis();
+
+        logger.info("[QueueDepthMonitor] replay is resumed");
+    }
+
+    private long deepestQueueDepth() {
+        return rabbitTemplate.execute(channel -> {
+            long deepest = 0;
+            for (String queueName : queueNames) {
+                deepest = Math.max(deepest, channel.queueDeclarePassive(queueName).getMessageCount());
+            }
+            return deepest;
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the messages with a replayer created on first use, which can be replaced by a new one.
+ * A long-running recovery renews the replayer after every cycle, so the failure state of a replayer,
+ * e.g. a failed delivery, does not fail the following cycles.
+ */
+public class RenewableMessageReplayer implements MessageReplayer {
+
+    private final Supplier<MessageReplayer> replayerFactory;
+    private volatile MessageReplayer replayer;
+
+    public RenewableMessageReplayer(Supplier<MessageReplayer> replayerFactory) {
+        this.replayerFactory = replayerFactory;
+    }
+
+    @Override
+    public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        getReplayer().replay(message, deliveryCallback);
+    }
+
+    @Override
+    public void flush() {
+        getReplayer().flush();
+    }
+
+    /**
+     * Closes the current replayer, the next message is published with a new one.
+     */
+    public synchronized void renew() {
+        MessageReplayer usedReplayer = replayer;
+        replayer = null;
+        if (usedReplayer != null) {
+            usedReplayer.close();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (replayer != null) {
+            replayer.close();
+        }
+    }
+
+    private MessageReplayer getReplayer() {
+        MessageReplayer currentReplayer = replayer;
+        if (currentReplayer == null) {
+            synchronized (this) {
+                if (replayer == null) {
+                    replayer = replayerFactory.get();
+                }
+                currentReplayer = replayer;
+            }
+        }
+
+        return currentReplayer;
+    }
+}
@@ -0,0 +1,70 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Converts a {@link MessageToReplay} to an AMQP {@link Message} with the converters of the
+ * {@link RabbitMessagingTemplate}, so the replayers publishing on their own channels
+ * send the same message as {@link RabbitMessagingTemplate#convertAndSend} would.
+ * In passthrough mode the message is not converted: the original bytes of an unchanged message are sent
+ * with its original content type, encoding, message ID and headers.
+ */
+class ReplayMessageConverter {
+
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    private boolean passthrough;
+
+    ReplayMessageConverter(RabbitMessagingTemplate rabbitMessagingTemplate) {
+        this(rabbitMessagingTemplate, false);
+    }
+
+    ReplayMessageConverter(RabbitMessagingTemplate rabbitMessagingTemplate, boolean passthrough) {
+        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
+        this.passthrough = passthrough;
+    }
+
+    Message toAmqpMessage(MessageToReplay message) {
+        if (passthrough) {
+            return toPassthroughMessage(message);
+        }
+
+        org.springframework.messaging.Message<?> convertedMessage =
+                rabbitMessagingTemplate.getMessageConverter().toMessage(message.getBodyToReplay(), null);
+
+        return rabbitMessagingTemplate.getAmqpMessageConverter().toMessage(convertedMessage, new MessageProperties());
+    }
+
+    /**
+     * A fixed message is sent as the UTF-8 bytes of its new body, still with the original properties.
+     */
+    private static Message toPassthroughMessage(MessageToReplay message) {
+        byte[] body;
+        if (!message.isUnchanged()) {
+            body = message.getBodyToReplay().getBytes(StandardCharsets.UTF_8);
+        } else if (message.getPayload() != null) {
+            body = message.getPayload();
+        } else {
+            body = message.getBody().getBytes(StandardCharsets.UTF_8);
+        }
+
+        MessageProperties amqpProperties = new MessageProperties();
+        uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties originalProperties =
+                message.getMessageProperties();
+        if (originalProperties != null) {
+            amqpProperties.setContentType(originalProperties.getContentType());
+            amqpProperties.setContentEncoding(originalProperties.getContentEncoding());
+            amqpProperties.setMessageId(originalProperties.getMessageId());
+            if (originalProperties.getHeaders() != null) {
+                amqpProperties.getHeaders().putAll(originalProperties.getHeaders());
+            }
+        }
+        amqpProperties.setContentLength(body.length);
+
+        return new Message(body, amqpProperties);
+    }
+}
@@ -0,0 +1,34 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the key of a message that decides which replay worker publishes it.
+ * If a pattern is set, then the first group of its first match in the message body is the key,
+ * otherwise (or if the pattern does not match) the key is the routing key of the message.
+ */
+public class ShardKeyExtractor implements Function<MessageToReplay, String> {
+
+    private Pattern shardKeyPattern;
+
+    public ShardKeyExtractor(String shardKeyPattern) {
+        this.shardKeyPattern = shardKeyPattern == null || shardKeyPattern.isEmpty()
+                ? null : Pattern.compile(shardKeyPattern);
+    }
+
+    @Override
+    public String apply(MessageToReplay message) {
+        if (shardKeyPattern != null && message.getBodyToReplay() != null) {
+            Matcher matcher = shardKeyPattern.matcher(message.getBodyToReplay());
+            if (matcher.find()) {
+                return matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+            }
+        }
+
+        return message.getRoutingKey();
+    }
+}
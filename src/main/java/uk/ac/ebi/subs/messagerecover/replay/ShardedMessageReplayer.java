@@ -0,0 +1,170 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Publishes the messages on several worker threads, each of them using its own {@link MessageReplayer},
+ * so every worker publishes on its own channel.
+ * The messages are distributed between the workers by their shard key (by default their routing key),
+ * the messages with the same shard key are always published by the same worker in their original order.
+ * The delivery callbacks are still called in the original order of all the messages.
+ * The worker threads run until the replayer is closed.
+ */
+public class ShardedMessageReplayer implements MessageReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedMessageReplayer.class);
+
+    private final Function<MessageToReplay, String> shardKeyExtractor;
+    private final List<Worker> workers = new ArrayList<>();
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final OrderedDeliveries deliveries = new OrderedDeliveries();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    public ShardedMessageReplayer(Supplier<MessageReplayer> replayerFactory, int workerCount, int workerBufferSize,
+                                  Function<MessageToReplay, String> shardKeyExtractor) {
+        this.shardKeyExtractor = shardKeyExtractor;
+        for (int i = 0; i < workerCount; i++) {
+            Worker worker = new Worker(replayerFactory.get(), workerBufferSize);
+            Thread workerThread = new Thread(worker, "replay-worker-" + i);
+            workerThread.setDaemon(true);
+            workerThread.start();
+            workers.add(worker);
+            workerThreads.add(workerThread);
+        }
+    }
+
+    @Override
+    public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        throwIfFailed();
+
+        OrderedDeliveries.Delivery delivery = deliveries.register(message, deliveryCallback);
+        put(selectWorker(message), new Task(delivery, null));
+    }
+
+    @Override
+    public void flush() {
+        CountDownLatch flushed = new CountDownLatch(workers.size());
+        workers.forEach(worker -> put(worker, new Task(null, flushed)));
+        try {
+            flushed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for the replay workers is interrupted.", e);
+        }
+
+        throwIfFailed();
+    }
+
+    /**
+     * Stops the worker threads and closes their replayers. The messages not flushed yet are not published.
+     */
+    @Override
+    public void close() {
+        workerThreads.forEach(Thread::interrupt);
+        try {
+            for (Thread workerThread : workerThreads) {
+                workerThread.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for the replay workers to stop is interrupted.", e);
+        }
+        workers.forEach(worker -> worker.replayer.close());
+    }
+
+    private Worker selectWorker(MessageToReplay message) {
+        String shardKey = shardKeyExtractor.apply(message);
+        int hash = shardKey == null ? 0 : shardKey.hashCode();
+
+        return workers.get(Math.floorMod(hash, workers.size()));
+    }
+
+    private void put(Worker worker, Task task) {
+        try {
+            worker.tasks.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Handing over the message to the replay worker is interrupted.", e);
+        }
+    }
+
+    private void throwIfFailed() {
+        RuntimeException workerFailure = failure.get();
+        if (workerFailure != null) {
+            throw new IllegalStateException(
+                    String.format("Error happened replaying the messages: %s", workerFailure.getMessage()),
+                    workerFailure);
+        }
+    }
+
+    /**
+     * A message to publish or a request to flush the worker, if the latch is set.
+     */
+    private static class Task {
+        private final OrderedDeliveries.Delivery delivery;
+        private final CountDownLatch flushed;
+
+        private Task(OrderedDeliveries.Delivery delivery, CountDownLatch flushed) {
+            this.delivery = delivery;
+            this.flushed = flushed;
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final MessageReplayer replayer;
+        private final BlockingQueue<Task> tasks;
+
+        private Worker(MessageReplayer replayer, int bufferSize) {
+            this.replayer = replayer;
+            this.tasks = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    process(tasks.take());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void process(Task task) {
+            try {
+                if (task.flushed == null) {
+                    if (failure.get() != null) {
+                        deliveries.failed(task.delivery);
+                    } else {
+                        replayer.replay(task.delivery.getMessage(), message -> deliveries.delivered(task.delivery));
+                    }
+                } else {
+                    replayer.flush();
+                }
+            } catch (RuntimeException e) {
+                logger.error("[ShardedMessageReplayer] {} has failed: {}",
+                        Thread.currentThread().getName(), e.getMessage());
+                failure.compareAndSet(null, e);
+                if (task.delivery != null) {
+                    deliveries.failed(task.delivery);
+                }
+            } finally {
+                if (task.flushed != null) {
+                    task.flushed.countDown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.function.Consumer;
+
+/**
+ * Publishes the messages one by one with the {@link RabbitMessagingTemplate} without waiting for confirmation.
+ * In passthrough mode the messages are sent without conversion, see {@link ReplayMessageConverter}.
+ */
+public class SimpleMessageReplayer implements MessageReplayer {
+
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    private String exchangeName;
+    private ReplayMessageConverter passthroughConverter;
+
+    public SimpleMessageReplayer(RabbitMessagingTemplate rabbitMessagingTemplate, String exchangeName) {
+        this(rabbitMessagingTemplate, exchangeName, false);
+    }
+
+    public SimpleMessageReplayer(RabbitMessagingTemplate rabbitMessagingTemplate, String exchangeName,
+                                 boolean passthrough) {
+        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
+        this.exchangeName = exchangeName;
+        this.passthroughConverter = passthrough ? new ReplayMessageConverter(rabbitMessagingTemplate, true) : null;
+    }
+
+    @Override
+    public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        if (passthroughConverter == null) {
+            rabbitMessagingTemplate.convertAndSend(exchangeName, message.getRoutingKey(), message.getBodyToReplay());
+        } else {
+            rabbitMessagingTemplate.getRabbitTemplate().send(exchangeName, message.getRoutingKey(),
+                    passthroughConverter.toAmqpMessage(message));
+        }
+        deliveryCallback.accept(message);
+    }
+
+    @Override
+    public void flush() {
+    }
+}
@@ -0,0 +1,52 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.function.Consumer;
+
+/**
+ * Limits the rate of the replayed messages, so the consumers that have just recovered
+ * are not flooded with the messages again.
+ * The messages are published with at most the configured rate and the replay is paused
+ * while the queues of the consumers are too deep.
+ * The rate limit and the queue depth checks can be shared by several replayers.
+ */
+public class ThrottledMessageReplayer implements MessageReplayer {
+
+    private MessageReplayer replayer;
+    private TokenBucket tokenBucket;
+    private QueueDepthMonitor queueDepthMonitor;
+
+    ThrottledMessageReplayer(MessageReplayer replayer, TokenBucket tokenBucket, QueueDepthMonitor queueDepthMonitor) {
+        this.replayer = replayer;
+        this.tokenBucket = tokenBucket;
+        this.queueDepthMonitor = queueDepthMonitor;
+    }
+
+    @Override
+    public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        try {
+            if (queueDepthMonitor != null) {
+                queueDepthMonitor.awaitCapacity();
+            }
+            if (tokenBucket != null) {
+                tokenBucket.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Waiting for replaying the next message is interrupted.", e);
+        }
+
+        replayer.replay(message, deliveryCallback);
+    }
+
+    @Override
+    public void flush() {
+        replayer.flush();
+    }
+
+    @Override
+    public void close() {
+        replayer.close();
+    }
+}
@@ -0,0 +1,46 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A simple token bucket rate limiter. The bucket is refilled continuously with the configured rate
+ * and it can hold at most the configured burst size of tokens.
+ */
+class TokenBucket {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double tokensPerNano;
+    private final double capacity;
+
+    private double availableTokens;
+    private long lastRefill;
+
+    TokenBucket(double tokensPerSecond, int burstSize) {
+        this.tokensPerNano = tokensPerSecond / NANOS_PER_SECOND;
+        this.capacity = Math.max(1, burstSize);
+        this.availableTokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token from the bucket, waits for it if the bucket is empty.
+     *
+     * @throws InterruptedException if the waiting is interrupted
+     */
+    synchronized void acquire() throws InterruptedException {
+        refill();
+        while (availableTokens < 1) {
+            long waitNanos = (long) Math.ceil((1 - availableTokens) / tokensPerNano);
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            refill();
+        }
+        availableTokens--;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        availableTokens = Math.min(capacity, availableTokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.support.DefaultMessagePropertiesConverter;
+import org.springframework.amqp.rabbit.support.MessagePropertiesConverter;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Publishes the messages in batches, each batch in a separate channel transaction.
+ * The messages of a batch are delivered to the broker when the transaction is committed at the end of
+ * the channel callback, the transacted template only commits the sends, not the channel callbacks.
+ * The delivery callbacks are called after the commit.
+ */
+public class TransactionalMessageReplayer implements MessageReplayer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionalMessageReplayer.class);
+
+    private RabbitTemplate rabbitTemplate;
+    private ReplayMessageConverter messageConverter;
+    private MessagePropertiesConverter messagePropertiesConverter = new DefaultMessagePropertiesConverter();
+    private String exchangeName;
+    private int batchSize;
+
+    private List<MessageToReplay> batch = new ArrayList<>();
+    private List<Consumer<MessageToReplay>> deliveryCallbacks = new ArrayList<>();
+
+    public TransactionalMessageReplayer(RabbitMessagingTemplate rabbitMessagingTemplate, String exchangeName,
+                                        int batchSize) {
+        this(rabbitMessagingTemplate, exchangeName, batchSize, false);
+    }
+
+    public TransactionalMessageReplayer(RabbitMessagingTemplate rabbitMessagingTemplate, String exchangeName,
+                                        int batchSize, boolean passthrough) {
+        this(new RabbitTemplate(rabbitMessagingTemplate.getRabbitTemplate().getConnectionFactory()),
+                new ReplayMessageConverter(rabbitMessagingTemplate, passthrough), exchangeName, batchSize);
+    }
+
+    TransactionalMessageReplayer(RabbitTemplate rabbitTemplate, ReplayMessageConverter messageConverter,
+                                 String exchangeName, int batchSize) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.rabbitTemplate.setChannelTransacted(true);
+        this.messageConverter = messageConverter;
+        this.exchangeName = exchangeName;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public synchronized void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+        batch.add(message);
+        deliveryCallbacks.add(deliveryCallback);
+
+        if (batch.size() >= batchSize) {
+            commitBatch();
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        commitBatch();
+    }
+
+    private void commitBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Message> amqpMessages = new ArrayList<>(batch.size());
+        batch.forEach(message -> amqpMessages.add(messageConverter.toAmqpMessage(message)));
+
+        rabbitTemplate.execute(channel -> {
+            for (int i = 0; i < batch.size(); i++) {
+                Message amqpMessage = amqpMessages.get(i);
+                channel.basicPublish(exchangeName, batch.get(i).getRoutingKey(), false,
+                        messagePropertiesConverter.fromMessageProperties(
+                                amqpMessage.getMessageProperties(), StandardCharsets.UTF_8.name()),
+                        amqpMessage.getBody());
+            }
+            channel.txCommit();
+            return null;
+        });
+        logger.debug("[TransactionalMessageReplayer] committed a batch of {} messages", batch.size());
+
+        for (int i = 0; i < batch.size(); i++) {
+            deliveryCallbacks.get(i).accept(batch.get(i));
+        }
+        batch.clear();
+        deliveryCallbacks.clear();
+    }
+}
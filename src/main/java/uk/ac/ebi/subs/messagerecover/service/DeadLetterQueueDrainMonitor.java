@@ -0,0 +1,73 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.QDBManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for detecting when all the messages of a RabbitMQ dead letter queue
+ * have been transferred to the QDB queue through the input binding.
+ * The transfer is finished when the RabbitMQ queue is empty and the number of the messages in the QDB queue
+ * does not grow anymore between two checks.
+ */
+@Component
+public class DeadLetterQueueDrainMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeadLetterQueueDrainMonitor.class);
+
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    private QDBManager qdbManager;
+    private RecoverProperties recoverProperties;
+
+    public DeadLetterQueueDrainMonitor(RabbitMessagingTemplate rabbitMessagingTemplate, QDBManager qdbManager,
+                                       RecoverProperties recoverProperties) {
+        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
+        this.qdbManager = qdbManager;
+        this.recoverProperties = recoverProperties;
+    }
+
+    /**
+     * Waits until the RabbitMQ queue is drained to the QDB queue or the configured timeout elapses.
+     *
+     * @param rabbitQueueName the name of the RabbitMQ dead letter queue
+     * @param qdbQueueName the name of the QDB queue the messages are transferred to
+     * @return true, if the RabbitMQ queue has been drained, false if the timeout has elapsed
+     * @throws InterruptedException if the waiting is interrupted
+     */
+    public boolean awaitDrained(String rabbitQueueName, String qdbQueueName) throws InterruptedException {
+        long checkIntervalInMs = recoverProperties.getDrainCheckIntervalInMs();
+        long deadline = System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(recoverProperties.getInputBindingRemovalTimeoutInSec());
+
+        long previousQdbMessageCount = -1;
+        while (System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(checkIntervalInMs);
+
+            long rabbitMessageCount = getRabbitQueueMessageCount(rabbitQueueName);
+            long qdbMessageCount = qdbManager.getQDBQueueMessageCount(qdbQueueName);
+            logger.debug("[DeadLetterQueueDrainMonitor] {} messages left in RabbitMQ, {} messages in QDB",
+                    rabbitMessageCount, qdbMessageCount);
+
+            if (rabbitMessageCount == 0 && qdbMessageCount == previousQdbMessageCount) {
+                logger.info("[DeadLetterQueueDrainMonitor] {} messages have been transferred to QDB",
+                        qdbMessageCount);
+                return true;
+            }
+            previousQdbMessageCount = qdbMessageCount;
+        }
+
+        logger.warn("[DeadLetterQueueDrainMonitor] The {} RabbitMQ queue has not been drained in {} seconds",
+                rabbitQueueName, recoverProperties.getInputBindingRemovalTimeoutInSec());
+        return false;
+    }
+
+    private long getRabbitQueueMessageCount(String rabbitQueueName) {
+        return rabbitMessagingTemplate.getRabbitTemplate().execute(
+                channel -> (long) channel.queueDeclarePassive(rabbitQueueName).getMessageCount());
+    }
+}
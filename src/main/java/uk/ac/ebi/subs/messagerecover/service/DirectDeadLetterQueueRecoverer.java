@@ -0,0 +1,236 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.LocalMessageFilter;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class is responsible for recovering the failed messages directly from the RabbitMQ dead letter queue
+ * without transferring them to QDB.
+ * It consumes the dead letter queue with manual acknowledgements, filters the messages in the application
+ * with the criteria of the messageFilter section of the application.yml file, then fixes and replays them.
+ * A replayed message is acknowledged only when it has been delivered to the broker,
+ * the messages not matching the filter stay in the dead letter queue.
+ * Only the messages that are in the queue at the start are consumed, so a replayed message rejected again
+ * by its consumer and dead lettered back to the queue is not replayed again by the same recovery.
+ * A dry run is not supported: its messages would stay unacknowledged, so the broker would stop delivering them
+ * after the prefetch count and the report would cover only a part of the queue.
+ */
+@Component
+public class DirectDeadLetterQueueRecoverer {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectDeadLetterQueueRecoverer.class);
+
+    private static final String X_DEATH_HEADER = "x-death";
+
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    private MessageRecoverService recoverService;
+    private MessageReplayer messageReplayer;
+    private RecoverProperties recoverProperties;
+    private RecoveryMetrics recoveryMetrics;
+
+    public DirectDeadLetterQueueRecoverer(RabbitMessagingTemplate rabbitMessagingTemplate,
+                                          MessageRecoverService recoverService, MessageReplayer messageReplayer,
+                                          RecoverProperties recoverProperties, RecoveryMetrics recoveryMetrics) {
+        if (recoverProperties.getTransferMode() == RecoverProperties.TransferMode.DIRECT
+                && recoverProperties.getDryRunProp().isEnabled()) {
+            throw new IllegalStateException("A dry run is not supported in the direct transfer mode, " +
+                    "use the qdb transfer mode or disable the dryRunProp.");
+        }
+        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
+        this.recoverService = recoverService;
+        this.messageReplayer = messageReplayer;
+        this.recoverProperties = recoverProperties;
+        this.recoveryMetrics = recoveryMetrics;
+    }
+
+    /**
+     * Consumes the messages of the dead letter queue present at the start, or until no more messages arrive
+     * within the configured idle timeout, and replays the messages matching the filter.
+     *
+     * @return the number of the replayed messages
+     */
+    public long recoverMessages() {
+        return recoveryMetrics.recordPhase("direct", this::consumeDeadLetterQueue);
+    }
+
+    private long consumeDeadLetterQueue() {
+        RecoverProperties.DirectProp directProp = recoverProperties.getDirectProp();
+        String deadLetterQueueName = recoverProperties.getRabbitMQProp().getDeadLetterQueueName();
+        LocalMessageFilter messageFilter = new LocalMessageFilter(recoverProperties.getQdbProp().getMessageFilter());
+        boolean keepPayload = recoverProperties.getReplayProp().isPassthrough();
+        logger.info("[DirectDeadLetterQueueRecoverer] Consuming messages from the {} queue", deadLetterQueueName);
+        logger.info("Applied filter: {}", messageFilter);
+
+        ConnectionFactory connectionFactory = rabbitMessagingTemplate.getRabbitTemplate().getConnectionFactory();
+        Connection connection = connectionFactory.createConnection();
+        Channel channel = connection.createChannel(false);
+        BlockingQueue<ReceivedMessage> receivedMessages = new LinkedBlockingQueue<>();
+
+        long queuedMessageCount = 0;
+        long consumedMessageCount = 0;
+        long replayedMessageCount = 0;
+        long skippedMessageCount = 0;
+        try {
+            queuedMessageCount = channel.queueDeclarePassive(deadLetterQueueName).getMessageCount();
+            logger.info("[DirectDeadLetterQueueRecoverer] {} messages to consume", queuedMessageCount);
+            channel.basicQos(directProp.getPrefetchCount());
+            String consumerTag = channel.basicConsume(deadLetterQueueName, false, new DefaultConsumer(channel) {
+                @Override
+                public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties,
+                                           byte[] body) {
+                    receivedMessages.add(new ReceivedMessage(envelope, properties, body));
+                }
+            });
+
+            ReceivedMessage receivedMessage;
+            while (consumedMessageCount < queuedMessageCount && (receivedMessage = receivedMessages.poll(
+                    directProp.getIdleTimeoutInMs(), TimeUnit.MILLISECONDS)) != null) {
+                consumedMessageCount++;
+                MessageToReplay message = receivedMessage.toMessageToReplay(keepPayload);
+                recoveryMetrics.messageRead();
+                recoveryMetrics.bytesRead(receivedMessage.body.length);
+                if (!messageFilter.test(message)) {
+                    skippedMessageCount++;
+                    continue;
+                }
+
+                recoverService.fixFailedMessage(message);
+                long deliveryTag = receivedMessage.envelope.getDeliveryTag();
+                recoveryMetrics.recordReplay(message, messageReplayer::replay, deliveredMessage -> {
+                    acknowledge(channel, deliveryTag);
+                    recoveryMetrics.messageDelivered();
+                });
+                replayedMessageCount++;
+            }
+
+            channel.basicCancel(consumerTag);
+            messageReplayer.flush();
+        } catch (IOException e) {
+            String errorMessage = String.format("Error happened consuming the %s queue: %s",
+                    deadLetterQueueName, e.getMessage());
+            logger.error(errorMessage);
+            throw new UncheckedIOException(errorMessage, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Consuming the dead letter queue is interrupted.", e);
+        } finally {
+            requeueUnacknowledgedMessages(channel);
+            connection.close();
+        }
+
+        logger.info("[DirectDeadLetterQueueRecoverer] {} of the {} queued messages consumed, {} messages replayed, " +
+                "{} messages left in the {} queue", consumedMessageCount, queuedMessageCount, replayedMessageCount,
+                skippedMessageCount, deadLetterQueueName);
+        if (consumedMessageCount < queuedMessageCount) {
+            logger.warn("No message has arrived within the idle timeout, {} queued messages have not been consumed",
+                    queuedMessageCount - consumedMessageCount);
+        }
+        if (directProp.getPrefetchCount() > 0 && skippedMessageCount >= directProp.getPrefetchCount()) {
+            logger.warn("The skipped messages have used up the prefetch count, the end of the {} queue " +
+                    "might have not been reached. Increase the prefetchCount to read further.", deadLetterQueueName);
+        }
+        return replayedMessageCount;
+    }
+
+    private void acknowledge(Channel channel, long deliveryTag) {
+        try {
+            channel.basicAck(deliveryTag, false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error happened acknowledging a replayed message.", e);
+        }
+    }
+
+    /**
+     * Puts back the skipped messages and the ones that could not be replayed to the dead letter queue.
+     */
+    private void requeueUnacknowledgedMessages(Channel channel) {
+        try {
+            channel.basicNack(0, true, true);
+            channel.close();
+        } catch (IOException | TimeoutException | ShutdownSignalException e) {
+            logger.warn("Error happened requeueing the not replayed messages: {}", e.getMessage());
+        }
+    }
+
+    private static class ReceivedMessage {
+        private final Envelope envelope;
+        private final AMQP.BasicProperties properties;
+        private final byte[] body;
+
+        private ReceivedMessage(Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+            this.envelope = envelope;
+            this.properties = properties;
+            this.body = body;
+        }
+
+        /**
+         * @param keepPayload if true, then the original bytes of the body are kept in the payload of the message
+         */
+        private MessageToReplay toMessageToReplay(boolean keepPayload) {
+            MessageProperties messageProperties = new MessageProperties();
+            messageProperties.setId(envelope.getDeliveryTag());
+            messageProperties.setRoutingKey(envelope.getRoutingKey());
+            messageProperties.setPayloadSize(body.length);
+            Date timestamp = getTimestamp(properties);
+            if (timestamp != null) {
+                messageProperties.setTimestamp(String.valueOf(timestamp.getTime()));
+            }
+            messageProperties.setContentType(properties.getContentType());
+            messageProperties.setContentEncoding(properties.getContentEncoding());
+            messageProperties.setMessageId(properties.getMessageId());
+            messageProperties.setHeaders(properties.getHeaders());
+
+            MessageToReplay message = new MessageToReplay(messageProperties, new String(body, StandardCharsets.UTF_8));
+            if (keepPayload) {
+                message.setPayload(body);
+            }
+            return message;
+        }
+
+        /**
+         * The publishers rarely set the timestamp property, then the time of the latest dead lettering
+         * is used from the x-death header, like QDB uses the time it has stored the message.
+         */
+        private static Date getTimestamp(AMQP.BasicProperties properties) {
+            if (properties.getTimestamp() != null) {
+                return properties.getTimestamp();
+            }
+
+            Object deaths = properties.getHeaders() == null ? null : properties.getHeaders().get(X_DEATH_HEADER);
+            if (deaths instanceof List && !((List<?>) deaths).isEmpty() && ((List<?>) deaths).get(0) instanceof Map) {
+                Object time = ((Map<?, ?>) ((List<?>) deaths).get(0)).get("time");
+                if (time instanceof Date) {
+                    return (Date) time;
+                }
+            }
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class is responsible for measuring the throughput of a recovery with generated messages.
+ * It publishes the configured number of messages to the dead letter exchange with a weighted mix of payload sizes
+ * and routing keys, then the recovery runs as usual and the report shows how fast the messages were recovered,
+ * the latency of fixing and replaying a message and the peak heap usage.
+ * The messages are generated with a fixed seed, so the same configuration publishes the same messages.
+ */
+@Component
+public class LoadGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final long RANDOM_SEED = 42;
+    private static final String DEFAULT_PAYLOAD_SIZE = "1k";
+    private static final String DEFAULT_ROUTING_KEY = "usi.loadtest.message";
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private RecoverProperties recoverProperties;
+    private RabbitTemplate rabbitTemplate;
+    private RecoveryMetrics recoveryMetrics;
+
+    private long publishedMessageCount;
+    private long publishedBytes;
+    private long recoveryStartTime;
+
+    public LoadGenerator(RecoverProperties recoverProperties, RabbitMessagingTemplate rabbitMessagingTemplate,
+                         RecoveryMetrics recoveryMetrics) {
+        this.recoverProperties = recoverProperties;
+        this.rabbitTemplate = rabbitMessagingTemplate.getRabbitTemplate();
+        this.recoveryMetrics = recoveryMetrics;
+    }
+
+    public boolean isEnabled() {
+        return recoverProperties.getLoadTestProp().isEnabled();
+    }
+
+    /**
+     * Publishes the generated messages to the dead letter exchange and starts measuring the recovery.
+     */
+    public void publishMessages() {
+        RecoverProperties.LoadTestProp loadTestProp = recoverProperties.getLoadTestProp();
+        String deadLetterExchangeName = recoverProperties.getRabbitMQProp().getDeadLetterExchangeName();
+        Random random = new Random(RANDOM_SEED);
+        WeightedChoice<Integer> payloadSizes = new WeightedChoice<>(getPayloadSizes(loadTestProp));
+        WeightedChoice<String> routingKeys = new WeightedChoice<>(getRoutingKeys(loadTestProp));
+
+        logger.info("[LoadGenerator] Publishing {} messages to {}", loadTestProp.getMessageCount(),
+                deadLetterExchangeName);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < loadTestProp.getMessageCount(); i++) {
+            byte[] body = generateBody(i, payloadSizes.next(random));
+            MessageProperties messageProperties = new MessageProperties();
+            messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+            rabbitTemplate.send(deadLetterExchangeName, routingKeys.next(random), new Message(body, messageProperties));
+
+            publishedMessageCount++;
+            publishedBytes += body.length;
+        }
+        logger.info("[LoadGenerator] Published {} messages ({} MB) in {} ms", publishedMessageCount,
+                String.format(Locale.ROOT, "%.1f", publishedBytes / BYTES_PER_MB),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+        recoveryStartTime = System.nanoTime();
+    }
+
+    /**
+     * Returns the throughput of the recovery since the messages were published,
+     * the median and the 99th percentile of fixing and replaying a message and the peak heap usage.
+     * The throughput in MB/s is calculated from the size of the published payloads.
+     *
+     * @param replayedMessageCount the number of the messages replayed by the recovery
+     * @return the human readable report of the load test
+     */
+    public String buildReport(long replayedMessageCount) {
+        double elapsedSeconds = Math.max(System.nanoTime() - recoveryStartTime, 1) / 1e9;
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "  published messages %12d, %10.1f MB%n",
+                publishedMessageCount, publishedBytes / BYTES_PER_MB));
+        report.append(String.format(Locale.ROOT, "  replayed messages  %12d in %.1f s%n",
+                replayedMessageCount, elapsedSeconds));
+        report.append(String.format(Locale.ROOT, "  throughput         %12.0f msg/s, %10.1f MB/s%n",
+                replayedMessageCount / elapsedSeconds, publishedBytes / BYTES_PER_MB / elapsedSeconds));
+        appendLatency(report, "fix latency", RecoveryMetrics.FIX_TIMER);
+        appendLatency(report, "replay latency", RecoveryMetrics.REPLAY_TIMER);
+        report.append(String.format(Locale.ROOT, "  peak heap          %12.1f MB%n",
+                getPeakHeapUsage() / BYTES_PER_MB));
+
+        return report.toString();
+    }
+
+    private void appendLatency(StringBuilder report, String name, String timerName) {
+        Timer timer = recoveryMetrics.getMeterRegistry().find(timerName).timer();
+        if (timer != null && timer.count() > 0) {
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            report.append(String.format(Locale.ROOT, "  %-18s p50 %.3f ms, p99 %.3f ms%n", name,
+                    RecoveryMetrics.percentileInMs(snapshot, 0.5), RecoveryMetrics.percentileInMs(snapshot, 0.99)));
+        }
+    }
+
+    /**
+     * The sum of the peak usages of the heap memory pools since the messages were published.
+     */
+    private static long getPeakHeapUsage() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(memoryPool -> memoryPool.getType() == MemoryType.HEAP)
+                .mapToLong(memoryPool -> memoryPool.getPeakUsage().getUsed())
+                .sum();
+    }
+
+    /**
+     * Generates a JSON body padded to the given size.
+     */
+    static byte[] generateBody(int index, int size) {
+        String prefix = "{\"loadTestId\":" + index + ",\"submission\":{\"alias\":\"load-test-" + index
+                + "\",\"padding\":\"";
+        String suffix = "\"}}";
+        int paddingLength = Math.max(0, size - prefix.length() - suffix.length());
+        char[] padding = new char[paddingLength];
+        Arrays.fill(padding, 'x');
+
+        return (prefix + new String(padding) + suffix).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a size given in bytes or with a `k` or `m` suffix (e.g. `512`, `16k`, `1m`).
+     */
+    static int parseSize(String size) {
+        String normalizedSize = size.trim().toLowerCase(Locale.ROOT);
+        if (normalizedSize.endsWith("k")) {
+            return Integer.parseInt(normalizedSize.substring(0, normalizedSize.length() - 1)) * 1024;
+        }
+        if (normalizedSize.endsWith("m")) {
+            return Integer.parseInt(normalizedSize.substring(0, normalizedSize.length() - 1)) * 1024 * 1024;
+        }
+
+        return Integer.parseInt(normalizedSize);
+    }
+
+    private static Map<Integer, Integer> getPayloadSizes(RecoverProperties.LoadTestProp loadTestProp) {
+        Map<String, Integer> configuredSizes = loadTestProp.getPayloadSizes().isEmpty()
+                ? Collections.singletonMap(DEFAULT_PAYLOAD_SIZE, 1)
+                : loadTestProp.getPayloadSizes();
+        Map<Integer, Integer> payloadSizes = new LinkedHashMap<>();
+        configuredSizes.forEach((size, weight) -> payloadSizes.merge(parseSize(size), weight, Integer::sum));
+
+        return payloadSizes;
+    }
+
+    /**
+     * If no routing key is configured, then the messages get the routing key of the message filter,
+     * so they are all replayed.
+     */
+    private Map<String, Integer> getRoutingKeys(RecoverProperties.LoadTestProp loadTestProp) {
+        if (!loadTestProp.getRoutingKeys().isEmpty()) {
+            return loadTestProp.getRoutingKeys();
+        }
+
+        RecoverProperties.QdbProp qdbProp = recoverProperties.getQdbProp();
+        String filteredRoutingKey = qdbProp == null || qdbProp.getMessageFilter() == null
+                ? null
+                : qdbProp.getMessageFilter().getRoutingKey();
+        return Collections.singletonMap(filteredRoutingKey == null || filteredRoutingKey.isEmpty()
+                ? DEFAULT_ROUTING_KEY
+                : filteredRoutingKey, 1);
+    }
+
+    /**
+     * Picks values randomly in proportion to their weights.
+     */
+    private static class WeightedChoice<T> {
+        private final List<T> values = new ArrayList<>();
+        private final List<Integer> cumulativeWeights = new ArrayList<>();
+        private int totalWeight;
+
+        private WeightedChoice(Map<T, Integer> weights) {
+            weights.forEach((value, weight) -> {
+                if (weight <= 0) {
+                    throw new IllegalArgumentException("The weight of " + value + " has to be positive: " + weight);
+                }
+                totalWeight += weight;
+                values.add(value);
+                cumulativeWeights.add(totalWeight);
+            });
+        }
+
+        private T next(Random random) {
+            int pick = random.nextInt(totalWeight);
+            int index = 0;
+            while (cumulativeWeights.get(index) <= pick) {
+                index++;
+            }
+
+            return values.get(index);
+        }
+    }
+}
@@ -1,24 +1,24 @@
 package uk.ac.ebi.subs.messagerecover.service;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
 import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
-import uk.ac.ebi.subs.messagerecover.queuemanager.MessageFilter;
-import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.fixer.MessageFixer;
+import uk.ac.ebi.subs.messagerecover.fixer.MessageFixerChain;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
 import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
 import uk.ac.ebi.subs.messagerecover.queuemanager.QDBManager;
+import uk.ac.ebi.subs.messagerecover.queuemanager.ReactiveQDBManager;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayer;
 
-import java.io.IOException;
-import java.net.URLEncoder;
-import java.util.Arrays;
-import java.util.Collections;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 /**
  * This service is responsible for communicating with the QDBManager to create and read queues,
@@ -31,29 +31,142 @@ public class MessageRecoverService {
     private static final Logger logger = LoggerFactory.getLogger(MessageRecoverService.class);
 
     private QDBManager qdbManager;
+    private ReactiveQDBManager reactiveQDBManager;
     private RecoverProperties recoverProperties;
-    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    private MessageReplayer messageReplayer;
+    private MessageFixerChain messageFixerChain;
+    private RecoveryCheckpoint recoveryCheckpoint;
+    private DeadLetterQueueDrainMonitor drainMonitor;
+    private RecoveryMetrics recoveryMetrics;
+    private String rabbitQueueName;
     private String qdbQueueName;
+    private boolean qdbQueueReady;
+    private long qdbQueueMessageCount;
+    private MessageSpool messageSpool;
 
+    @Autowired
     public MessageRecoverService(RecoverProperties recoverProperties, QDBManager qdbManager,
-                                 RabbitMessagingTemplate rabbitMessagingTemplate) {
+                                 ReactiveQDBManager reactiveQDBManager, MessageReplayer messageReplayer,
+                                 MessageFixerChain messageFixerChain, RecoveryCheckpoint recoveryCheckpoint,
+                                 DeadLetterQueueDrainMonitor drainMonitor, RecoveryMetrics recoveryMetrics) {
+        this(defaultQueueMapping(recoverProperties), recoverProperties, qdbManager, reactiveQDBManager,
+                messageReplayer, messageFixerChain, recoveryCheckpoint, drainMonitor, recoveryMetrics);
+    }
+
+    /**
+     * Creates a service recovering the dead letter queue of the given queue mapping.
+     * The replayer and the checkpoint have to belong to the same queue mapping.
+     */
+    public MessageRecoverService(RecoverProperties.MultiQueueProp.QueueMapping queueMapping,
+                                 RecoverProperties recoverProperties, QDBManager qdbManager,
+                                 ReactiveQDBManager reactiveQDBManager, MessageReplayer messageReplayer,
+                                 MessageFixerChain messageFixerChain, RecoveryCheckpoint recoveryCheckpoint,
+                                 DeadLetterQueueDrainMonitor drainMonitor, RecoveryMetrics recoveryMetrics) {
         this.recoverProperties = recoverProperties;
         this.qdbManager = qdbManager;
-        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
-        this.qdbQueueName = recoverProperties.getQdbProp().getQueue().getDeadLetterQueueName()
-                            + "__" + UUID.randomUUID().toString();
+        this.reactiveQDBManager = reactiveQDBManager;
+        this.messageReplayer = messageReplayer;
+        this.messageFixerChain = messageFixerChain;
+        this.recoveryCheckpoint = recoveryCheckpoint;
+        this.drainMonitor = drainMonitor;
+        this.recoveryMetrics = recoveryMetrics;
+        this.rabbitQueueName = queueMapping.getDeadLetterQueueName();
+        this.qdbQueueName = recoveryCheckpoint.isResumed()
+                            ? recoveryCheckpoint.getQdbQueueName()
+                            : queueMapping.getQdbDeadLetterQueueName() + "__" + UUID.randomUUID().toString();
+    }
+
+    private static RecoverProperties.MultiQueueProp.QueueMapping defaultQueueMapping(
+            RecoverProperties recoverProperties) {
+        RecoverProperties.MultiQueueProp.QueueMapping queueMapping =
+                new RecoverProperties.MultiQueueProp.QueueMapping();
+        queueMapping.setDeadLetterQueueName(recoverProperties.getRabbitMQProp().getDeadLetterQueueName());
+        queueMapping.setQdbDeadLetterQueueName(recoverProperties.getQdbProp().getQueue().getDeadLetterQueueName());
+        queueMapping.setExchangeName(recoverProperties.getRabbitMQProp().getExchangeName());
+
+        return queueMapping;
+    }
+
+    public String getRabbitQueueName() {
+        return rabbitQueueName;
+    }
+
+    public String getQdbQueueName() {
+        return qdbQueueName;
     }
 
     /**
      * Transfer messages from a specified RabbitMQ queue to a QDB queue.
      * First it creates the QDB queue, then it creates an input binding between a RabbitMQ queue and a QDB queue.
-     * After a specified amount of time it will remove the above specified input binding
+     * When all the messages have been transferred it will remove the above specified input binding
      * to not have the possibility to create a cyclical link (message routing) between RabbitMQ and QDB.
+     * If an unfinished recovery is resumed from its checkpoint, then its messages are already in the QDB queue.
+     * The input binding of the unfinished recovery is removed, in case it was stopped before removing it.
      */
     public void transferMessagesToQDBDeadLetterQueue() {
-        createQDBDeadLetterQueue();
-        addInputBindingToQDBDeadLetterQueue();
-        removeInputBindingFromQDBDeadLetterQueue();
+        if (recoveryCheckpoint.isResumed()) {
+            logger.info("[MessageRecoverService] Resuming the recovery from the QDB queue: {}", qdbQueueName);
+            removeLeftoverInputBinding();
+            return;
+        }
+
+        recoveryMetrics.recordPhase("transfer", () -> {
+            createQDBDeadLetterQueue();
+            recoveryCheckpoint.start(qdbQueueName);
+            qdbQueueReady = true;
+            addInputBindingToQDBDeadLetterQueue();
+            recoveryMetrics.recordPhase("bindingDelay", this::removeInputBindingFromQDBDeadLetterQueue);
+        });
+        countTransferredMessages();
+    }
+
+    /**
+     * Transfer the messages arrived to the RabbitMQ queue since the previous transfer to the same QDB queue.
+     * The QDB queue is created by the first transfer, unless a recovery is resumed from its checkpoint.
+     * The input binding is removed after every transfer like in {@link #transferMessagesToQDBDeadLetterQueue()}.
+     */
+    public void transferNewMessagesToQDBDeadLetterQueue() {
+        recoveryMetrics.recordPhase("transfer", () -> {
+            if (!qdbQueueReady) {
+                if (recoveryCheckpoint.isResumed()) {
+                    logger.info("[MessageRecoverService] Resuming the recovery from the QDB queue: {}",
+                            qdbQueueName);
+                } else {
+                    createQDBDeadLetterQueue();
+                    recoveryCheckpoint.start(qdbQueueName);
+                }
+                qdbQueueReady = true;
+            }
+            addInputBindingToQDBDeadLetterQueue();
+            recoveryMetrics.recordPhase("bindingDelay", this::removeInputBindingFromQDBDeadLetterQueue);
+        });
+        countTransferredMessages();
+    }
+
+    /**
+     * Removes the input binding a stopped recovery may have left on the QDB queue,
+     * so it does not keep draining the RabbitMQ queue. QDB fails the request, if there is no such binding.
+     */
+    private void removeLeftoverInputBinding() {
+        try {
+            qdbManager.removeInputBindingFromQDBDeadLetterQueue(rabbitQueueName, qdbQueueName);
+        } catch (RuntimeException e) {
+            logger.info("[MessageRecoverService] There is no input binding to remove from the QDB queue {}: {}",
+                    qdbQueueName, e.getMessage());
+        }
+    }
+
+    /**
+     * Counts the messages added to the QDB queue since the previous transfer.
+     */
+    private void countTransferredMessages() {
+        try {
+            long messageCount = qdbManager.getQDBQueueMessageCount(qdbQueueName);
+            recoveryMetrics.messagesTransferred(Math.max(0, messageCount - qdbQueueMessageCount));
+            qdbQueueMessageCount = messageCount;
+        } catch (RuntimeException e) {
+            logger.warn("The number of the transferred messages can not be read: {}", e.getMessage());
+        }
     }
 
     /**
@@ -69,23 +182,30 @@ public class MessageRecoverService {
      * Add a binding between a RabbitMQ and a QDB queue.
      */
     private void addInputBindingToQDBDeadLetterQueue() {
-        String rabbitQueueName = recoverProperties.getRabbitMQProp().getDeadLetterQueueName();
         qdbManager.addInputBindingToQDBDeadLetterQueue(rabbitQueueName, qdbQueueName);
     }
 
     /**
      * Remove a binding between a RabbitMQ and a QDB queue.
-     * Before removing the binding it waits a defined amount of time (configurable in the application.yml file).
+     * Before removing the binding it waits until the RabbitMQ queue is drained to the QDB queue
+     * or the timeout set in the application.yml file elapses.
+     * If the number of the messages in the queues can not be read,
+     * then it waits a defined amount of time (configurable in the application.yml file).
      */
     private void removeInputBindingFromQDBDeadLetterQueue() {
         try {
-            Thread.sleep(1000 * Integer.valueOf(recoverProperties.getInputBindingRemovalDelayInSec()));
+            try {
+                drainMonitor.awaitDrained(rabbitQueueName, qdbQueueName);
+            } catch (RuntimeException e) {
+                logger.warn("Checking the transferred messages has failed, waiting {} seconds instead.\n" +
+                        " Error message: {}", recoverProperties.getInputBindingRemovalDelayInSec(), e.getMessage());
+                Thread.sleep(1000 * Integer.valueOf(recoverProperties.getInputBindingRemovalDelayInSec()));
+            }
         } catch (InterruptedException e) {
             logger.info("Waiting for removing the input binding is interrupted.\n Error message: {}", e.getMessage());
             throw new RuntimeException(e.getCause());
         }
 
-        String rabbitQueueName = recoverProperties.getRabbitMQProp().getDeadLetterQueueName();
         qdbManager.removeInputBindingFromQDBDeadLetterQueue(rabbitQueueName, qdbQueueName);
     }
 
@@ -95,17 +215,81 @@ public class MessageRecoverService {
      * @return a filtered {@link List} of {@link MessageToReplay}
      */
     public List<MessageToReplay> readFilterMessagesFromQDBDaedLetterQueue() {
-        ResponseEntity<String> response = qdbManager.filterMessagesFromQDBDeadLetterQueue(qdbQueueName);
-        return parseFailedMessages(response.getBody());
+        List<MessageToReplay> messagesToReplay = new ArrayList<>();
+        readFilterMessagesFromQDBDaedLetterQueue(messagesToReplay::add);
+        return messagesToReplay;
     }
 
     /**
-     * This is the method that you probably would have to replace to fix a {@link List} of failed messages.
+     * Retrieves messages with applied filter criteria defined in the application.yml file
+     * and passes them one by one to the given consumer as they are read from the QDB queue.
+     * A resumed recovery continues from the message following the last replayed one.
      *
-     * ***** IMPORTANT!!! *****
-     * THE CURRENT OR DEFAULT METHOD IS JUST A NAIVE IMPLEMENTATION FOR REPLAY A MESSAGE WHEN A SERVICE WAS DOWN
-     * IF THE CASE IS SOMETHING ELSE, THEN THIS METHOD BODY SHOULD BE CHANGED
-     * AND IT SHOULD CONTAIN THE FIX OF THE MESSAGES.
+     * @param messageConsumer the {@link Consumer} that processes the filtered {@link MessageToReplay}s
+     */
+    public void readFilterMessagesFromQDBDaedLetterQueue(Consumer<MessageToReplay> messageConsumer) {
+        qdbManager.filterMessagesFromQDBDeadLetterQueue(
+                qdbQueueName, recoveryCheckpoint.getResumeFromId(), messageConsumer);
+    }
+
+    /**
+     * Retrieves messages with applied filter criteria defined in the application.yml file
+     * and appends them to the given spool. If the spool already holds some messages of the QDB queue,
+     * then the reading continues from the message following the last spooled one.
+     * The spool is marked complete when all the messages have been read.
+     *
+     * @param messageSpool the {@link MessageSpool} of the QDB queue of this service
+     * @return the number of the spooled messages
+     */
+    public long readFilterMessagesFromQDBDaedLetterQueue(MessageSpool messageSpool) {
+        if (messageSpool.isReadComplete()) {
+            logger.info("[MessageRecoverService] The messages of the QDB queue {} are already spooled", qdbQueueName);
+            return 0;
+        }
+
+        String resumeFromId = messageSpool.getResumeFromId();
+        long[] spooledMessageCount = {0};
+        qdbManager.filterMessagesFromQDBDeadLetterQueue(qdbQueueName,
+                resumeFromId == null ? recoveryCheckpoint.getResumeFromId() : resumeFromId,
+                message -> {
+                    messageSpool.append(message);
+                    spooledMessageCount[0]++;
+                });
+        messageSpool.markReadComplete();
+
+        return spooledMessageCount[0];
+    }
+
+    /**
+     * Returns the spool of the QDB queue of this service, it is opened at the first call.
+     * The spool of every RabbitMQ queue is kept in its own subdirectory of the configured directory.
+     *
+     * @return the {@link MessageSpool} or null, if the spoolProp.directory is not set in the application.yml file
+     */
+    public synchronized MessageSpool getMessageSpool() {
+        RecoverProperties.SpoolProp spoolProp = recoverProperties.getSpoolProp();
+        if (messageSpool == null && spoolProp.isEnabled()) {
+            messageSpool = new MessageSpool(Paths.get(spoolProp.getDirectory(), rabbitQueueName),
+                    qdbQueueName, spoolProp.getSegmentSizeInMb());
+        }
+
+        return messageSpool;
+    }
+
+    /**
+     * Retrieves messages with applied filter criteria defined in the application.yml file without blocking.
+     * The messages are read from the QDB queue as the subscriber requests them.
+     * A resumed recovery continues from the message following the last replayed one.
+     *
+     * @return a {@link Flux} of the filtered {@link MessageToReplay}s
+     */
+    public Flux<MessageToReplay> streamFilterMessagesFromQDBDeadLetterQueue() {
+        return reactiveQDBManager.filterMessagesFromQDBDeadLetterQueue(
+                qdbQueueName, recoveryCheckpoint.getResumeFromId());
+    }
+
+    /**
+     * Fix a {@link List} of failed messages one by one with {@link #fixFailedMessage(MessageToReplay)}.
      *
      * @param messageToReplay a {@link List} of {@link MessageToReplay} that holds the original failed messages
      *                         and their routing keys
@@ -113,60 +297,81 @@ public class MessageRecoverService {
     public void fixFailedMessages(List<MessageToReplay> messageToReplay) {
         logger.info("[MessageRecoverService] fixing messages");
 
-        messageToReplay.forEach(message -> message.setBodyToReplay(message.getBody()));
+        messageToReplay.forEach(this::fixFailedMessage);
+    }
+
+    /**
+     * Fix a failed message with the {@link MessageFixer}s matching its routing key.
+     *
+     * ***** IMPORTANT!!! *****
+     * WITHOUT ANY {@link MessageFixer} THE MESSAGE IS REPLAYED UNCHANGED, WHICH IS JUST A NAIVE IMPLEMENTATION
+     * FOR REPLAY A MESSAGE WHEN A SERVICE WAS DOWN.
+     * IF THE CASE IS SOMETHING ELSE, THEN A {@link MessageFixer} SHOULD BE ADDED THAT CONTAINS THE FIX OF THE MESSAGE.
+     *
+     * @param messageToReplay a {@link MessageToReplay} that holds the original failed message and its routing key
+     */
+    public void fixFailedMessage(MessageToReplay messageToReplay) {
+        recoveryMetrics.recordFix(messageToReplay, () -> messageFixerChain.fix(messageToReplay));
     }
 
     /**
      * Replay the fixed/corrected messages with their original routing key to the given RabbitMQ exchange.
      * The exchange is defined in the application.yml configuration file.
+     * It returns when all the messages have been delivered to the broker.
      *
      * @param messageToReplay a {@link List} of {@link MessageToReplay}
      */
     public void replayFailedMessages(List<MessageToReplay> messageToReplay) {
         logger.info("[MessageRecoverService] replaying messages");
-        RecoverProperties.RabbitMQProp rabbitMqProp = recoverProperties.getRabbitMQProp();
-        messageToReplay.forEach(
-                message -> {
-                    logger.info("[MessageRecoverService] replay message: {} with routing key: {}",
-                            message.getRoutingKey(), message.getBodyToReplay());
-                    rabbitMessagingTemplate.convertAndSend(
-                            rabbitMqProp.getExchangeName(), message.getRoutingKey(), message.getBodyToReplay());
-                }
-        );
+        messageToReplay.forEach(this::replayFailedMessage);
+        flushReplayedMessages();
     }
 
-    private List<MessageToReplay> parseFailedMessages(String messageBody) {
-        if (messageBody == null) {
-            return Collections.emptyList();
-        }
-        String lineSeparator = MessageFilter.LINE_SEPARATOR;
-        List<String> messages = Arrays.asList(messageBody.split(
-                URLEncoder.encode(lineSeparator + MessageFilter.MESSAGE_SEPARATOR + lineSeparator)));
-        return messages.stream()
-                .map(this::buildFailedMessage)
-                .collect(Collectors.toList());
+    /**
+     * Replay a fixed/corrected message with its original routing key to the given RabbitMQ exchange.
+     * Depending on the configured replay mode the message might be delivered asynchronously,
+     * use {@link #flushReplayedMessages()} to wait for the delivery of the replayed messages.
+     *
+     * @param message a {@link MessageToReplay}
+     */
+    public void replayFailedMessage(MessageToReplay message) {
+        logger.info("[MessageRecoverService] replay message: {} with routing key: {}",
+                message.getRoutingKey(), message.getBodyToReplay());
+        recoveryMetrics.recordReplay(message, messageReplayer::replay, this::messageDelivered);
     }
 
-    private MessageToReplay buildFailedMessage(String message) {
-        String[] tempList = message.split("\n");
-        String messageProperties = tempList[0].substring(tempList[0].indexOf(":{") + 1);
-        MessageProperties messagePropertiesJson = convertStringToJSON(messageProperties);
-        return new MessageToReplay(messagePropertiesJson.getRoutingKey(), tempList[1]);
+    /**
+     * Waits until all the replayed messages have been delivered to the broker.
+     */
+    public void flushReplayedMessages() {
+        messageReplayer.flush();
     }
 
-    private MessageProperties convertStringToJSON(String toJson) {
-        ObjectMapper mapper = new ObjectMapper();
+    private void messageDelivered(MessageToReplay message) {
+        recoveryMetrics.messageDelivered();
+        if (message.getMessageProperties() != null) {
+            recoveryCheckpoint.messageReplayed(message.getMessageProperties().getId());
+            if (messageSpool != null) {
+                messageSpool.messageReplayed(message.getMessageProperties().getId());
+            }
+        }
+    }
 
-        MessageProperties messageProperties;
-        try {
-            messageProperties = mapper.readValue(toJson, MessageProperties.class);
-        } catch (IOException e) {
-            String errorMessage =
-                    String.format("Error happened converting the message to a JSON string: %s", e.getMessage());
-            logger.error(errorMessage);
-            throw new RuntimeException(errorMessage);
+    /**
+     * Writes the ID of the last delivered message to the checkpoint file and the spool,
+     * so a restarted recovery continues from the next message.
+     */
+    public void saveRecoveryProgress() {
+        recoveryCheckpoint.save();
+        if (messageSpool != null) {
+            messageSpool.saveReplayedId();
         }
+    }
 
-        return messageProperties;
+    /**
+     * Marks the recovery as finished, so the next run starts a new recovery instead of resuming this one.
+     */
+    public void completeRecovery() {
+        recoveryCheckpoint.complete();
     }
 }
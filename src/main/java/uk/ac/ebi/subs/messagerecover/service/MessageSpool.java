@@ -0,0 +1,625 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * An append-only log of the messages read from a QDB queue, stored in memory-mapped segment files
+ * of a local directory. The read phase of the recovery appends the messages to the log and the replay phase
+ * reads them from it, so the messages waiting for the replay do not use heap.
+ * The log keeps the ID of the last delivered message, so a restarted recovery of the same QDB queue
+ * continues the replay from the log and the reading from the message following the last spooled one.
+ *
+ * A record is written before its length, so after a crash of the application a record is either complete
+ * or it is not visible at all. The segments are forced to the disk before the meta file records the end of the reading
+ * or the last delivered message, so after a crash of the machine the meta file never refers to a lost message.
+ * The ID of the last delivered message is written after every {@value #REPLAYED_ID_SAVE_INTERVAL} delivered messages
+ * and by {@link #saveReplayedId()}.
+ * The AMQP properties and the original bytes of a message are kept, too, if the message has them.
+ * The header values are written with their types, like in an AMQP field table, so e.g. a timestamp of the x-death
+ * header is read back as a {@link Date}. A value of any other type is kept as a String.
+ */
+public class MessageSpool {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageSpool.class);
+
+    private static final String META_FILE = "spool.meta";
+    private static final String SEGMENT_FILE_PREFIX = "segment-";
+    private static final String SEGMENT_FILE_SUFFIX = ".log";
+
+    private static final long MAGIC = 0x5245434f5350314cL;
+    private static final int META_SIZE = 4096;
+    private static final int READ_COMPLETE_OFFSET = 8;
+    private static final int REPLAYED_ID_OFFSET = 16;
+    private static final int QUEUE_NAME_OFFSET = 24;
+    private static final int MAX_QUEUE_NAME_LENGTH = META_SIZE - QUEUE_NAME_OFFSET - Integer.BYTES;
+
+    private static final int REPLAYED_ID_SAVE_INTERVAL = 1000;
+
+    private static final int END_OF_SEGMENT = -1;
+    private static final int NULL_FIELD = -1;
+
+    private static final byte STRING_VALUE = 'S';
+    private static final byte BOOLEAN_VALUE = 't';
+    private static final byte BYTE_VALUE = 'b';
+    private static final byte SHORT_VALUE = 's';
+    private static final byte INTEGER_VALUE = 'I';
+    private static final byte LONG_VALUE = 'l';
+    private static final byte FLOAT_VALUE = 'f';
+    private static final byte DOUBLE_VALUE = 'd';
+    private static final byte DECIMAL_VALUE = 'D';
+    private static final byte TIMESTAMP_VALUE = 'T';
+    private static final byte BYTES_VALUE = 'x';
+    private static final byte LIST_VALUE = 'A';
+    private static final byte MAP_VALUE = 'F';
+    private static final byte NULL_VALUE = 'V';
+
+    private final Path directory;
+    private final int segmentSize;
+    private final MappedByteBuffer meta;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int writePosition;
+    private long lastSpooledId;
+    private long spooledMessageCount;
+    private long replayedId;
+    private int unsavedReplayedIdCount;
+
+    /**
+     * Opens the log of the given QDB queue in the given directory or creates it, if it does not exist yet.
+     * The log of a different QDB queue found in the directory is removed.
+     *
+     * @param directory the directory of the log files
+     * @param qdbQueueName the name of the QDB queue the messages are read from
+     * @param segmentSizeInMb the size of a new segment file, a larger message gets a segment of its own size
+     */
+    public MessageSpool(Path directory, String qdbQueueName, int segmentSizeInMb) {
+        this.directory = directory;
+        this.segmentSize = segmentSizeInMb * 1024 * 1024;
+        byte[] queueName = qdbQueueName.getBytes(StandardCharsets.UTF_8);
+        if (queueName.length > MAX_QUEUE_NAME_LENGTH) {
+            throw new IllegalArgumentException("The QDB queue name is too long for the spool: " + qdbQueueName);
+        }
+
+        try {
+            Files.createDirectories(directory);
+            try (FileChannel channel = FileChannel.open(directory.resolve(META_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.meta = channel.map(FileChannel.MapMode.READ_WRITE, 0, META_SIZE);
+            }
+
+            if (meta.getLong(0) == MAGIC && isSpoolOf(queueName)) {
+                openSegments();
+            } else {
+                logger.info("[MessageSpool] Starting a new spool of the {} QDB queue in {}", qdbQueueName, directory);
+                deleteSegments();
+                writeMeta(queueName);
+            }
+        } catch (IOException e) {
+            throw spoolError("opening", e);
+        }
+        replayedId = meta.getLong(REPLAYED_ID_OFFSET);
+
+        logger.info("[MessageSpool] {} holds {} messages, the last delivered message ID is {}",
+                directory, spooledMessageCount, getReplayedId());
+    }
+
+    /**
+     * Appends a message to the end of the log and wakes up the waiting readers.
+     *
+     * @param message the message read from QDB
+     */
+    public synchronized void append(MessageToReplay message) {
+        MessageProperties messageProperties = message.getMessageProperties();
+        long id = messageProperties == null ? 0 : messageProperties.getId();
+        byte[] routingKey = encode(message.getRoutingKey());
+        byte[] timestamp = encode(messageProperties == null ? null : messageProperties.getTimestamp());
+        byte[] body = encode(message.getBody());
+        byte[] contentType = encode(messageProperties == null ? null : messageProperties.getContentType());
+        byte[] contentEncoding = encode(messageProperties == null ? null : messageProperties.getContentEncoding());
+        byte[] messageId = encode(messageProperties == null ? null : messageProperties.getMessageId());
+        byte[] headers = encodeHeaders(messageProperties == null ? null : messageProperties.getHeaders());
+        byte[] payload = message.getPayload();
+        int recordLength = Long.BYTES + Integer.BYTES
+                + fieldLength(routingKey) + fieldLength(timestamp) + fieldLength(body) + fieldLength(contentType)
+                + fieldLength(contentEncoding) + fieldLength(messageId) + fieldLength(headers) + fieldLength(payload);
+
+        MappedByteBuffer segment = segmentFor(Integer.BYTES + recordLength);
+        ByteBuffer record = segment.duplicate();
+        record.position(writePosition + Integer.BYTES);
+        record.putLong(id);
+        record.putInt(messageProperties == null ? 0 : messageProperties.getPayloadSize());
+        putField(record, routingKey);
+        putField(record, timestamp);
+        putField(record, body);
+        putField(record, contentType);
+        putField(record, contentEncoding);
+        putField(record, messageId);
+        putField(record, headers);
+        putField(record, payload);
+        segment.putInt(writePosition, recordLength);
+
+        writePosition += Integer.BYTES + recordLength;
+        lastSpooledId = id;
+        spooledMessageCount++;
+        notifyAll();
+    }
+
+    /**
+     * Marks that all the messages of the QDB queue have been appended and writes the log to the disk.
+     */
+    public synchronized void markReadComplete() {
+        forceSegments();
+        meta.putLong(READ_COMPLETE_OFFSET, 1);
+        meta.putLong(REPLAYED_ID_OFFSET, replayedId);
+        meta.force();
+        notifyAll();
+        logger.info("[MessageSpool] {} messages have been spooled to {}", spooledMessageCount, directory);
+    }
+
+    public synchronized boolean isReadComplete() {
+        return meta.getLong(READ_COMPLETE_OFFSET) != 0;
+    }
+
+    /**
+     * Returns the ID of the QDB message the reading should continue from.
+     *
+     * @return the ID following the last spooled message or null, if no message has been spooled
+     */
+    public synchronized String getResumeFromId() {
+        return spooledMessageCount == 0 ? null : String.valueOf(lastSpooledId + 1);
+    }
+
+    /**
+     * Records the ID of a message delivered to the broker, the next {@link #reader()} starts after it.
+     * The messages are delivered in the order of their IDs.
+     * The ID is written to the disk after every {@value #REPLAYED_ID_SAVE_INTERVAL} delivered messages.
+     *
+     * @param messageId the QDB ID of the delivered message
+     */
+    public synchronized void messageReplayed(long messageId) {
+        if (messageId > replayedId) {
+            replayedId = messageId;
+            if (++unsavedReplayedIdCount >= REPLAYED_ID_SAVE_INTERVAL) {
+                saveReplayedId();
+            }
+        }
+    }
+
+    /**
+     * Writes the ID of the last delivered message to the disk, after the spooled messages,
+     * so a restarted recovery continues the replay from the next message.
+     */
+    public synchronized void saveReplayedId() {
+        forceSegments();
+        meta.putLong(REPLAYED_ID_OFFSET, replayedId);
+        meta.force();
+        unsavedReplayedIdCount = 0;
+    }
+
+    public synchronized long getReplayedId() {
+        return replayedId;
+    }
+
+    /**
+     * Removes all the messages from the log, so the next reading of the same QDB queue starts a new log.
+     */
+    public synchronized void clear() {
+        try {
+            deleteSegments();
+        } catch (IOException e) {
+            throw spoolError("clearing", e);
+        }
+        meta.putLong(READ_COMPLETE_OFFSET, 0);
+        meta.putLong(REPLAYED_ID_OFFSET, 0);
+        meta.force();
+        replayedId = 0;
+        unsavedReplayedIdCount = 0;
+    }
+
+    /**
+     * Returns a reader of the messages following the last delivered one.
+     * The reader waits for the appended messages until the reading is marked complete.
+     *
+     * @return a new {@link Reader}
+     */
+    public synchronized Reader reader() {
+        return new Reader(getReplayedId());
+    }
+
+    /**
+     * Reads the messages of the log in the order they were appended.
+     */
+    public class Reader {
+        private final long replayedId;
+        private int segmentIndex;
+        private int position;
+
+        private Reader(long replayedId) {
+            this.replayedId = replayedId;
+        }
+
+        /**
+         * Returns the next message, waiting for it, if it has not been appended yet.
+         *
+         * @return the next message or null, if all the messages have been read
+         * @throws InterruptedException if the waiting is interrupted
+         */
+        public MessageToReplay next() throws InterruptedException {
+            synchronized (MessageSpool.this) {
+                while (true) {
+                    MessageToReplay message = readRecord();
+                    if (message != null) {
+                        long id = message.getMessageProperties().getId();
+                        if (replayedId == 0 || id > replayedId) {
+                            return message;
+                        }
+                    } else if (!moveToNextSegment()) {
+                        if (isReadComplete()) {
+                            return null;
+                        }
+                        MessageSpool.this.wait();
+                    }
+                }
+            }
+        }
+
+        private MessageToReplay readRecord() {
+            ByteBuffer record = nextRecord();
+
+            return record == null ? null : decode(record);
+        }
+
+        /**
+         * Returns the next record positioned after its length and steps over it or null, if there is no next record.
+         */
+        private ByteBuffer nextRecord() {
+            if (segmentIndex >= segments.size()) {
+                return null;
+            }
+            MappedByteBuffer segment = segments.get(segmentIndex);
+            int recordLength = position + Integer.BYTES <= segment.capacity() ? segment.getInt(position) : 0;
+            if (recordLength <= 0) {
+                return null;
+            }
+
+            ByteBuffer record = segment.duplicate();
+            record.position(position + Integer.BYTES);
+            position += Integer.BYTES + recordLength;
+
+            return record;
+        }
+
+        /**
+         * A segment is continued in the next one, if it is full or it is closed with the end of segment marker.
+         */
+        private boolean moveToNextSegment() {
+            if (segmentIndex + 1 >= segments.size()) {
+                return false;
+            }
+            MappedByteBuffer segment = segments.get(segmentIndex);
+            if (position + Integer.BYTES <= segment.capacity() && segment.getInt(position) != END_OF_SEGMENT) {
+                return false;
+            }
+
+            segmentIndex++;
+            position = 0;
+            return true;
+        }
+    }
+
+    /**
+     * Returns the segment the next record fits into. A new segment is started, if the last one is full.
+     */
+    private MappedByteBuffer segmentFor(int size) {
+        if (!segments.isEmpty()) {
+            MappedByteBuffer lastSegment = segments.get(segments.size() - 1);
+            if (writePosition + size <= lastSegment.capacity()) {
+                return lastSegment;
+            }
+            if (writePosition + Integer.BYTES <= lastSegment.capacity()) {
+                lastSegment.putInt(writePosition, END_OF_SEGMENT);
+            }
+        }
+
+        try {
+            MappedByteBuffer segment = mapSegment(segmentFile(segments.size()), Math.max(segmentSize, size));
+            segments.add(segment);
+            writePosition = 0;
+            return segment;
+        } catch (IOException e) {
+            throw spoolError("extending", e);
+        }
+    }
+
+    /**
+     * Maps the existing segments and finds the end of the last one.
+     */
+    private void openSegments() throws IOException {
+        for (Path segmentFile : listSegmentFiles()) {
+            segments.add(mapSegment(segmentFile, 0));
+        }
+
+        Reader reader = new Reader(0);
+        ByteBuffer record;
+        while ((record = reader.nextRecord()) != null || reader.moveToNextSegment()) {
+            if (record != null) {
+                lastSpooledId = record.getLong();
+                spooledMessageCount++;
+            }
+        }
+        writePosition = reader.position;
+    }
+
+    private MappedByteBuffer mapSegment(Path segmentFile, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(segmentFile,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // mapping extends the new file, its unwritten bytes read as 0
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+        }
+    }
+
+    private void deleteSegments() throws IOException {
+        segments.clear();
+        writePosition = 0;
+        lastSpooledId = 0;
+        spooledMessageCount = 0;
+        for (Path segmentFile : listSegmentFiles()) {
+            Files.delete(segmentFile);
+        }
+    }
+
+    private TreeSet<Path> listSegmentFiles() throws IOException {
+        TreeSet<Path> segmentFiles = new TreeSet<>();
+        try (DirectoryStream<Path> files =
+                     Files.newDirectoryStream(directory, SEGMENT_FILE_PREFIX + "*" + SEGMENT_FILE_SUFFIX)) {
+            files.forEach(segmentFiles::add);
+        }
+
+        return segmentFiles;
+    }
+
+    private Path segmentFile(int index) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_FILE_PREFIX, index, SEGMENT_FILE_SUFFIX));
+    }
+
+    private boolean isSpoolOf(byte[] queueName) {
+        if (meta.getInt(QUEUE_NAME_OFFSET) != queueName.length) {
+            return false;
+        }
+        for (int i = 0; i < queueName.length; i++) {
+            if (meta.get(QUEUE_NAME_OFFSET + Integer.BYTES + i) != queueName[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void writeMeta(byte[] queueName) {
+        meta.putLong(READ_COMPLETE_OFFSET, 0);
+        meta.putLong(REPLAYED_ID_OFFSET, 0);
+        meta.putInt(QUEUE_NAME_OFFSET, queueName.length);
+        ByteBuffer queueNameBuffer = meta.duplicate();
+        queueNameBuffer.position(QUEUE_NAME_OFFSET + Integer.BYTES);
+        queueNameBuffer.put(queueName);
+        meta.putLong(0, MAGIC);
+        meta.force();
+    }
+
+    private void forceSegments() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    private UncheckedIOException spoolError(String action, IOException e) {
+        String errorMessage = String.format("Error happened %s the message spool %s: %s",
+                action, directory, e.getMessage());
+        logger.error(errorMessage);
+        return new UncheckedIOException(errorMessage, e);
+    }
+
+    private static MessageToReplay decode(ByteBuffer record) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setId(record.getLong());
+        messageProperties.setPayloadSize(record.getInt());
+        messageProperties.setRoutingKey(getString(record));
+        messageProperties.setTimestamp(getString(record));
+        String body = getString(record);
+        messageProperties.setContentType(getString(record));
+        messageProperties.setContentEncoding(getString(record));
+        messageProperties.setMessageId(getString(record));
+        messageProperties.setHeaders(decodeHeaders(getField(record)));
+
+        MessageToReplay message = new MessageToReplay(messageProperties, body);
+        message.setPayload(getField(record));
+        return message;
+    }
+
+    private static byte[] encode(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encodeHeaders(Map<String, Object> headers) {
+        if (headers == null) {
+            return null;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            putMap(output, headers);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error happened writing the message headers.", e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static Map<String, Object> decodeHeaders(byte[] headers) {
+        return headers == null ? null : getMap(ByteBuffer.wrap(headers));
+    }
+
+    private static void putMap(DataOutputStream output, Map<?, ?> map) throws IOException {
+        output.writeInt(map.size());
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            putBytes(output, encode(String.valueOf(entry.getKey())));
+            putValue(output, entry.getValue());
+        }
+    }
+
+    private static void putValue(DataOutputStream output, Object value) throws IOException {
+        if (value == null) {
+            output.writeByte(NULL_VALUE);
+        } else if (value instanceof Boolean) {
+            output.writeByte(BOOLEAN_VALUE);
+            output.writeBoolean((Boolean) value);
+        } else if (value instanceof Byte) {
+            output.writeByte(BYTE_VALUE);
+            output.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            output.writeByte(SHORT_VALUE);
+            output.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            output.writeByte(INTEGER_VALUE);
+            output.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            output.writeByte(LONG_VALUE);
+            output.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            output.writeByte(FLOAT_VALUE);
+            output.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            output.writeByte(DOUBLE_VALUE);
+            output.writeDouble((Double) value);
+        } else if (value instanceof BigDecimal) {
+            output.writeByte(DECIMAL_VALUE);
+            putBytes(output, encode(value.toString()));
+        } else if (value instanceof Date) {
+            output.writeByte(TIMESTAMP_VALUE);
+            output.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            output.writeByte(BYTES_VALUE);
+            putBytes(output, (byte[]) value);
+        } else if (value instanceof List) {
+            output.writeByte(LIST_VALUE);
+            List<?> list = (List<?>) value;
+            output.writeInt(list.size());
+            for (Object element : list) {
+                putValue(output, element);
+            }
+        } else if (value instanceof Map) {
+            output.writeByte(MAP_VALUE);
+            putMap(output, (Map<?, ?>) value);
+        } else {
+            // e.g. the LongString of the AMQP client
+            output.writeByte(STRING_VALUE);
+            putBytes(output, encode(value.toString()));
+        }
+    }
+
+    private static void putBytes(DataOutputStream output, byte[] value) throws IOException {
+        output.writeInt(value.length);
+        output.write(value);
+    }
+
+    private static Map<String, Object> getMap(ByteBuffer buffer) {
+        int size = buffer.getInt();
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(getString(buffer), getValue(buffer));
+        }
+
+        return map;
+    }
+
+    private static Object getValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case NULL_VALUE:
+                return null;
+            case STRING_VALUE:
+                return getString(buffer);
+            case BOOLEAN_VALUE:
+                return buffer.get() != 0;
+            case BYTE_VALUE:
+                return buffer.get();
+            case SHORT_VALUE:
+                return buffer.getShort();
+            case INTEGER_VALUE:
+                return buffer.getInt();
+            case LONG_VALUE:
+                return buffer.getLong();
+            case FLOAT_VALUE:
+                return buffer.getFloat();
+            case DOUBLE_VALUE:
+                return buffer.getDouble();
+            case DECIMAL_VALUE:
+                return new BigDecimal(getString(buffer));
+            case TIMESTAMP_VALUE:
+                return new Date(buffer.getLong());
+            case BYTES_VALUE:
+                return getField(buffer);
+            case LIST_VALUE:
+                int size = buffer.getInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(getValue(buffer));
+                }
+                return list;
+            case MAP_VALUE:
+                return getMap(buffer);
+            default:
+                throw new IllegalStateException("Unknown header value type in the message spool: " + (char) type);
+        }
+    }
+
+    private static int fieldLength(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void putField(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(NULL_FIELD);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static byte[] getField(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_FIELD) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+
+        return value;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] value = getField(buffer);
+
+        return value == null ? null : new String(value, StandardCharsets.UTF_8);
+    }
+}
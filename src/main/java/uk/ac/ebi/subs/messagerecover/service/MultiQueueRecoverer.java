@@ -0,0 +1,170 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties.MultiQueueProp.QueueMapping;
+import uk.ac.ebi.subs.messagerecover.fixer.MessageFixerChain;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.QDBManager;
+import uk.ac.ebi.subs.messagerecover.queuemanager.ReactiveQDBManager;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayer;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class is responsible for recovering several RabbitMQ dead letter queues in one run.
+ * Every queue mapping of the multiQueueProp section of the application.yml file is recovered independently:
+ * its messages are transferred to its own QDB queue, then fixed and replayed to its own exchange.
+ * The queue mappings are processed concurrently by a fixed number of workers.
+ * Every queue mapping has its own replayer, which is closed when the recovery of the queue mapping has finished.
+ * The failure of a queue mapping does not stop the recovery of the others.
+ */
+@Component
+public class MultiQueueRecoverer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MultiQueueRecoverer.class);
+
+    private RecoverProperties recoverProperties;
+    private QDBManager qdbManager;
+    private ReactiveQDBManager reactiveQDBManager;
+    private MessageReplayerFactory messageReplayerFactory;
+    private MessageFixerChain messageFixerChain;
+    private DeadLetterQueueDrainMonitor drainMonitor;
+    private RecoveryMetrics recoveryMetrics;
+
+    public MultiQueueRecoverer(RecoverProperties recoverProperties, QDBManager qdbManager,
+                               ReactiveQDBManager reactiveQDBManager, MessageReplayerFactory messageReplayerFactory,
+                               MessageFixerChain messageFixerChain, DeadLetterQueueDrainMonitor drainMonitor,
+                               RecoveryMetrics recoveryMetrics) {
+        this.recoverProperties = recoverProperties;
+        this.qdbManager = qdbManager;
+        this.reactiveQDBManager = reactiveQDBManager;
+        this.messageReplayerFactory = messageReplayerFactory;
+        this.messageFixerChain = messageFixerChain;
+        this.drainMonitor = drainMonitor;
+        this.recoveryMetrics = recoveryMetrics;
+    }
+
+    /**
+     * Returns true, if any queue mapping is configured in the application.yml file.
+     *
+     * @return true, if any queue mapping is configured in the application.yml file
+     */
+    public boolean isEnabled() {
+        return !recoverProperties.getMultiQueueProp().getQueueMappings().isEmpty();
+    }
+
+    /**
+     * Recovers the dead letter queues of all the configured queue mappings.
+     * It returns when all of them have finished.
+     *
+     * @return the number of the replayed messages of all the queue mappings
+     * @throws IllegalStateException if the recovery of any of the queue mappings has failed
+     */
+    public long recoverMessages() {
+        RecoverProperties.MultiQueueProp multiQueueProp = recoverProperties.getMultiQueueProp();
+        List<QueueMapping> queueMappings = multiQueueProp.getQueueMappings();
+        int workerCount = Math.max(1, Math.min(multiQueueProp.getParallelism(), queueMappings.size()));
+        logger.info("[MultiQueueRecoverer] Recovering {} dead letter queues with {} workers",
+                queueMappings.size(), workerCount);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        Map<String, Future<Long>> recoveries = new LinkedHashMap<>();
+        try {
+            queueMappings.forEach(queueMapping -> recoveries.put(queueMapping.getDeadLetterQueueName(),
+                    executor.submit(() -> recoverQueue(queueMapping))));
+
+            return awaitRecoveries(recoveries);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long awaitRecoveries(Map<String, Future<Long>> recoveries) {
+        long replayedMessageCount = 0;
+        List<String> failedQueueNames = new ArrayList<>();
+        for (Map.Entry<String, Future<Long>> recovery : recoveries.entrySet()) {
+            try {
+                replayedMessageCount += recovery.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("The message recovery has been interrupted.", e);
+            } catch (ExecutionException e) {
+                logger.error("[MultiQueueRecoverer] Recovery of the {} queue has failed: {}",
+                        recovery.getKey(), e.getCause().getMessage());
+                failedQueueNames.add(recovery.getKey());
+            }
+        }
+
+        if (!failedQueueNames.isEmpty()) {
+            throw new IllegalStateException(String.format("Recovery of %d of %d queues has failed: %s",
+                    failedQueueNames.size(), recoveries.size(), String.join(", ", failedQueueNames)));
+        }
+        return replayedMessageCount;
+    }
+
+    private long recoverQueue(QueueMapping queueMapping) {
+        QueueMapping resolvedQueueMapping = resolveQueueMapping(queueMapping);
+        RecoverProperties.CheckpointProp checkpointProp = recoverProperties.getCheckpointProp();
+        RecoveryCheckpoint recoveryCheckpoint = new RecoveryCheckpoint(
+                checkpointFile(checkpointProp.getFile(), resolvedQueueMapping), checkpointProp.getSaveInterval());
+        try (MessageReplayer messageReplayer = messageReplayerFactory.create(resolvedQueueMapping.getExchangeName())) {
+            MessageRecoverService recoverService = new MessageRecoverService(resolvedQueueMapping, recoverProperties,
+                    qdbManager, reactiveQDBManager, messageReplayer, messageFixerChain, recoveryCheckpoint,
+                    drainMonitor, recoveryMetrics);
+
+            logger.info("[MultiQueueRecoverer] Recovering the {} queue through the {} QDB queue to the {} exchange",
+                    resolvedQueueMapping.getDeadLetterQueueName(), recoverService.getQdbQueueName(),
+                    resolvedQueueMapping.getExchangeName());
+            recoverService.transferMessagesToQDBDeadLetterQueue();
+            long replayedMessageCount = recoverProperties.getPipelineProp().isReactive()
+                    ? new ReactiveRecoveryPipeline(recoverService, recoverProperties, recoveryMetrics)
+                            .recoverMessages()
+                    : new RecoveryPipeline(recoverService, recoverProperties, recoveryMetrics).recoverMessages();
+            if (!recoverProperties.getDryRunProp().isEnabled()) {
+                recoverService.completeRecovery();
+            }
+            logger.info("[MultiQueueRecoverer] Replayed {} messages from the {} queue",
+                    replayedMessageCount, resolvedQueueMapping.getDeadLetterQueueName());
+
+            return replayedMessageCount;
+        }
+    }
+
+    /**
+     * The QDB queue defaults to the name of the RabbitMQ queue, the exchange to the one of the rabbitMQProp section.
+     */
+    private QueueMapping resolveQueueMapping(QueueMapping queueMapping) {
+        QueueMapping resolvedQueueMapping = new QueueMapping();
+        resolvedQueueMapping.setDeadLetterQueueName(queueMapping.getDeadLetterQueueName());
+        resolvedQueueMapping.setQdbDeadLetterQueueName(isEmpty(queueMapping.getQdbDeadLetterQueueName())
+                ? queueMapping.getDeadLetterQueueName()
+                : queueMapping.getQdbDeadLetterQueueName());
+        resolvedQueueMapping.setExchangeName(isEmpty(queueMapping.getExchangeName())
+                ? recoverProperties.getRabbitMQProp().getExchangeName()
+                : queueMapping.getExchangeName());
+
+        return resolvedQueueMapping;
+    }
+
+    /**
+     * Every queue mapping keeps its progress in its own checkpoint file.
+     */
+    private static String checkpointFile(String file, QueueMapping queueMapping) {
+        return isEmpty(file) ? null : file + "." + queueMapping.getDeadLetterQueueName();
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.equals("");
+    }
+}
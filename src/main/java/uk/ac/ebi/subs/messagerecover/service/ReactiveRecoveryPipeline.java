@@ -0,0 +1,73 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+
+/**
+ * This class is responsible for running the read, fix and replay phases of the recovery as a single reactive stream.
+ * The messages are read from QDB without blocking, fixed on the fix threads and replayed on a single replay thread
+ * in their original order. The number of the messages between the phases is bounded by the buffer size,
+ * the reading of the QDB response follows the pace of the replay.
+ */
+@Component
+public class ReactiveRecoveryPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactiveRecoveryPipeline.class);
+
+    private MessageRecoverService recoverService;
+    private RecoverProperties recoverProperties;
+    private RecoveryMetrics recoveryMetrics;
+
+    public ReactiveRecoveryPipeline(MessageRecoverService recoverService, RecoverProperties recoverProperties,
+                                    RecoveryMetrics recoveryMetrics) {
+        this.recoverService = recoverService;
+        this.recoverProperties = recoverProperties;
+        this.recoveryMetrics = recoveryMetrics;
+    }
+
+    /**
+     * Reads the filtered messages from the QDB queue, fixes them and replays them to the RabbitMQ exchange.
+     * If any of the phases fails, then the stream is cancelled.
+     *
+     * @return the number of the replayed messages
+     */
+    public long recoverMessages() {
+        RecoverProperties.PipelineProp pipelineProp = recoverProperties.getPipelineProp();
+        int bufferSize = pipelineProp.getBufferSize();
+        int fixParallelism = Math.max(1, recoverProperties.fixParallelism());
+
+        Scheduler fixScheduler = Schedulers.newParallel("fix-worker", fixParallelism);
+        Scheduler replayScheduler = Schedulers.newSingle("replay-worker");
+        logger.info("[ReactiveRecoveryPipeline] recovery has started");
+        try {
+            Long replayedMessageCount = recoveryMetrics.recordPhase("reactive", () ->
+                    recoverService.streamFilterMessagesFromQDBDeadLetterQueue()
+                            .flatMapSequential(message -> Mono.fromCallable(() -> {
+                                        recoverService.fixFailedMessage(message);
+                                        return message;
+                                    }).subscribeOn(fixScheduler),
+                                    fixParallelism, bufferSize)
+                            .publishOn(replayScheduler, bufferSize)
+                            .doOnNext(recoverService::replayFailedMessage)
+                            .count()
+                            .doOnSuccess(messageCount -> recoverService.flushReplayedMessages())
+                            .block());
+            logger.info("[ReactiveRecoveryPipeline] recovery has finished after {} messages", replayedMessageCount);
+
+            return replayedMessageCount == null ? 0 : replayedMessageCount;
+        } catch (RuntimeException e) {
+            String errorMessage = String.format("Error happened during the message recovery: %s", e.getMessage());
+            logger.error(errorMessage);
+            throw new IllegalStateException(errorMessage, e);
+        } finally {
+            fixScheduler.dispose();
+            replayScheduler.dispose();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * This class is responsible for persisting the progress of a recovery to a local file.
+ * The file holds the name of the QDB queue used by the recovery and the ID of the last replayed message,
+ * so a crashed or killed recovery can continue from the next message instead of starting from the beginning.
+ * The checkpoint is disabled, if the file is not configured in the application.yml file.
+ */
+@Component
+public class RecoveryCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecoveryCheckpoint.class);
+
+    private static final String QDB_QUEUE_NAME_KEY = "qdbQueueName";
+    private static final String LAST_REPLAYED_ID_KEY = "lastReplayedId";
+
+    private Path checkpointFile;
+    private int saveInterval;
+
+    private String qdbQueueName;
+    private Long lastReplayedId;
+    private boolean resumed;
+    private int unsavedMessageCount;
+
+    @Autowired
+    public RecoveryCheckpoint(RecoverProperties recoverProperties) {
+        this(recoverProperties.getCheckpointProp().getFile(), recoverProperties.getCheckpointProp().getSaveInterval());
+    }
+
+    /**
+     * Creates a checkpoint persisted to the given file.
+     *
+     * @param file the checkpoint file or null to disable the checkpoint
+     * @param saveInterval the number of the replayed messages after which the file is written
+     */
+    public RecoveryCheckpoint(String file, int saveInterval) {
+        this.checkpointFile = file == null || file.isEmpty() ? null : Paths.get(file);
+        this.saveInterval = Math.max(1, saveInterval);
+
+        load();
+    }
+
+    public boolean isEnabled() {
+        return checkpointFile != null;
+    }
+
+    /**
+     * Returns true, if there was an unfinished recovery to continue.
+     *
+     * @return true, if there was an unfinished recovery to continue
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public String getQdbQueueName() {
+        return qdbQueueName;
+    }
+
+    /**
+     * Returns the ID of the message the recovery should continue from.
+     *
+     * @return the ID following the last replayed message or null, if no message has been replayed yet
+     */
+    public synchronized String getResumeFromId() {
+        return lastReplayedId == null ? null : String.valueOf(lastReplayedId + 1);
+    }
+
+    /**
+     * Starts a new recovery using the given QDB queue.
+     *
+     * @param qdbQueueName the name of the QDB queue the messages are transferred to
+     */
+    public synchronized void start(String qdbQueueName) {
+        this.qdbQueueName = qdbQueueName;
+        this.lastReplayedId = null;
+        save();
+    }
+
+    /**
+     * Records that the message with the given ID has been replayed.
+     * The checkpoint file is written after every configured number of replayed messages.
+     *
+     * @param messageId the QDB ID of the replayed message
+     */
+    public synchronized void messageReplayed(long messageId) {
+        lastReplayedId = messageId;
+        if (++unsavedMessageCount >= saveInterval) {
+            save();
+        }
+    }
+
+    /**
+     * Writes the current state of the recovery to the checkpoint file.
+     */
+    public synchronized void save() {
+        if (!isEnabled() || qdbQueueName == null) {
+            return;
+        }
+
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty(QDB_QUEUE_NAME_KEY, qdbQueueName);
+        if (lastReplayedId != null) {
+            checkpoint.setProperty(LAST_REPLAYED_ID_KEY, String.valueOf(lastReplayedId));
+        }
+
+        Path temporaryFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+            checkpoint.store(outputStream, "Failed message recovery checkpoint");
+        } catch (IOException e) {
+            throw checkpointError("writing", e);
+        }
+        try {
+            Files.move(temporaryFile, checkpointFile,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw checkpointError("writing", e);
+        }
+        unsavedMessageCount = 0;
+    }
+
+    /**
+     * Removes the checkpoint file after a successfully finished recovery.
+     */
+    public synchronized void complete() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(checkpointFile);
+        } catch (IOException e) {
+            throw checkpointError("removing", e);
+        }
+        resumed = false;
+    }
+
+    private void load() {
+        if (!isEnabled() || !Files.exists(checkpointFile)) {
+            return;
+        }
+
+        Properties checkpoint = new Properties();
+        try (InputStream inputStream = Files.newInputStream(checkpointFile)) {
+            checkpoint.load(inputStream);
+        } catch (IOException e) {
+            throw checkpointError("reading", e);
+        }
+
+        qdbQueueName = checkpoint.getProperty(QDB_QUEUE_NAME_KEY);
+        String lastReplayedIdValue = checkpoint.getProperty(LAST_REPLAYED_ID_KEY);
+        lastReplayedId = lastReplayedIdValue == null ? null : Long.valueOf(lastReplayedIdValue);
+        resumed = qdbQueueName != null;
+
+        logger.info("[RecoveryCheckpoint] Resuming the recovery of QDB queue {} after message ID {}",
+                qdbQueueName, lastReplayedId);
+    }
+
+    private UncheckedIOException checkpointError(String operation, IOException e) {
+        String errorMessage = String.format("Error happened %s the checkpoint file %s: %s",
+                operation, checkpointFile, e.getMessage());
+        logger.error(errorMessage);
+        return new UncheckedIOException(errorMessage, e);
+    }
+}
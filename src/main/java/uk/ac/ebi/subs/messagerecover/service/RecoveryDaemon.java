@@ -0,0 +1,230 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.MessageListener;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.MetricsReporter;
+import uk.ac.ebi.subs.messagerecover.replay.RenewableMessageReplayer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This class is responsible for running the recovery repeatedly in a long-running application.
+ * A recovery cycle transfers the messages arrived since the previous cycle to the same QDB queue,
+ * then fixes and replays the ones following the last replayed message.
+ * The cycles run one after the other on a single thread, periodically and whenever they are triggered
+ * by a message on the control queue or by a POST request to the /recover HTTP endpoint.
+ * A trigger arriving while a cycle is already waiting to run is merged into it.
+ * Every cycle replays the messages with a new replayer, so a failed cycle does not affect the next one.
+ */
+@Component
+public class RecoveryDaemon implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecoveryDaemon.class);
+
+    private static final int SHUTDOWN_TIMEOUT_IN_SEC = 60;
+
+    private RecoverProperties recoverProperties;
+    private MessageRecoverService recoverService;
+    private RecoveryPipeline recoveryPipeline;
+    private ReactiveRecoveryPipeline reactiveRecoveryPipeline;
+    private DirectDeadLetterQueueRecoverer directRecoverer;
+    private RenewableMessageReplayer messageReplayer;
+    private RabbitMessagingTemplate rabbitMessagingTemplate;
+    private MetricsReporter metricsReporter;
+
+    private ScheduledExecutorService executor;
+    private SimpleMessageListenerContainer controlQueueListener;
+    private HttpServer triggerServer;
+    private final AtomicBoolean cycleRequested = new AtomicBoolean();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    public RecoveryDaemon(RecoverProperties recoverProperties, MessageRecoverService recoverService,
+                          RecoveryPipeline recoveryPipeline, ReactiveRecoveryPipeline reactiveRecoveryPipeline,
+                          DirectDeadLetterQueueRecoverer directRecoverer, RenewableMessageReplayer messageReplayer,
+                          RabbitMessagingTemplate rabbitMessagingTemplate, MetricsReporter metricsReporter) {
+        this.recoverProperties = recoverProperties;
+        this.recoverService = recoverService;
+        this.recoveryPipeline = recoveryPipeline;
+        this.reactiveRecoveryPipeline = reactiveRecoveryPipeline;
+        this.directRecoverer = directRecoverer;
+        this.messageReplayer = messageReplayer;
+        this.rabbitMessagingTemplate = rabbitMessagingTemplate;
+        this.metricsReporter = metricsReporter;
+    }
+
+    /**
+     * Runs the first recovery cycle and starts the schedule and the triggers configured in the application.yml file.
+     */
+    public synchronized void start() {
+        RecoverProperties.DaemonProp daemonProp = recoverProperties.getDaemonProp();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "recovery-daemon"));
+        logger.info("[RecoveryDaemon] Recovery daemon has started");
+
+        trigger("startup");
+        if (daemonProp.getIntervalInSec() > 0) {
+            executor.scheduleWithFixedDelay(() -> trigger("schedule"),
+                    daemonProp.getIntervalInSec(), daemonProp.getIntervalInSec(), TimeUnit.SECONDS);
+        }
+        if (daemonProp.getControlQueueName() != null && !daemonProp.getControlQueueName().isEmpty()) {
+            startControlQueueListener(daemonProp.getControlQueueName());
+        }
+        if (daemonProp.getHttpPort() > 0) {
+            startTriggerServer(daemonProp.getHttpPort());
+        }
+    }
+
+    /**
+     * Requests a recovery cycle. If a cycle is already waiting to run, then no new one is requested.
+     *
+     * @param source the name of the trigger for logging
+     * @return true, if a new cycle has been requested
+     */
+    public boolean trigger(String source) {
+        if (!cycleRequested.compareAndSet(false, true)) {
+            logger.debug("[RecoveryDaemon] A recovery cycle is already requested, {} trigger is merged", source);
+            return false;
+        }
+
+        logger.info("[RecoveryDaemon] Recovery cycle is requested by {}", source);
+        try {
+            executor.execute(() -> {
+                cycleRequested.set(false);
+                runCycle();
+            });
+        } catch (RejectedExecutionException e) {
+            logger.info("[RecoveryDaemon] Recovery daemon is stopping, {} trigger is ignored", source);
+            cycleRequested.set(false);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the daemon is stopped by the shutdown of the application.
+     *
+     * @throws InterruptedException if the waiting is interrupted
+     */
+    public void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    /**
+     * Stops the triggers and waits for the running recovery cycle to finish.
+     */
+    @Override
+    public synchronized void destroy() throws InterruptedException {
+        if (controlQueueListener != null) {
+            controlQueueListener.stop();
+        }
+        if (triggerServer != null) {
+            triggerServer.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdown();
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_IN_SEC, TimeUnit.SECONDS)) {
+                logger.warn("[RecoveryDaemon] The running recovery cycle has not finished in {} seconds",
+                        SHUTDOWN_TIMEOUT_IN_SEC);
+                executor.shutdownNow();
+            }
+        }
+
+        logger.info("[RecoveryDaemon] Recovery daemon has stopped");
+        stopped.countDown();
+    }
+
+    /**
+     * A failed cycle is only logged, the next cycle continues from the last replayed message.
+     * The replayer of the cycle is closed, the next cycle creates a new one.
+     */
+    private void runCycle() {
+        try {
+            long replayedMessageCount = recoverNewMessages();
+            logger.info("[RecoveryDaemon] Recovery cycle has finished, replayed {} messages", replayedMessageCount);
+        } catch (RuntimeException e) {
+            logger.error("[RecoveryDaemon] Recovery cycle has failed: {}", e.getMessage());
+        } finally {
+            messageReplayer.renew();
+            metricsReporter.report();
+        }
+    }
+
+    private long recoverNewMessages() {
+        if (recoverProperties.getTransferMode() == RecoverProperties.TransferMode.DIRECT) {
+            return directRecoverer.recoverMessages();
+        }
+
+        recoverService.transferNewMessagesToQDBDeadLetterQueue();
+        long replayedMessageCount = recoverProperties.getPipelineProp().isReactive()
+                ? reactiveRecoveryPipeline.recoverMessages()
+                : recoveryPipeline.recoverMessages();
+        recoverService.saveRecoveryProgress();
+
+        return replayedMessageCount;
+    }
+
+    private void startControlQueueListener(String controlQueueName) {
+        ConnectionFactory connectionFactory = rabbitMessagingTemplate.getRabbitTemplate().getConnectionFactory();
+        new RabbitAdmin(connectionFactory).declareQueue(new Queue(controlQueueName));
+
+        controlQueueListener = new SimpleMessageListenerContainer(connectionFactory);
+        controlQueueListener.setQueueNames(controlQueueName);
+        MessageListener triggerListener = message -> trigger("the control queue");
+        controlQueueListener.setMessageListener(triggerListener);
+        controlQueueListener.start();
+        logger.info("[RecoveryDaemon] Listening to triggers on the {} queue", controlQueueName);
+    }
+
+    private void startTriggerServer(int httpPort) {
+        try {
+            triggerServer = HttpServer.create(new InetSocketAddress(httpPort), 0);
+        } catch (IOException e) {
+            String errorMessage = String.format("Error happened starting the trigger endpoint on port %d: %s",
+                    httpPort, e.getMessage());
+            logger.error(errorMessage);
+            throw new UncheckedIOException(errorMessage, e);
+        }
+        triggerServer.createContext("/recover", this::handleTriggerRequest);
+        triggerServer.start();
+        logger.info("[RecoveryDaemon] Listening to triggers on http://localhost:{}/recover", httpPort);
+    }
+
+    private void handleTriggerRequest(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().add("Allow", "POST");
+            sendResponse(exchange, 405, "Use POST to trigger a recovery");
+            return;
+        }
+
+        boolean requested = trigger("an HTTP request");
+        sendResponse(exchange, 202, requested ? "Recovery is requested" : "Recovery is already requested");
+    }
+
+    private static void sendResponse(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] response = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(response);
+        }
+    }
+}
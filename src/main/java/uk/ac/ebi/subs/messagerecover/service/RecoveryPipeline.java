@@ -0,0 +1,223 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class is responsible for running the read, fix and replay phases of the recovery concurrently.
+ * The phases are connected with bounded buffers, so a faster phase waits for the slower one
+ * and the replay of the first messages starts while the later ones are still being read from QDB.
+ * The messages can be fixed on several threads, they are still replayed in their original order.
+ * If a spool directory is configured, then the read messages are appended to a {@link MessageSpool}
+ * without waiting for the other phases and the fix phase takes them from the spool.
+ */
+@Component
+public class RecoveryPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(RecoveryPipeline.class);
+
+    private static final MessageToReplay END_OF_STREAM = new MessageToReplay("", "");
+    private static final Future<MessageToReplay> FIXED_END_OF_STREAM = CompletableFuture.completedFuture(END_OF_STREAM);
+    private static final int STAGE_COUNT = 3;
+
+    private MessageRecoverService recoverService;
+    private RecoverProperties recoverProperties;
+    private RecoveryMetrics recoveryMetrics;
+
+    public RecoveryPipeline(MessageRecoverService recoverService, RecoverProperties recoverProperties,
+                            RecoveryMetrics recoveryMetrics) {
+        this.recoverService = recoverService;
+        this.recoverProperties = recoverProperties;
+        this.recoveryMetrics = recoveryMetrics;
+    }
+
+    /**
+     * Reads the filtered messages from the QDB queue, fixes them and replays them to the RabbitMQ exchange.
+     * If any of the phases fails, then the other phases are stopped, too.
+     *
+     * @return the number of the replayed messages
+     */
+    public long recoverMessages() {
+        RecoverProperties.PipelineProp pipelineProp = recoverProperties.getPipelineProp();
+        int bufferSize = pipelineProp.getBufferSize();
+        BlockingQueue<MessageToReplay> messagesToFix = new ArrayBlockingQueue<>(bufferSize);
+        BlockingQueue<Future<MessageToReplay>> messagesToReplay = new ArrayBlockingQueue<>(bufferSize);
+        MessageSpool messageSpool = recoverService.getMessageSpool();
+        int stageCount = messageSpool == null ? STAGE_COUNT : STAGE_COUNT + 1;
+
+        ExecutorService executor = Executors.newFixedThreadPool(stageCount);
+        int fixParallelism = recoverProperties.fixParallelism();
+        ExecutorService fixExecutor = fixParallelism > 1
+                ? Executors.newFixedThreadPool(fixParallelism)
+                : null;
+        CompletionService<Long> stages = new ExecutorCompletionService<>(executor);
+
+        if (messageSpool == null) {
+            stages.submit(() -> readMessages(messagesToFix));
+        } else {
+            stages.submit(() -> spoolMessages(messageSpool));
+            stages.submit(() -> unspoolMessages(messageSpool, messagesToFix));
+        }
+        stages.submit(() -> fixMessages(messagesToFix, messagesToReplay, fixExecutor));
+        Future<Long> replayStage = stages.submit(() -> replayMessages(messagesToReplay));
+
+        try {
+            for (int i = 0; i < stageCount; i++) {
+                stages.take().get();
+            }
+
+            if (messageSpool != null) {
+                messageSpool.clear();
+            }
+            return replayStage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The message recovery has been interrupted.", e);
+        } catch (ExecutionException e) {
+            String errorMessage =
+                    String.format("Error happened during the message recovery: %s", e.getCause().getMessage());
+            logger.error(errorMessage);
+            throw new IllegalStateException(errorMessage, e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (fixExecutor != null) {
+                fixExecutor.shutdownNow();
+            }
+        }
+    }
+
+    private long readMessages(BlockingQueue<MessageToReplay> output) throws InterruptedException {
+        long messageCount = runStage("read", () -> {
+            long[] readMessageCount = {0};
+            recoverService.readFilterMessagesFromQDBDaedLetterQueue(message -> {
+                put(output, message);
+                readMessageCount[0]++;
+            });
+            return readMessageCount[0];
+        });
+        output.put(END_OF_STREAM);
+
+        return messageCount;
+    }
+
+    private long spoolMessages(MessageSpool messageSpool) throws InterruptedException {
+        return runStage("read", () -> recoverService.readFilterMessagesFromQDBDaedLetterQueue(messageSpool));
+    }
+
+    /**
+     * Hands over the spooled messages to the fix phase, starting after the last delivered one.
+     */
+    private long unspoolMessages(MessageSpool messageSpool, BlockingQueue<MessageToReplay> output)
+            throws InterruptedException {
+        long messageCount = runStage("unspool", () -> {
+            long unspooledMessageCount = 0;
+            MessageSpool.Reader reader = messageSpool.reader();
+            MessageToReplay message;
+            while ((message = reader.next()) != null) {
+                output.put(message);
+                unspooledMessageCount++;
+            }
+            return unspooledMessageCount;
+        });
+        output.put(END_OF_STREAM);
+
+        return messageCount;
+    }
+
+    /**
+     * Without an executor the messages are fixed on the thread of the stage, otherwise they are handed over
+     * to the executor and the next stage waits for them in the original order.
+     */
+    private long fixMessages(BlockingQueue<MessageToReplay> input, BlockingQueue<Future<MessageToReplay>> output,
+                             ExecutorService fixExecutor) throws InterruptedException {
+        long messageCount = runStage("fix", () -> {
+            long fixedMessageCount = 0;
+            MessageToReplay message;
+            while ((message = input.take()) != END_OF_STREAM) {
+                if (fixExecutor == null) {
+                    recoverService.fixFailedMessage(message);
+                    output.put(CompletableFuture.completedFuture(message));
+                } else {
+                    MessageToReplay messageToFix = message;
+                    output.put(fixExecutor.submit(() -> {
+                        recoverService.fixFailedMessage(messageToFix);
+                        return messageToFix;
+                    }));
+                }
+                fixedMessageCount++;
+            }
+            return fixedMessageCount;
+        });
+        output.put(FIXED_END_OF_STREAM);
+
+        return messageCount;
+    }
+
+    private long replayMessages(BlockingQueue<Future<MessageToReplay>> input) throws InterruptedException {
+        return runStage("replay", () -> {
+            long replayedMessageCount = 0;
+            MessageToReplay message;
+            while ((message = awaitFixed(input.take())) != END_OF_STREAM) {
+                recoverService.replayFailedMessage(message);
+                replayedMessageCount++;
+            }
+            recoverService.flushReplayedMessages();
+            return replayedMessageCount;
+        });
+    }
+
+    private long runStage(String stageName, Callable<Long> stage) throws InterruptedException {
+        logger.info("[RecoveryPipeline] {} stage has started", stageName);
+        long start = System.nanoTime();
+        try {
+            long messageCount = stage.call();
+            logger.info("[RecoveryPipeline] {} stage has finished after {} messages", stageName, messageCount);
+
+            return messageCount;
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            logger.error("[RecoveryPipeline] {} stage has failed: {}", stageName, e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            recoveryMetrics.recordPhase(stageName, System.nanoTime() - start);
+        }
+    }
+
+    private static MessageToReplay awaitFixed(Future<MessageToReplay> fixedMessage) throws InterruptedException {
+        try {
+            return fixedMessage.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static void put(BlockingQueue<MessageToReplay> queue, MessageToReplay message) {
+        try {
+            queue.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Handing over the message to the next stage is interrupted.", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package uk.ac.ebi.subs.messagerecover;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.TopicExchange;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.service.MessageRecoverService;
+import uk.ac.ebi.subs.messagerecover.service.RecoveryPipeline;
+import uk.ac.ebi.subs.messagerecover.util.EmbeddedAmqpBroker;
+import uk.ac.ebi.subs.messagerecover.util.QDBStandIn;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Runs the whole recovery (transfer to QDB, read, fix and replay) against an {@link EmbeddedAmqpBroker}
+ * and a {@link QDBStandIn}, so it does not need any external service.
+ * The number of the recovered messages can be set with the `offlineRecovery.messageCount` system property
+ * (e.g. `./gradlew test --tests '*OfflineRecoveryIntegrationTest' -DofflineRecovery.messageCount=1000000`),
+ * the throughput of the recovery is logged.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = FailedMessageRecoverTestApplication.class)
+@DirtiesContext
+public class OfflineRecoveryIntegrationTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineRecoveryIntegrationTest.class);
+
+    private static final String MESSAGE_COUNT_PROPERTY = "offlineRecovery.messageCount";
+    private static final int DEFAULT_MESSAGE_COUNT = 1000;
+    private static final String REPLAY_QUEUE_NAME = "offline-recovery-replay-queue";
+    private static final List<String> TEST_ROUTING_KEYS =
+            Arrays.asList("test.sample.routingKey", "test.study.routingKey", "another.sample.routingKey");
+    private static final List<String> SYSTEM_PROPERTIES = Arrays.asList("spring.rabbitmq.host",
+            "spring.rabbitmq.port", "spring.rabbitmq.username", "spring.rabbitmq.password",
+            "spring.rabbitmq.virtual-host", "messageRecover.qdbProp.baseURL", "messageRecover.qdbProp.pageSize",
+            "messageRecover.qdbProp.messageFilter.routingKey");
+
+    private static EmbeddedAmqpBroker embeddedAmqpBroker;
+    private static QDBStandIn qdbStandIn;
+
+    @Autowired
+    private RabbitTemplate rabbitTemplate;
+
+    @Autowired
+    private AmqpAdmin amqpAdmin;
+
+    @Autowired
+    private RecoverProperties recoverProperties;
+
+    @Autowired
+    private MessageRecoverService recoverService;
+
+    @Autowired
+    private RecoveryPipeline recoveryPipeline;
+
+    /**
+     * The application context is created after the broker and QDB have been started,
+     * so the system properties pointing to them override the settings of the application.yml file.
+     */
+    @BeforeClass
+    public static void startBrokerAndQDB() throws Exception {
+        embeddedAmqpBroker = new EmbeddedAmqpBroker();
+        qdbStandIn = new QDBStandIn();
+
+        System.setProperty("spring.rabbitmq.host", "localhost");
+        System.setProperty("spring.rabbitmq.port", String.valueOf(embeddedAmqpBroker.getPort()));
+        System.setProperty("spring.rabbitmq.username", EmbeddedAmqpBroker.USERNAME);
+        System.setProperty("spring.rabbitmq.password", EmbeddedAmqpBroker.PASSWORD);
+        System.setProperty("spring.rabbitmq.virtual-host", EmbeddedAmqpBroker.VIRTUAL_HOST);
+        System.setProperty("messageRecover.qdbProp.baseURL", qdbStandIn.getBaseURL());
+        System.setProperty("messageRecover.qdbProp.pageSize", "10000");
+        System.setProperty("messageRecover.qdbProp.messageFilter.routingKey", "");
+    }
+
+    @AfterClass
+    public static void stopBrokerAndQDB() {
+        SYSTEM_PROPERTIES.forEach(System::clearProperty);
+        qdbStandIn.close();
+        embeddedAmqpBroker.close();
+    }
+
+    @Before
+    public void declareQueues() {
+        RecoverProperties.RabbitMQProp rabbitMQProp = recoverProperties.getRabbitMQProp();
+
+        TopicExchange deadLetterExchange = new TopicExchange(rabbitMQProp.getDeadLetterExchangeName());
+        Queue deadLetterQueue = new Queue(rabbitMQProp.getDeadLetterQueueName());
+        amqpAdmin.declareExchange(deadLetterExchange);
+        amqpAdmin.declareQueue(deadLetterQueue);
+        amqpAdmin.declareBinding(BindingBuilder.bind(deadLetterQueue).to(deadLetterExchange).with("#"));
+
+        TopicExchange exchange = new TopicExchange(rabbitMQProp.getExchangeName());
+        Queue replayQueue = new Queue(REPLAY_QUEUE_NAME);
+        amqpAdmin.declareExchange(exchange);
+        amqpAdmin.declareQueue(replayQueue);
+        amqpAdmin.declareBinding(BindingBuilder.bind(replayQueue).to(exchange).with("#"));
+    }
+
+    @Test
+    public void whenTheFailedMessagesAreRecovered_ThenAllOfThemAreReplayedToTheExchange() throws Exception {
+        int messageCount = Integer.getInteger(MESSAGE_COUNT_PROPERTY, DEFAULT_MESSAGE_COUNT);
+        publishFailedMessages(messageCount);
+
+        long startTime = System.nanoTime();
+        recoverService.transferMessagesToQDBDeadLetterQueue();
+        long replayedMessageCount = recoveryPipeline.recoverMessages();
+        recoverService.completeRecovery();
+        long replayQueueMessageCount = awaitReplayedMessages(messageCount);
+        long elapsedTimeInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+
+        logger.info("[OfflineRecoveryIntegrationTest] Recovered {} messages in {} ms ({} messages/s)",
+                replayedMessageCount, elapsedTimeInMs, replayedMessageCount * 1000 / Math.max(elapsedTimeInMs, 1));
+
+        assertThat(qdbStandIn.getMessageCount(recoverService.getQdbQueueName()), is(equalTo((long) messageCount)));
+        assertThat(replayedMessageCount, is(equalTo((long) messageCount)));
+        assertThat(replayQueueMessageCount, is(equalTo((long) messageCount)));
+    }
+
+    private void publishFailedMessages(int messageCount) {
+        String deadLetterExchangeName = recoverProperties.getRabbitMQProp().getDeadLetterExchangeName();
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+
+        for (int i = 0; i < messageCount; i++) {
+            byte[] body = ("{\"testId\":" + i + ",\"message\":\"This is a test message " + i + "\"}")
+                    .getBytes(StandardCharsets.UTF_8);
+            rabbitTemplate.send(deadLetterExchangeName, TEST_ROUTING_KEYS.get(i % TEST_ROUTING_KEYS.size()),
+                    new Message(body, messageProperties));
+        }
+    }
+
+    /**
+     * Waits until the replayed messages are routed to the replay queue, they are sent without confirms.
+     */
+    private long awaitReplayedMessages(int messageCount) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(60);
+        long replayQueueMessageCount;
+        do {
+            replayQueueMessageCount = rabbitTemplate.execute(
+                    channel -> (long) channel.queueDeclarePassive(REPLAY_QUEUE_NAME).getMessageCount());
+            if (replayQueueMessageCount < messageCount) {
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        } while (replayQueueMessageCount < messageCount && System.currentTimeMillis() < deadline);
+
+        return replayQueueMessageCount;
+    }
+}
@@ -0,0 +1,47 @@
+package uk.ac.ebi.subs.messagerecover.config;
+
+import org.junit.Test;
+import org.springframework.boot.bind.PropertiesConfigurationFactory;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.core.env.MutablePropertySources;
+import org.springframework.core.io.FileSystemResource;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RecoverPropertiesTest {
+
+    /**
+     * The application.yml file of the tests shadows the main one on the classpath, so it is read from the sources.
+     */
+    private static final String MAIN_APPLICATION_YML = "src/main/resources/application.yml";
+
+    @Test
+    public void whenTheMainApplicationYmlIsBound_ThenTheDefaultsAreKept() throws Exception {
+        RecoverProperties recoverProperties = bind(MAIN_APPLICATION_YML);
+
+        assertThat(recoverProperties.getRabbitMQProp().getExchangeName(), is(equalTo("usi-1:submission-exchange")));
+        assertThat(recoverProperties.getDaemonProp().getHttpPort(), is(equalTo(0)));
+        assertThat(recoverProperties.getDaemonProp().getIntervalInSec(), is(equalTo(300)));
+        assertThat(recoverProperties.getDryRunProp().getFixParallelism(), is(equalTo(0)));
+        assertThat(recoverProperties.getPipelineProp().getFixParallelism(), is(equalTo(1)));
+    }
+
+    private static RecoverProperties bind(String applicationYml) throws Exception {
+        MutablePropertySources propertySources = new MutablePropertySources();
+        propertySources.addFirst(new YamlPropertySourceLoader()
+                .load("applicationConfig", new FileSystemResource(applicationYml), null));
+
+        RecoverProperties recoverProperties = new RecoverProperties();
+        PropertiesConfigurationFactory<RecoverProperties> binder =
+                new PropertiesConfigurationFactory<>(recoverProperties);
+        binder.setTargetName("messageRecover");
+        binder.setPropertySources(propertySources);
+        binder.setConversionService(new DefaultConversionService());
+        binder.bindPropertiesToTarget();
+
+        return recoverProperties;
+    }
+}
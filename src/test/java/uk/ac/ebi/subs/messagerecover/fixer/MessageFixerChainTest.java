@@ -0,0 +1,68 @@
+package uk.ac.ebi.subs.messagerecover.fixer;
+
+import org.junit.Test;
+import org.springframework.core.Ordered;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MessageFixerChainTest {
+
+    @Test
+    public void whenThereIsNoFixer_ThenTheMessageIsReplayedUnchanged() {
+        MessageFixerChain fixerChain = new MessageFixerChain(Collections.emptyList());
+        MessageToReplay message = new MessageToReplay("usi.sample.submitted", "{}");
+
+        fixerChain.fix(message);
+
+        assertThat(message.getBodyToReplay(), is(equalTo("{}")));
+    }
+
+    @Test
+    public void whenSeveralFixersMatchTheRoutingKey_ThenTheyAreAppliedInTheirOrder() {
+        MessageFixerChain fixerChain = new MessageFixerChain(Arrays.asList(
+                new AppendingFixer("usi.sample.#", " second", 2),
+                new AppendingFixer("usi.study.#", " study", 0),
+                new AppendingFixer("#", " first", 1)));
+
+        MessageToReplay sampleMessage = new MessageToReplay("usi.sample.submitted", "body");
+        fixerChain.fix(sampleMessage);
+        MessageToReplay otherMessage = new MessageToReplay("usi.submission.submitted", "body");
+        fixerChain.fix(otherMessage);
+
+        assertThat(sampleMessage.getBodyToReplay(), is(equalTo("body first second")));
+        assertThat(otherMessage.getBodyToReplay(), is(equalTo("body first")));
+    }
+
+    private static class AppendingFixer implements MessageFixer, Ordered {
+        private final String routingKeyPattern;
+        private final String suffix;
+        private final int order;
+
+        private AppendingFixer(String routingKeyPattern, String suffix, int order) {
+            this.routingKeyPattern = routingKeyPattern;
+            this.suffix = suffix;
+            this.order = order;
+        }
+
+        @Override
+        public String getRoutingKeyPattern() {
+            return routingKeyPattern;
+        }
+
+        @Override
+        public void fix(MessageToReplay message) {
+            message.setBodyToReplay(message.getBodyToReplay() + suffix);
+        }
+
+        @Override
+        public int getOrder() {
+            return order;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package uk.ac.ebi.subs.messagerecover.metrics;
+
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertThat;
+
+public class MetricsReporterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private RecoverProperties recoverProperties;
+    private RecoveryMetrics recoveryMetrics;
+
+    @Before
+    public void setup() {
+        recoverProperties = new RecoverProperties();
+        recoveryMetrics = new RecoveryMetrics(new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+    }
+
+    @Test
+    public void whenMessagesHaveBeenRecovered_ThenTheSummaryContainsThePhasesAndTheFailures() {
+        recoveryMetrics.recordPhase("read", () -> recoveryMetrics.messageRead());
+        recoveryMetrics.recordFix(new MessageToReplay("usi.sample.submitted", "{}"), () -> { });
+        try {
+            recoveryMetrics.recordReplay(new MessageToReplay("usi.sample.submitted", "{}"),
+                    (message, callback) -> {
+                        throw new IllegalStateException("Broker is not available");
+                    }, deliveredMessage -> { });
+        } catch (IllegalStateException e) {
+            // the failure is counted
+        }
+
+        String summary = new MetricsReporter(recoveryMetrics, recoverProperties).buildSummary();
+
+        assertThat(summary, containsString("phase read"));
+        assertThat(summary, containsString("messages fixed"));
+        assertThat(summary, containsString("usi.sample.submitted"));
+    }
+
+    @Test
+    public void whenAMetricsFileIsConfigured_ThenTheMetricsAreWrittenInThePrometheusFormat() throws IOException {
+        File metricsFile = new File(temporaryFolder.getRoot(), "recovery.prom");
+        recoverProperties.getMetricsProp().setFile(metricsFile.getPath());
+        recoveryMetrics.messageRead();
+
+        new MetricsReporter(recoveryMetrics, recoverProperties).report();
+
+        String metrics = new String(Files.readAllBytes(metricsFile.toPath()), StandardCharsets.UTF_8);
+        assertThat(metrics, containsString("qdb_messages_read_total 1.0"));
+        assertThat(metrics, containsString("recovery_message_fix_seconds_bucket"));
+    }
+}
@@ -0,0 +1,96 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LocalMessageFilterTest {
+
+    private static final String TEST_ROUTING_KEY = "this.is.a.test.routingKey";
+
+    private RecoverProperties.QdbProp.MessageFilter messageFilterProperties;
+
+    @Before
+    public void setup() {
+        messageFilterProperties = new RecoverProperties.QdbProp.MessageFilter();
+    }
+
+    @Test
+    public void whenNoCriteriaIsDefined_ThenEveryMessageMatches() {
+        LocalMessageFilter messageFilter = new LocalMessageFilter(messageFilterProperties);
+
+        assertTrue(messageFilter.test(buildMessage("another.routingKey", "{}", "1506675200000")));
+    }
+
+    @Test
+    public void whenRoutingKeyAndGrepAreDefined_ThenBothOfThemHaveToMatch() {
+        messageFilterProperties.setRoutingKey(TEST_ROUTING_KEY);
+        messageFilterProperties.setGrep("sampleid_1\\d\\d");
+        LocalMessageFilter messageFilter = new LocalMessageFilter(messageFilterProperties);
+
+        assertTrue(messageFilter.test(buildMessage(TEST_ROUTING_KEY, "{\"id\":\"sampleid_123\"}", null)));
+        assertFalse(messageFilter.test(buildMessage(TEST_ROUTING_KEY, "{\"id\":\"sampleid_223\"}", null)));
+        assertFalse(messageFilter.test(buildMessage("another.routingKey", "{\"id\":\"sampleid_123\"}", null)));
+    }
+
+    @Test
+    public void whenATimeRangeIsDefined_ThenOnlyTheMessagesPublishedInTheRangeMatch() {
+        messageFilterProperties.setFrom("2017-09-29T08:00:00Z");
+        messageFilterProperties.setTo("2017-09-29T10:00:00Z");
+        LocalMessageFilter messageFilter = new LocalMessageFilter(messageFilterProperties);
+
+        assertTrue(messageFilter.test(buildMessage(TEST_ROUTING_KEY, "{}", "1506675600000")));
+        assertFalse(messageFilter.test(buildMessage(TEST_ROUTING_KEY, "{}", "1506700000000")));
+        assertFalse(messageFilter.test(buildMessage(TEST_ROUTING_KEY, "{}", null)));
+    }
+
+    @Test
+    public void whenARoutingKeyPatternIsDefined_ThenTheRoutingKeyHasToMatchItLikeATopicBinding() {
+        messageFilterProperties.setRoutingKeyPattern("this.*.a.#");
+        LocalMessageFilter messageFilter = new LocalMessageFilter(messageFilterProperties);
+
+        assertTrue(messageFilter.test(buildMessage(TEST_ROUTING_KEY, "{}", null)));
+        assertTrue(messageFilter.test(buildMessage("this.is.a", "{}", null)));
+        assertFalse(messageFilter.test(buildMessage("this.a.test", "{}", null)));
+        assertFalse(messageFilter.test(buildMessage("that.is.a.test", "{}", null)));
+    }
+
+    @Test
+    public void whenBodyConditionsAreDefined_ThenTheFieldsOfTheBodyHaveToMatchThem() {
+        messageFilterProperties.getBodyConditions().put("$.submission.id", "sub_\\d+");
+        messageFilterProperties.getBodyConditions().put("/samples/0/alias", "sample1");
+        LocalMessageFilter messageFilter = new LocalMessageFilter(messageFilterProperties);
+
+        assertTrue(messageFilter.test(buildMessage(TEST_ROUTING_KEY,
+                "{\"submission\":{\"id\":\"sub_12\"},\"samples\":[{\"alias\":\"sample1\"}]}", null)));
+        assertFalse(messageFilter.test(buildMessage(TEST_ROUTING_KEY,
+                "{\"submission\":{\"id\":\"sub_12\"},\"samples\":[{\"alias\":\"sample2\"}]}", null)));
+        assertFalse(messageFilter.test(buildMessage(TEST_ROUTING_KEY, "{\"submission\":{}}", null)));
+        assertFalse(messageFilter.test(buildMessage(TEST_ROUTING_KEY, "not a json", null)));
+    }
+
+    @Test
+    public void whenTheQDBCriteriaAreLeftOut_ThenOnlyTheLocalCriteriaAreEvaluated() {
+        messageFilterProperties.setRoutingKey(TEST_ROUTING_KEY);
+        messageFilterProperties.setGrep("sampleid");
+
+        assertFalse(new LocalMessageFilter(messageFilterProperties, false).hasCriteria());
+
+        messageFilterProperties.setRoutingKeyPattern("#.routingKey");
+        LocalMessageFilter messageFilter = new LocalMessageFilter(messageFilterProperties, false);
+
+        assertTrue(messageFilter.hasCriteria());
+        assertTrue(messageFilter.test(buildMessage("another.routingKey", "{}", null)));
+    }
+
+    private MessageToReplay buildMessage(String routingKey, String body, String timestamp) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setRoutingKey(routingKey);
+        messageProperties.setTimestamp(timestamp);
+
+        return new MessageToReplay(messageProperties, body);
+    }
+}
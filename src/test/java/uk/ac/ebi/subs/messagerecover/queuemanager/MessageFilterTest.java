@@ -57,4 +57,17 @@ public class MessageFilterTest {
 
         assertThat(messageFilter.toQueryString(), is(equalTo(EXPECTED_QUERY_STRING)));
     }
+
+    @Test
+    public void whenReadingMessagesInPagesWithoutParams_ThenGetQueryStringWithLimitAndFromId() {
+        messageFilterProperties.setFromId("42");
+        MessageFilter messageFilter = new MessageFilter(messageFilterProperties);
+        messageFilter.setLimit("100");
+
+        final String EXPECTED_QUERY_STRING = "fromId=42" + MessageFilter.QUERY_STRING_SEPARATOR +
+                "limit=100" + MessageFilter.QUERY_STRING_SEPARATOR +
+                "timeoutMs=1" + messageFilter.addMessageSeparator();
+
+        assertThat(messageFilter.toQueryString(), is(equalTo(EXPECTED_QUERY_STRING)));
+    }
 }
@@ -0,0 +1,167 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.RestTemplate;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.util.QDBStandIn;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class QDBManagerTest {
+
+    private static final String QDB_QUEUE_NAME = "test-dead-letter-queue";
+    private static final int STORED_MESSAGE_COUNT = 25;
+
+    private QDBStandIn qdbStandIn;
+    private RecoverProperties recoverProperties;
+    private QDBManager qdbManager;
+
+    @Before
+    public void setup() throws IOException {
+        qdbStandIn = new QDBStandIn();
+
+        recoverProperties = new RecoverProperties();
+        RecoverProperties.QdbProp qdbProp = new RecoverProperties.QdbProp();
+        qdbProp.setBaseURL(qdbStandIn.getBaseURL());
+        RecoverProperties.QdbProp.Queue queue = new RecoverProperties.QdbProp.Queue();
+        queue.setBasePath("/q");
+        qdbProp.setQueue(queue);
+        qdbProp.setMessageFilter(new RecoverProperties.QdbProp.MessageFilter());
+        recoverProperties.setQdbProp(qdbProp);
+
+        qdbManager = new QDBManager(new RestTemplate(), recoverProperties,
+                new RecoveryMetrics(new SimpleMeterRegistry()));
+    }
+
+    @After
+    public void tearDown() {
+        qdbStandIn.close();
+    }
+
+    @Test
+    public void whenTheQueueIsCreated_ThenItsMessageCountIsReturned() {
+        qdbManager.createQDBDeadLetterQueue(QDB_QUEUE_NAME);
+        assertThat(qdbManager.getQDBQueueMessageCount(QDB_QUEUE_NAME), is(equalTo(0L)));
+
+        storeMessages();
+
+        assertThat(qdbManager.getQDBQueueMessageCount(QDB_QUEUE_NAME), is(equalTo((long) STORED_MESSAGE_COUNT)));
+    }
+
+    @Test
+    public void whenTheMessagesAreReadInPages_ThenGetTheMessagesWithTheRoutingKeyInOrder() {
+        storeMessages();
+        recoverProperties.getQdbProp().setPageSize(4);
+        recoverProperties.getQdbProp().getMessageFilter().setRoutingKey("usi.test.even");
+
+        List<MessageToReplay> messages = readMessages(null);
+
+        assertThat(messages.size(), is(equalTo(STORED_MESSAGE_COUNT / 2)));
+        for (int i = 0; i < messages.size(); i++) {
+            assertThat(messages.get(i).getMessageProperties().getId(), is(equalTo(2L * (i + 1))));
+            assertThat(messages.get(i).getRoutingKey(), is(equalTo("usi.test.even")));
+            assertThat(messages.get(i).getBody(), containsString("{\"id\":" + 2 * (i + 1) + ","));
+        }
+    }
+
+    @Test
+    public void whenAGrepAndAFromIdAreGiven_ThenOnlyTheMatchingMessagesAreRead() {
+        storeMessages();
+        recoverProperties.getQdbProp().getMessageFilter().setGrep("Submitted");
+
+        List<MessageToReplay> messages = readMessages("10");
+
+        assertThat(messages.size(), is(equalTo(4)));
+        assertThat(messages.get(0).getMessageProperties().getId(), is(equalTo(10L)));
+        assertThat(messages.get(3).getMessageProperties().getId(), is(equalTo(25L)));
+    }
+
+    @Test
+    public void whenTheMessagesAreReadInShards_ThenGetAllTheMessagesInIdOrder() {
+        storeMessages();
+        recoverProperties.getQdbProp().getMessageFilter().setRoutingKey("");
+        recoverProperties.getQdbProp().getShardProp().setConcurrency(3);
+        recoverProperties.getQdbProp().getShardProp().setMessagesPerShard(4);
+
+        List<MessageToReplay> messages = readMessages(null);
+
+        assertThat(messages.size(), is(equalTo(STORED_MESSAGE_COUNT)));
+        for (int i = 0; i < messages.size(); i++) {
+            assertThat(messages.get(i).getMessageProperties().getId(), is(equalTo(i + 1L)));
+        }
+    }
+
+    @Test
+    public void whenTheShardsAreReadInPagesFromAnId_ThenGetTheMatchingMessagesInIdOrder() {
+        storeMessages();
+        recoverProperties.getQdbProp().setPageSize(2);
+        recoverProperties.getQdbProp().getMessageFilter().setRoutingKey("usi.test.even");
+        recoverProperties.getQdbProp().getShardProp().setConcurrency(4);
+
+        List<MessageToReplay> messages = readMessages("7");
+
+        assertThat(messages.size(), is(equalTo(9)));
+        for (int i = 0; i < messages.size(); i++) {
+            assertThat(messages.get(i).getMessageProperties().getId(), is(equalTo(8L + 2 * i)));
+        }
+    }
+
+    @Test
+    public void whenTheShardsAreRead_ThenTheirMessagesArePassedOnWhileTheLastShardIsStillBeingRead() {
+        storeMessages();
+        recoverProperties.getQdbProp().setPageSize(2);
+        recoverProperties.getQdbProp().getMessageFilter().setRoutingKey("");
+        recoverProperties.getQdbProp().getShardProp().setConcurrency(2);
+        recoverProperties.getQdbProp().getShardProp().setMessagesPerShard(13);
+
+        List<MessageToReplay> messages = new ArrayList<>();
+        qdbManager.filterMessagesFromQDBDeadLetterQueue(QDB_QUEUE_NAME, null, message -> {
+            if (messages.isEmpty()) {
+                qdbStandIn.store(QDB_QUEUE_NAME, "usi.test.even", "{\"id\":26}");
+            }
+            messages.add(message);
+        });
+
+        assertThat(messages.size(), is(equalTo(STORED_MESSAGE_COUNT + 1)));
+        for (int i = 0; i < messages.size(); i++) {
+            assertThat(messages.get(i).getMessageProperties().getId(), is(equalTo(i + 1L)));
+        }
+    }
+
+    @Test
+    public void whenTheIdRangeIsSplit_ThenTheShardsAreOfTheSameSize() {
+        long[] shardStartIds = QDBManager.splitIdRange(1, 25, 4);
+
+        assertThat(shardStartIds.length, is(equalTo(4)));
+        assertThat(shardStartIds[0], is(equalTo(1L)));
+        assertThat(shardStartIds[1], is(equalTo(7L)));
+        assertThat(shardStartIds[2], is(equalTo(13L)));
+        assertThat(shardStartIds[3], is(equalTo(19L)));
+    }
+
+    private void storeMessages() {
+        for (int id = 1; id <= STORED_MESSAGE_COUNT; id++) {
+            String routingKey = id % 2 == 0 ? "usi.test.even" : "usi.test.odd";
+            String status = id % 5 == 0 ? "Submitted" : "Draft";
+            qdbStandIn.store(QDB_QUEUE_NAME, routingKey, "{\"id\":" + id + ",\"status\":\"" + status + "\"}");
+        }
+    }
+
+    private List<MessageToReplay> readMessages(String fromId) {
+        List<MessageToReplay> messages = new ArrayList<>();
+        qdbManager.filterMessagesFromQDBDeadLetterQueue(QDB_QUEUE_NAME, fromId, messages::add);
+
+        return messages;
+    }
+}
@@ -0,0 +1,126 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class QDBMessageReaderTest {
+
+    private static final String TEST_ROUTING_KEY = "this.is.a.test.routingKey";
+    private static final String OTHER_ROUTING_KEY = "this.is.another.routingKey";
+
+    @Test
+    public void whenReadingAnEmptyResponse_ThenGetNoMessages() {
+        List<MessageToReplay> messages = readMessages("");
+
+        assertThat(messages.size(), is(equalTo(0)));
+    }
+
+    @Test
+    public void whenReadingASingleMessage_ThenGetItsRoutingKeyAndBody() {
+        List<MessageToReplay> messages = readMessages(buildMessage(1, TEST_ROUTING_KEY, "{\"id\":1}"));
+
+        assertThat(messages.size(), is(equalTo(1)));
+        assertThat(messages.get(0).getRoutingKey(), is(equalTo(TEST_ROUTING_KEY)));
+        assertThat(messages.get(0).getBody(), is(equalTo("{\"id\":1}")));
+    }
+
+    @Test
+    public void whenReadingSeparatedMessages_ThenGetAllOfThemInOrder() {
+        String response = String.join(QDBMessageReader.ENCODED_MESSAGE_SEPARATOR,
+                buildMessage(1, TEST_ROUTING_KEY, "{\"id\":1}"),
+                buildMessage(2, OTHER_ROUTING_KEY, "{\"id\":2}"),
+                buildMessage(3, TEST_ROUTING_KEY, "{\"id\":3}"));
+
+        List<MessageToReplay> messages = readMessages(response + QDBMessageReader.ENCODED_MESSAGE_SEPARATOR);
+
+        assertThat(messages.size(), is(equalTo(3)));
+        assertThat(messages.get(1).getRoutingKey(), is(equalTo(OTHER_ROUTING_KEY)));
+        assertThat(messages.get(2).getBody(), is(equalTo("{\"id\":3}")));
+    }
+
+    @Test
+    public void whenTheHeaderHasAPrefix_ThenThePropertiesAreStillParsed() {
+        List<MessageToReplay> messages = readMessages("1:" + buildMessage(1, TEST_ROUTING_KEY, "body"));
+
+        assertThat(messages.get(0).getRoutingKey(), is(equalTo(TEST_ROUTING_KEY)));
+        assertThat(messages.get(0).getBody(), is(equalTo("body")));
+    }
+
+    @Test
+    public void whenAMessageIsLargerThanTheReadBuffer_ThenItsMultiByteCharactersAreKept() {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            body.append("\u00e9\u4e2d");
+        }
+
+        List<MessageToReplay> messages = readMessages(String.join(QDBMessageReader.ENCODED_MESSAGE_SEPARATOR,
+                buildMessage(1, TEST_ROUTING_KEY, body.toString()),
+                buildMessage(2, OTHER_ROUTING_KEY, "{\"id\":2}")));
+
+        assertThat(messages.size(), is(equalTo(2)));
+        assertThat(messages.get(0).getBody(), is(equalTo(body.toString())));
+        assertThat(messages.get(1).getMessageProperties().getId(), is(equalTo(2L)));
+    }
+
+    @Test
+    public void whenTheHeaderHasUnknownProperties_ThenTheyAreIgnored() {
+        List<MessageToReplay> messages = readMessages(
+                "{\"id\":7,\"routingKey\":\"" + TEST_ROUTING_KEY + "\",\"unknown\":true}\nbody");
+
+        assertThat(messages.get(0).getMessageProperties().getId(), is(equalTo(7L)));
+        assertThat(messages.get(0).getRoutingKey(), is(equalTo(TEST_ROUTING_KEY)));
+    }
+
+    @Test
+    public void whenThePayloadIsKept_ThenTheOriginalBytesAndAmqpPropertiesAreAvailable() {
+        String body = "{\"name\":\"\u00e9\"}";
+        String response = "{\"id\":8,\"routingKey\":\"" + TEST_ROUTING_KEY + "\",\"contentType\":\"application/json\","
+                + "\"messageId\":\"message-8\",\"headers\":{\"__TypeId__\":\"Submission\"}}\n" + body;
+        QDBMessageReader messageReader = new QDBMessageReader(
+                new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), new QDBRecordDecoder(true));
+
+        MessageToReplay message = messageReader.next();
+
+        assertThat(message.getPayload(), is(equalTo(body.getBytes(StandardCharsets.UTF_8))));
+        assertThat(message.getMessageProperties().getContentType(), is(equalTo("application/json")));
+        assertThat(message.getMessageProperties().getMessageId(), is(equalTo("message-8")));
+        assertThat(message.getMessageProperties().getHeaders().get("__TypeId__"), is(equalTo("Submission")));
+    }
+
+    @Test
+    public void whenTheBodyHasSeveralLines_ThenItIsKeptByteForByte() {
+        String body = "{\n  \"name\": \"\u00e9\",\n  \"lines\": 3\n}\n";
+        String response = String.join(QDBMessageReader.ENCODED_MESSAGE_SEPARATOR,
+                buildMessage(9, TEST_ROUTING_KEY, body), buildMessage(10, OTHER_ROUTING_KEY, "{\"id\":10}"));
+        QDBMessageReader messageReader = new QDBMessageReader(
+                new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), new QDBRecordDecoder(true));
+
+        MessageToReplay message = messageReader.next();
+
+        assertThat(message.getBody(), is(equalTo(body)));
+        assertThat(message.getPayload(), is(equalTo(body.getBytes(StandardCharsets.UTF_8))));
+        assertThat(messageReader.next().getBody(), is(equalTo("{\"id\":10}")));
+    }
+
+    private List<MessageToReplay> readMessages(String response) {
+        List<MessageToReplay> messages = new ArrayList<>();
+        QDBMessageReader messageReader =
+                new QDBMessageReader(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)));
+        messageReader.forEachRemaining(messages::add);
+
+        return messages;
+    }
+
+    private String buildMessage(int id, String routingKey, String body) {
+        return String.format("{\"id\":%d,\"timestamp\":\"1506675200000\",\"payloadSize\":%d,\"routingKey\":\"%s\"}\n%s",
+                id, body.length(), routingKey, body);
+    }
+}
@@ -0,0 +1,220 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.timeout.ReadTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ReactiveQDBManagerTest {
+
+    private static final String QDB_QUEUE_NAME = "test-dead-letter-queue";
+    private static final String LARGE_QDB_QUEUE_NAME = "test-large-dead-letter-queue";
+    private static final String STALLED_QDB_QUEUE_NAME = "test-stalled-dead-letter-queue";
+    private static final int LARGE_MESSAGE_COUNT = 4000;
+    private static final int STORED_MESSAGE_COUNT = 25;
+    private static final Pattern FROM_ID_PATTERN = Pattern.compile("fromId=(\\d+)");
+    private static final Pattern LIMIT_PATTERN = Pattern.compile("limit=(\\d+)");
+
+    private HttpServer qdbServer;
+    private AtomicInteger requestCount = new AtomicInteger();
+    private AtomicInteger unavailableResponseCount = new AtomicInteger();
+    private RecoverProperties recoverProperties;
+    private ReactiveQDBManager reactiveQDBManager;
+
+    @Before
+    public void setup() throws IOException {
+        qdbServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        qdbServer.createContext("/queues/" + QDB_QUEUE_NAME + "/messages", this::handleGetMessages);
+        qdbServer.createContext("/queues/" + LARGE_QDB_QUEUE_NAME + "/messages", this::handleGetLargeMessages);
+        qdbServer.createContext("/queues/" + STALLED_QDB_QUEUE_NAME + "/messages", this::handleGetMessagesStalled);
+        qdbServer.start();
+
+        recoverProperties = new RecoverProperties();
+        RecoverProperties.QdbProp qdbProp = new RecoverProperties.QdbProp();
+        qdbProp.setBaseURL("http://localhost:" + qdbServer.getAddress().getPort());
+        RecoverProperties.QdbProp.Queue queue = new RecoverProperties.QdbProp.Queue();
+        queue.setBasePath("/queues");
+        qdbProp.setQueue(queue);
+        qdbProp.setMessageFilter(new RecoverProperties.QdbProp.MessageFilter());
+        qdbProp.getHttpProp().setRetryBackoffInMs(1);
+        recoverProperties.setQdbProp(qdbProp);
+    }
+
+    @After
+    public void tearDown() {
+        if (reactiveQDBManager != null) {
+            reactiveQDBManager.destroy();
+        }
+        qdbServer.stop(0);
+    }
+
+    @Test
+    public void whenTheMessagesAreReadInPages_ThenGetAllOfThemInOrder() {
+        recoverProperties.getQdbProp().setPageSize(10);
+
+        List<MessageToReplay> messages = readMessages();
+
+        assertThat(messages.size(), is(equalTo(STORED_MESSAGE_COUNT)));
+        for (int i = 0; i < STORED_MESSAGE_COUNT; i++) {
+            assertThat(messages.get(i).getMessageProperties().getId(), is(equalTo(i + 1L)));
+        }
+        assertThat(requestCount.get(), is(equalTo(3)));
+    }
+
+    @Test
+    public void whenQDBIsTemporarilyUnavailable_ThenTheRequestIsRetried() {
+        unavailableResponseCount.set(2);
+
+        List<MessageToReplay> messages = readMessages();
+
+        assertThat(messages.size(), is(equalTo(STORED_MESSAGE_COUNT)));
+        assertThat(requestCount.get(), is(equalTo(3)));
+    }
+
+    @Test
+    public void whenARoutingKeyPatternIsGiven_ThenOnlyTheMatchingMessagesAreRead() {
+        recoverProperties.getQdbProp().getMessageFilter().setRoutingKeyPattern("usi.*.even");
+
+        List<MessageToReplay> messages = readMessages();
+
+        assertThat(messages.size(), is(equalTo(STORED_MESSAGE_COUNT / 2)));
+        messages.forEach(message -> assertThat(message.getRoutingKey(), is(equalTo("usi.test.even"))));
+    }
+
+    @Test
+    public void whenTheSubscriberIsSlowerThanTheReadTimeout_ThenTheReadingDoesNotTimeOut() {
+        recoverProperties.getQdbProp().getHttpProp().setReadTimeoutInMs(100);
+        reactiveQDBManager = new ReactiveQDBManager(recoverProperties,
+                new RecoveryMetrics(new SimpleMeterRegistry()));
+        Scheduler replayScheduler = Schedulers.newSingle("test-replay");
+
+        try {
+            Long messageCount = reactiveQDBManager.filterMessagesFromQDBDeadLetterQueue(LARGE_QDB_QUEUE_NAME, null)
+                    .publishOn(replayScheduler, 1)
+                    .doOnNext(message -> {
+                        if (message.getMessageProperties().getId() == 1) {
+                            sleep(500);
+                        }
+                    })
+                    .count()
+                    .block();
+
+            assertThat(messageCount, is(equalTo((long) LARGE_MESSAGE_COUNT)));
+        } finally {
+            replayScheduler.dispose();
+        }
+    }
+
+    @Test(expected = ReadTimeoutException.class)
+    public void whenQDBStopsSendingTheResponse_ThenTheReadingTimesOut() {
+        recoverProperties.getQdbProp().getHttpProp().setReadTimeoutInMs(100);
+        reactiveQDBManager = new ReactiveQDBManager(recoverProperties,
+                new RecoveryMetrics(new SimpleMeterRegistry()));
+
+        reactiveQDBManager.filterMessagesFromQDBDeadLetterQueue(STALLED_QDB_QUEUE_NAME, null)
+                .collectList()
+                .block();
+    }
+
+    private List<MessageToReplay> readMessages() {
+        reactiveQDBManager = new ReactiveQDBManager(recoverProperties,
+                new RecoveryMetrics(new SimpleMeterRegistry()));
+
+        return reactiveQDBManager.filterMessagesFromQDBDeadLetterQueue(QDB_QUEUE_NAME, null)
+                .collectList()
+                .block();
+    }
+
+    private void handleGetMessages(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        if (unavailableResponseCount.getAndDecrement() > 0) {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+            return;
+        }
+
+        String query = exchange.getRequestURI().getQuery() == null ? "" : exchange.getRequestURI().getQuery();
+        int fromId = getParameter(FROM_ID_PATTERN, query, 1);
+        int limit = getParameter(LIMIT_PATTERN, query, STORED_MESSAGE_COUNT);
+
+        StringBuilder response = new StringBuilder();
+        for (int id = fromId; id < fromId + limit && id <= STORED_MESSAGE_COUNT; id++) {
+            String routingKey = id % 2 == 0 ? "usi.test.even" : "usi.test.odd";
+            String body = "{\"id\":" + id + "}";
+            response.append(String.format(
+                    "{\"id\":%d,\"timestamp\":\"1506675200000\",\"payloadSize\":%d,\"routingKey\":\"%s\"}\n%s",
+                    id, body.length(), routingKey, body))
+                    .append(QDBMessageReader.ENCODED_MESSAGE_SEPARATOR);
+        }
+
+        byte[] responseBytes = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, responseBytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(responseBytes);
+        }
+    }
+
+    private void handleGetLargeMessages(HttpExchange exchange) throws IOException {
+        char[] padding = new char[4096];
+        Arrays.fill(padding, 'x');
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            for (int id = 1; id <= LARGE_MESSAGE_COUNT; id++) {
+                responseBody.write(encodeRecord(id, "usi.test.large", "{\"id\":" + id + ",\"padding\":\""
+                        + new String(padding) + "\"}"));
+            }
+        }
+    }
+
+    private void handleGetMessagesStalled(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(encodeRecord(1, "usi.test.stalled", "{\"id\":1}"));
+            responseBody.flush();
+            sleep(1000);
+        }
+    }
+
+    private static byte[] encodeRecord(int id, String routingKey, String body) {
+        String record = String.format(
+                "{\"id\":%d,\"timestamp\":\"1506675200000\",\"payloadSize\":%d,\"routingKey\":\"%s\"}\n%s",
+                id, body.length(), routingKey, body);
+
+        return (record + QDBMessageReader.ENCODED_MESSAGE_SEPARATOR).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int getParameter(Pattern pattern, String query, int defaultValue) {
+        Matcher matcher = pattern.matcher(query);
+
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : defaultValue;
+    }
+}
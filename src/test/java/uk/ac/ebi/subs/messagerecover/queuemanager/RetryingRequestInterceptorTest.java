@@ -0,0 +1,83 @@
+package uk.ac.ebi.subs.messagerecover.queuemanager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RetryingRequestInterceptorTest {
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    private RetryingRequestInterceptor interceptor;
+    private ClientHttpRequestExecution execution;
+    private ClientHttpResponse okResponse;
+
+    @Before
+    public void setup() throws IOException {
+        interceptor = new RetryingRequestInterceptor(2, 1);
+        execution = mock(ClientHttpRequestExecution.class);
+        okResponse = mock(ClientHttpResponse.class);
+        when(okResponse.getStatusCode()).thenReturn(HttpStatus.OK);
+    }
+
+    @Test
+    public void whenAGetRequestFailsTemporarily_ThenItIsRetried() throws IOException {
+        ClientHttpResponse unavailableResponse = mock(ClientHttpResponse.class);
+        when(unavailableResponse.getStatusCode()).thenReturn(HttpStatus.SERVICE_UNAVAILABLE);
+        when(execution.execute(any(HttpRequest.class), any(byte[].class)))
+                .thenThrow(new IOException("Connection reset"))
+                .thenReturn(unavailableResponse)
+                .thenReturn(okResponse);
+
+        ClientHttpResponse response = interceptor.intercept(buildRequest(HttpMethod.GET), NO_BODY, execution);
+
+        assertThat(response, is(sameInstance(okResponse)));
+        verify(execution, times(3)).execute(any(HttpRequest.class), any(byte[].class));
+        verify(unavailableResponse).close();
+    }
+
+    @Test(expected = IOException.class)
+    public void whenAGetRequestKeepsFailing_ThenTheLastErrorIsThrown() throws IOException {
+        when(execution.execute(any(HttpRequest.class), any(byte[].class)))
+                .thenThrow(new IOException("Connection refused"));
+
+        interceptor.intercept(buildRequest(HttpMethod.GET), NO_BODY, execution);
+    }
+
+    @Test
+    public void whenAPostRequestFails_ThenItIsNotRetried() throws IOException {
+        when(execution.execute(any(HttpRequest.class), any(byte[].class)))
+                .thenThrow(new IOException("Connection reset"));
+
+        try {
+            interceptor.intercept(buildRequest(HttpMethod.POST), NO_BODY, execution);
+        } catch (IOException e) {
+            // expected
+        }
+
+        verify(execution, times(1)).execute(any(HttpRequest.class), any(byte[].class));
+    }
+
+    private HttpRequest buildRequest(HttpMethod method) {
+        HttpRequest request = mock(HttpRequest.class);
+        when(request.getMethod()).thenReturn(method);
+        when(request.getURI()).thenReturn(URI.create("http://localhost:9554/q/test"));
+        return request;
+    }
+}
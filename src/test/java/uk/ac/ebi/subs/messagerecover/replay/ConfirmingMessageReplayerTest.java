@@ -0,0 +1,113 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConfirmingMessageReplayerTest {
+
+    private static final String TEST_EXCHANGE = "usi-1:submission-exchange";
+    private static final String TEST_ROUTING_KEY = "usi.submission.test";
+
+    private Channel channel;
+    private ConfirmingMessageReplayer replayer;
+    private List<MessageToReplay> deliveredMessages = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        channel = mock(Channel.class);
+        when(channel.getNextPublishSeqNo()).thenReturn(1L, 2L, 3L);
+        replayer = new ConfirmingMessageReplayer(() -> channel, new ReplayMessageConverter(null, true),
+                TEST_EXCHANGE, 10, 1);
+    }
+
+    @Test
+    public void whenTheMessagesAreConfirmedOutOfOrder_ThenTheyAreDeliveredInOrder() throws IOException {
+        replayMessages(3);
+
+        replayer.handleAck(2, false);
+        assertThat(deliveredMessages.size(), is(equalTo(0)));
+        replayer.handleAck(1, false);
+        replayer.handleAck(3, false);
+        replayer.flush();
+
+        assertThat(deliveredMessages.size(), is(equalTo(3)));
+        assertThat(deliveredMessages.get(0).getBody(), is(equalTo("{\"id\":0}")));
+        assertThat(deliveredMessages.get(2).getBody(), is(equalTo("{\"id\":2}")));
+    }
+
+    @Test
+    public void whenSeveralMessagesAreConfirmedAtOnce_ThenAllOfThemAreDelivered() throws IOException {
+        replayMessages(3);
+
+        replayer.handleAck(2, true);
+        assertThat(deliveredMessages.size(), is(equalTo(2)));
+        replayer.handleAck(3, true);
+        replayer.flush();
+
+        assertThat(deliveredMessages.size(), is(equalTo(3)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenAMessageIsReturnedAsUnroutable_ThenItIsNotDeliveredAndTheFlushFails() throws IOException {
+        List<byte[]> sentBodies = replayMessages(2);
+
+        replayer.handleAck(1, false);
+        replayer.handleReturn(312, "NO_ROUTE", TEST_EXCHANGE, TEST_ROUTING_KEY,
+                new AMQP.BasicProperties(), sentBodies.get(1));
+        replayer.handleAck(2, false);
+
+        assertThat(deliveredMessages.size(), is(equalTo(1)));
+        replayer.flush();
+    }
+
+    @Test
+    public void whenAMessageIsPublished_ThenItsHeadersAreKeptUnchanged() throws IOException {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setRoutingKey(TEST_ROUTING_KEY);
+        messageProperties.setHeaders(Collections.singletonMap("__TypeId__", "uk.ac.ebi.subs.Submission"));
+        replayer.replay(new MessageToReplay(messageProperties, "{\"id\":0}"), deliveredMessages::add);
+
+        ArgumentCaptor<AMQP.BasicProperties> propertiesCaptor = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+        verify(channel).basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), eq(true), propertiesCaptor.capture(),
+                any(byte[].class));
+
+        assertThat(propertiesCaptor.getValue().getHeaders().keySet(),
+                is(equalTo(Collections.singleton("__TypeId__"))));
+    }
+
+    private List<byte[]> replayMessages(int messageCount) throws IOException {
+        for (int i = 0; i < messageCount; i++) {
+            replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":" + i + "}"), deliveredMessages::add);
+        }
+
+        ArgumentCaptor<byte[]> bodyCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(channel).confirmSelect();
+        verify(channel, times(messageCount)).basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), eq(true),
+                any(AMQP.BasicProperties.class), bodyCaptor.capture());
+        assertThat(new String(bodyCaptor.getValue(), StandardCharsets.UTF_8),
+                is(equalTo("{\"id\":" + (messageCount - 1) + "}")));
+
+        return bodyCaptor.getAllValues();
+    }
+}
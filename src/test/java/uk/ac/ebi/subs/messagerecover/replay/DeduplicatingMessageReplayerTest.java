@@ -0,0 +1,216 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.amqp.core.AmqpAdmin;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class DeduplicatingMessageReplayerTest {
+
+    private static final String TEST_EXCHANGE = "test-exchange";
+    private static final String TEST_ROUTING_KEY = "usi.submission.test";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path indexFile;
+    private List<DeduplicationIndex> openedIndexes = new ArrayList<>();
+    private List<MessageToReplay> publishedMessages = new ArrayList<>();
+    private List<String> publishedExchangeNames = new ArrayList<>();
+    private List<String> deliveredBodies = new ArrayList<>();
+    private List<Consumer<MessageToReplay>> pendingCallbacks = new ArrayList<>();
+    private boolean deliverMessages = true;
+
+    @Before
+    public void setup() {
+        indexFile = temporaryFolder.getRoot().toPath().resolve("test.dedup");
+    }
+
+    @After
+    public void tearDown() {
+        openedIndexes.forEach(DeduplicationIndex::close);
+    }
+
+    @Test
+    public void whenAMessageIsReplayedAgain_ThenItIsSkipped() {
+        MessageReplayer replayer = createReplayer(null);
+
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":1}"), message -> { });
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":2}"), message -> { });
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":1}"), message -> { });
+        replayer.replay(new MessageToReplay("usi.other.test", "{\"id\":1}"), message -> { });
+
+        assertThat(publishedMessages.size(), is(equalTo(3)));
+    }
+
+    @Test
+    public void whenTheIndexIsReopened_ThenTheMessagesOfTheEarlierRecoveryAreSkipped() {
+        MessageReplayer replayer = createReplayer(null);
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":1}"), message -> { });
+        replayer.flush();
+        openedIndexes.get(0).close();
+
+        MessageReplayer nextReplayer = createReplayer(null);
+        nextReplayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":1}"), message -> { });
+        nextReplayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":2}"), message -> { });
+
+        assertThat(publishedMessages.size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void whenAMessageHasNotBeenDelivered_ThenItIsReplayedAgain() {
+        MessageReplayer replayer = createReplayer(null);
+        deliverMessages = false;
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":1}"), message -> { });
+
+        deliverMessages = true;
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":1}"), message -> { });
+
+        assertThat(publishedMessages.size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void whenADuplicateIsSkipped_ThenItsDeliveryCallbackIsCalledInOrder() {
+        MessageReplayer replayer = createReplayer(null);
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":1}"), this::delivered);
+
+        deliverMessages = false;
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":2}"), this::delivered);
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":1}"), this::delivered);
+
+        assertThat(deliveredBodies.size(), is(equalTo(1)));
+
+        pendingCallbacks.get(0).accept(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":2}"));
+
+        assertThat(deliveredBodies, is(equalTo(Arrays.asList("{\"id\":1}", "{\"id\":2}", "{\"id\":1}"))));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void whenTheIndexIsAlreadyOpened_ThenItCanNotBeOpenedAgain() {
+        openIndex(1000);
+        openIndex(1000);
+    }
+
+    @Test
+    public void whenAReplayedMessageFailsAgain_ThenItIsDelayedOrParkedInsteadOfSkipped() {
+        RecoverProperties.ReplayProp.RetryProp retryProp = new RecoverProperties.ReplayProp.RetryProp();
+        retryProp.setEnabled(true);
+        RecoveryMetrics recoveryMetrics = new RecoveryMetrics(new SimpleMeterRegistry());
+        MessageReplayer replayer = new DeduplicatingMessageReplayer(
+                new DelayingMessageReplayer(new RecordingMessageReplayer(TEST_EXCHANGE), RecordingMessageReplayer::new,
+                        mock(AmqpAdmin.class), TEST_EXCHANGE, retryProp, recoveryMetrics),
+                openIndex(1000), TEST_EXCHANGE, null, recoveryMetrics);
+
+        replayer.replay(deadLetteredMessage(1), message -> { });
+        replayer.replay(deadLetteredMessage(1), message -> { });
+        replayer.replay(deadLetteredMessage(2), message -> { });
+        replayer.replay(deadLetteredMessage(5), message -> { });
+
+        assertThat(publishedExchangeNames, is(equalTo(Arrays.asList(
+                TEST_EXCHANGE, "message-recover.delay." + TEST_EXCHANGE + ".60s", ""))));
+    }
+
+    @Test
+    public void whenAKeyPatternIsSet_ThenTheMessagesAreIdentifiedByTheirKey() {
+        MessageReplayer replayer = createReplayer("\"messageId\":\"([^\"]+)\"");
+
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"messageId\":\"a\",\"retry\":1}"), message -> { });
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"messageId\":\"a\",\"retry\":2}"), message -> { });
+        replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"messageId\":\"b\",\"retry\":1}"), message -> { });
+
+        assertThat(publishedMessages.size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void whenManyMessagesAreReplayed_ThenAllOfThemAreFoundInTheIndex() {
+        DeduplicationIndex index = openIndex(100000);
+        for (int i = 0; i < 100000; i++) {
+            index.add(DeduplicationIndex.fingerprint(TEST_EXCHANGE, TEST_ROUTING_KEY, "{\"id\":" + i + "}"));
+        }
+        index.close();
+
+        DeduplicationIndex reopenedIndex = openIndex(0);
+
+        assertThat(reopenedIndex.size(), is(equalTo(100000L)));
+        for (int i = 0; i < 100000; i++) {
+            assertThat(reopenedIndex.contains(
+                    DeduplicationIndex.fingerprint(TEST_EXCHANGE, TEST_ROUTING_KEY, "{\"id\":" + i + "}")), is(true));
+        }
+        assertThat(reopenedIndex.contains(
+                DeduplicationIndex.fingerprint(TEST_EXCHANGE, TEST_ROUTING_KEY, "{\"id\":-1}")), is(false));
+    }
+
+    private MessageReplayer createReplayer(String keyPattern) {
+        return new DeduplicatingMessageReplayer(new RecordingMessageReplayer(TEST_EXCHANGE), openIndex(1000),
+                TEST_EXCHANGE, keyPattern, new RecoveryMetrics(new SimpleMeterRegistry()));
+    }
+
+    private DeduplicationIndex openIndex(long expectedEntries) {
+        DeduplicationIndex index = new DeduplicationIndex(indexFile, expectedEntries);
+        openedIndexes.add(index);
+
+        return index;
+    }
+
+    private static MessageToReplay deadLetteredMessage(long failureCount) {
+        Map<String, Object> death = new HashMap<>();
+        death.put("reason", DelayingMessageReplayer.REJECTED_REASON);
+        death.put("count", failureCount);
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setRoutingKey(TEST_ROUTING_KEY);
+        messageProperties.setHeaders(Collections.singletonMap(DelayingMessageReplayer.X_DEATH_HEADER,
+                Collections.singletonList(death)));
+
+        return new MessageToReplay(messageProperties, "{\"id\":1}");
+    }
+
+    private void delivered(MessageToReplay message) {
+        deliveredBodies.add(message.getBody());
+    }
+
+    private class RecordingMessageReplayer implements MessageReplayer {
+
+        private final String exchangeName;
+
+        private RecordingMessageReplayer(String exchangeName) {
+            this.exchangeName = exchangeName;
+        }
+
+        @Override
+        public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+            publishedMessages.add(message);
+            publishedExchangeNames.add(exchangeName);
+            if (deliverMessages) {
+                deliveryCallback.accept(message);
+            } else {
+                pendingCallbacks.add(deliveryCallback);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.Queue;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DelayingMessageReplayerTest {
+
+    private static final String TEST_EXCHANGE = "usi-1:submission-exchange";
+    private static final String TEST_ROUTING_KEY = "usi.submission.test";
+
+    private AmqpAdmin amqpAdmin;
+    private RecoverProperties.ReplayProp.RetryProp retryProp;
+    private RecoveryMetrics recoveryMetrics;
+    private Map<String, List<MessageToReplay>> sentMessages = new HashMap<>();
+    private List<Consumer<MessageToReplay>> pendingCallbacks = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        amqpAdmin = mock(AmqpAdmin.class);
+        retryProp = new RecoverProperties.ReplayProp.RetryProp();
+        retryProp.setEnabled(true);
+        recoveryMetrics = new RecoveryMetrics(new SimpleMeterRegistry());
+    }
+
+    @Test
+    public void whenTheReplayerIsCreated_ThenTheDelayQueuesAreDeclaredWithGrowingTTL() {
+        createReplayer();
+
+        ArgumentCaptor<Queue> queueCaptor = ArgumentCaptor.forClass(Queue.class);
+        verify(amqpAdmin, times(5)).declareQueue(queueCaptor.capture());
+        List<Queue> queues = queueCaptor.getAllValues();
+
+        assertThat(queues.get(0).getName(), is(equalTo("message-recover.delay." + TEST_EXCHANGE + ".60s")));
+        assertThat(queues.get(3).getName(), is(equalTo("message-recover.delay." + TEST_EXCHANGE + ".480s")));
+        assertThat(queues.get(3).getArguments().get("x-message-ttl"), is(equalTo((Object) 480000L)));
+        assertThat(queues.get(3).getArguments().get("x-dead-letter-exchange"), is(equalTo((Object) TEST_EXCHANGE)));
+        assertThat(queues.get(4).getName(), is(equalTo("message-recover.parking-lot")));
+    }
+
+    @Test
+    public void whenAMessageHasFailedBefore_ThenItIsDelayedByItsFailureCount() {
+        MessageReplayer replayer = createReplayer();
+
+        replayer.replay(message(1, 0), message -> { });
+        replayer.replay(message(2, 1), message -> { });
+        replayer.replay(message(3, 2), message -> { });
+        replayer.replay(message(4, 3), message -> { });
+        replayer.replay(message(5, 4), message -> { });
+
+        assertThat(sentMessages.get(TEST_EXCHANGE).size(), is(equalTo(2)));
+        assertThat(sentMessages.get("message-recover.delay." + TEST_EXCHANGE + ".60s").size(), is(equalTo(1)));
+        assertThat(sentMessages.get("message-recover.delay." + TEST_EXCHANGE + ".120s").size(), is(equalTo(1)));
+        assertThat(sentMessages.get("message-recover.delay." + TEST_EXCHANGE + ".240s").get(0).getRoutingKey(),
+                is(equalTo(TEST_ROUTING_KEY)));
+        assertThat(counterValue(RecoveryMetrics.MESSAGES_DELAYED_COUNTER), is(equalTo(3.0)));
+    }
+
+    @Test
+    public void whenAMessageHasFailedTooManyTimes_ThenItIsParkedWithItsHeaders() {
+        MessageReplayer replayer = createReplayer();
+
+        MessageToReplay message = message(1, 5);
+        replayer.replay(message, deliveredMessage -> { });
+
+        MessageToReplay parkedMessage = sentMessages.get("").get(0);
+        Map<String, Object> headers = parkedMessage.getMessageProperties().getHeaders();
+
+        assertThat(headers.get(DelayingMessageReplayer.ORIGINAL_EXCHANGE_HEADER), is(equalTo((Object) TEST_EXCHANGE)));
+        assertThat(headers.get(DelayingMessageReplayer.ORIGINAL_ROUTING_KEY_HEADER),
+                is(equalTo((Object) TEST_ROUTING_KEY)));
+        assertThat(headers.containsKey(DelayingMessageReplayer.X_DEATH_HEADER), is(true));
+        assertThat(parkedMessage.getRoutingKey(), is(equalTo("message-recover.parking-lot")));
+        assertThat(message.getMessageProperties().getHeaders().containsKey(
+                DelayingMessageReplayer.ORIGINAL_EXCHANGE_HEADER), is(false));
+        assertThat(sentMessages.containsKey(TEST_EXCHANGE), is(false));
+        assertThat(counterValue(RecoveryMetrics.MESSAGES_PARKED_COUNTER), is(equalTo(1.0)));
+    }
+
+    @Test
+    public void whenTheMessagesAreDelayedAndReplayed_ThenTheCallbacksAreCalledInReplayOrder() {
+        MessageReplayer replayer = createReplayer();
+        List<Long> deliveredIds = new ArrayList<>();
+        Consumer<MessageToReplay> deliveryCallback =
+                message -> deliveredIds.add(message.getMessageProperties().getId());
+
+        replayer.replay(message(1, 1), deliveryCallback);
+        replayer.replay(message(2, 2), deliveryCallback);
+        replayer.replay(message(3, 1), deliveryCallback);
+        replayer.replay(message(4, 6), deliveryCallback);
+
+        assertThat(deliveredIds.isEmpty(), is(true));
+
+        pendingCallbacks.get(0).accept(null);
+        assertThat(deliveredIds, is(equalTo(Collections.singletonList(1L))));
+
+        pendingCallbacks.get(1).accept(null);
+        pendingCallbacks.get(3).accept(null);
+        assertThat(deliveredIds, is(equalTo(Arrays.asList(1L, 2L))));
+
+        pendingCallbacks.get(2).accept(null);
+        assertThat(deliveredIds, is(equalTo(Arrays.asList(1L, 2L, 3L, 4L))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void whenThereIsNoDelayTier_ThenTheReplayerIsNotCreated() {
+        retryProp.setTierCount(0);
+
+        createReplayer();
+    }
+
+    @Test
+    public void whenTheMessageHasExpiredInADelayQueue_ThenOnlyTheRejectionsAreCounted() {
+        MessageToReplay message = message(1, 2);
+        List<Map<String, Object>> deaths = new ArrayList<>(xDeath("rejected", 2));
+        deaths.add(death("expired", 3));
+        message.getMessageProperties().getHeaders().put(DelayingMessageReplayer.X_DEATH_HEADER, deaths);
+
+        assertThat(DelayingMessageReplayer.failureCount(message), is(equalTo(2L)));
+        assertThat(DelayingMessageReplayer.failureCount(new MessageToReplay(TEST_ROUTING_KEY, "{}")),
+                is(equalTo(0L)));
+    }
+
+    private DelayingMessageReplayer createReplayer() {
+        return new DelayingMessageReplayer(new RecordingMessageReplayer(TEST_EXCHANGE), RecordingMessageReplayer::new,
+                amqpAdmin, TEST_EXCHANGE, retryProp, recoveryMetrics);
+    }
+
+    private double counterValue(String counterName) {
+        return recoveryMetrics.getMeterRegistry().find(counterName).counter().count();
+    }
+
+    private static MessageToReplay message(long id, long failureCount) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setId(id);
+        messageProperties.setRoutingKey(TEST_ROUTING_KEY);
+        Map<String, Object> headers = new HashMap<>();
+        if (failureCount > 0) {
+            headers.put(DelayingMessageReplayer.X_DEATH_HEADER, xDeath("rejected", failureCount));
+        }
+        messageProperties.setHeaders(headers);
+
+        return new MessageToReplay(messageProperties, "{\"id\":1}");
+    }
+
+    private static List<Map<String, Object>> xDeath(String reason, long count) {
+        return Collections.singletonList(death(reason, count));
+    }
+
+    private static Map<String, Object> death(String reason, long count) {
+        Map<String, Object> death = new HashMap<>();
+        death.put("reason", reason);
+        death.put("count", count);
+        death.put("queue", "usi-submission-dead-letter");
+
+        return death;
+    }
+
+    private class RecordingMessageReplayer implements MessageReplayer {
+
+        private final String exchangeName;
+
+        private RecordingMessageReplayer(String exchangeName) {
+            this.exchangeName = exchangeName;
+        }
+
+        @Override
+        public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+            sentMessages.computeIfAbsent(exchangeName, name -> new ArrayList<>()).add(message);
+            pendingCallbacks.add(deliveryCallback);
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DryRunMessageReplayerTest {
+
+    private static final String TEST_EXCHANGE_NAME = "usi-1:submission-exchange";
+    private static final int SAMPLE_SIZE = 3;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path reportFile;
+    private DryRunMessageReplayer dryRunMessageReplayer;
+
+    @Before
+    public void setup() {
+        reportFile = temporaryFolder.getRoot().toPath().resolve("dry-run.txt");
+        dryRunMessageReplayer =
+                new DryRunMessageReplayer(new DryRunReport(reportFile, SAMPLE_SIZE), TEST_EXCHANGE_NAME);
+    }
+
+    @Test
+    public void whenMessagesAreReplayed_ThenTheyAreNotDeliveredOnlyCounted() throws IOException {
+        Consumer<MessageToReplay> deliveryCallback = mock(Consumer.class);
+        for (int i = 0; i < 10; i++) {
+            dryRunMessageReplayer.replay(message(i, "usi.submission.a", "{\"id\":" + i + "}", null), deliveryCallback);
+        }
+        for (int i = 10; i < 15; i++) {
+            dryRunMessageReplayer.replay(message(i, "usi.submission.b", "{\"id\":" + i + "}", null), deliveryCallback);
+        }
+        dryRunMessageReplayer.flush();
+
+        verify(deliveryCallback, never()).accept(any(MessageToReplay.class));
+        List<String> report = readReport();
+        assertThat(report, hasItem("Messages: 15, changed by the fixers: 0, unchanged: 15"));
+        assertThat(report, hasItem("  " + TEST_EXCHANGE_NAME + " usi.submission.a: 10 (0)"));
+        assertThat(report, hasItem("  " + TEST_EXCHANGE_NAME + " usi.submission.b: 5 (0)"));
+        assertThat(report, hasItem("  8 - 15: 15"));
+    }
+
+    @Test
+    public void whenTheFixersChangeMessages_ThenASampleOfTheChangesIsReported() throws IOException {
+        for (int i = 0; i < 100; i++) {
+            String body = "{\"submission\":{\"id\":\"" + i + "\",\"status\":\"Draft\"}}";
+            String bodyToReplay = i % 2 == 0 ? body.replace("Draft", "Submitted") : body;
+            dryRunMessageReplayer.replay(message(i, "usi.submission", body, bodyToReplay), message -> { });
+        }
+        dryRunMessageReplayer.flush();
+
+        List<String> report = readReport();
+        assertThat(report, hasItem("Messages: 100, changed by the fixers: 50, unchanged: 50"));
+        assertThat(report, hasItem("  " + TEST_EXCHANGE_NAME + " usi.submission: 100 (50)"));
+
+        List<String> sampledChanges = report.stream()
+                .filter(line -> line.startsWith("  #"))
+                .collect(Collectors.toList());
+        assertThat(sampledChanges.size(), is(equalTo(SAMPLE_SIZE)));
+        sampledChanges.forEach(line -> assertThat(line, containsString("\"status\":\"[-Draft-]{+Submitted+}\"}}")));
+    }
+
+    private List<String> readReport() throws IOException {
+        return Files.readAllLines(reportFile, StandardCharsets.UTF_8);
+    }
+
+    private static MessageToReplay message(long id, String routingKey, String body, String bodyToReplay) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setId(id);
+        messageProperties.setRoutingKey(routingKey);
+        MessageToReplay message = new MessageToReplay(messageProperties, body);
+        message.setBodyToReplay(bodyToReplay == null ? body : bodyToReplay);
+
+        return message;
+    }
+}
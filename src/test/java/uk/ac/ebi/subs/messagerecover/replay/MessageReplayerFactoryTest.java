@@ -0,0 +1,48 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class MessageReplayerFactoryTest {
+
+    private static final int MAX_RATE_PER_SEC = 20;
+
+    private RecoverProperties recoverProperties;
+    private MessageReplayerFactory messageReplayerFactory;
+
+    @Before
+    public void setup() {
+        recoverProperties = new RecoverProperties();
+        recoverProperties.getReplayProp().getThrottleProp().setMaxRatePerSec(MAX_RATE_PER_SEC);
+        recoverProperties.getReplayProp().getThrottleProp().setBurstSize(1);
+
+        messageReplayerFactory = new MessageReplayerFactory(recoverProperties, mock(RabbitMessagingTemplate.class),
+                new RecoveryMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    public void whenSeveralReplayersAreThrottled_ThenTheyShareTheRateLimit() {
+        MessageReplayer submissionReplayer = messageReplayerFactory.create("submission-exchange");
+        MessageReplayer archiveReplayer = messageReplayerFactory.create("archive-exchange");
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            submissionReplayer.replay(new MessageToReplay("usi.submission.test", "{}"), message -> { });
+            archiveReplayer.replay(new MessageToReplay("usi.archive.test", "{}"), message -> { });
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // the first message uses the burst, the other 5 wait for the shared bucket
+        assertTrue(elapsedMillis >= 5 * 1000 / MAX_RATE_PER_SEC - 10);
+    }
+}
@@ -0,0 +1,79 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+import java.util.Arrays;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueueDepthMonitorTest {
+
+    private static final String TEST_QUEUE_NAME = "usi-submission-queue";
+    private static final String OTHER_TEST_QUEUE_NAME = "usi-sample-queue";
+
+    private RabbitTemplate rabbitTemplate;
+    private Channel channel;
+    private AMQP.Queue.DeclareOk testQueueStatus;
+    private AMQP.Queue.DeclareOk otherTestQueueStatus;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        channel = mock(Channel.class);
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenAnswer(invocation ->
+                ((ChannelCallback<?>) invocation.getArguments()[0]).doInRabbit(channel));
+
+        testQueueStatus = mock(AMQP.Queue.DeclareOk.class);
+        otherTestQueueStatus = mock(AMQP.Queue.DeclareOk.class);
+        when(channel.queueDeclarePassive(TEST_QUEUE_NAME)).thenReturn(testQueueStatus);
+        when(channel.queueDeclarePassive(OTHER_TEST_QUEUE_NAME)).thenReturn(otherTestQueueStatus);
+    }
+
+    @Test
+    public void whenTheQueuesAreBelowTheMaximumDepth_ThenTheReplayIsNotPaused() throws Exception {
+        when(testQueueStatus.getMessageCount()).thenReturn(100);
+        when(otherTestQueueStatus.getMessageCount()).thenReturn(1000);
+
+        createMonitor(1).awaitCapacity();
+
+        verify(channel, times(1)).queueDeclarePassive(TEST_QUEUE_NAME);
+        verify(channel, times(1)).queueDeclarePassive(OTHER_TEST_QUEUE_NAME);
+    }
+
+    @Test
+    public void whenAQueueIsTooDeep_ThenTheReplayIsPausedUntilItIsBelowTheResumeDepth() throws Exception {
+        when(testQueueStatus.getMessageCount()).thenReturn(100);
+        when(otherTestQueueStatus.getMessageCount()).thenReturn(20000, 5000, 900);
+
+        createMonitor(1).awaitCapacity();
+
+        verify(channel, times(3)).queueDeclarePassive(OTHER_TEST_QUEUE_NAME);
+    }
+
+    @Test
+    public void whenTheCheckIntervalHasNotElapsed_ThenTheQueuesAreNotCheckedAgain() throws Exception {
+        when(testQueueStatus.getMessageCount()).thenReturn(100);
+        when(otherTestQueueStatus.getMessageCount()).thenReturn(100);
+        QueueDepthMonitor queueDepthMonitor = createMonitor(60000);
+
+        queueDepthMonitor.awaitCapacity();
+        queueDepthMonitor.awaitCapacity();
+
+        verify(channel, times(1)).queueDeclarePassive(TEST_QUEUE_NAME);
+    }
+
+    private QueueDepthMonitor createMonitor(long checkIntervalInMillis) {
+        return new QueueDepthMonitor(rabbitTemplate, Arrays.asList(TEST_QUEUE_NAME, OTHER_TEST_QUEUE_NAME),
+                10000, 1000, checkIntervalInMillis);
+    }
+}
@@ -0,0 +1,65 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ReplayMessageConverterTest {
+
+    private static final String TEST_BODY = "{\"submission\":{\"status\":\"Draft\"}}";
+
+    private ReplayMessageConverter passthroughConverter;
+    private MessageToReplay message;
+
+    @Before
+    public void setup() {
+        passthroughConverter = new ReplayMessageConverter(mock(RabbitMessagingTemplate.class), true);
+
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setId(1);
+        messageProperties.setRoutingKey("usi.submission");
+        messageProperties.setContentType("application/json");
+        messageProperties.setContentEncoding("UTF-8");
+        messageProperties.setMessageId("message-1");
+        messageProperties.setHeaders(Collections.singletonMap("__TypeId__", "Submission"));
+        message = new MessageToReplay(messageProperties, TEST_BODY);
+        message.setPayload(TEST_BODY.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void whenAnUnchangedMessageIsPassedThrough_ThenItsOriginalBytesAndPropertiesAreSent() {
+        message.setBodyToReplay(message.getBody());
+
+        Message amqpMessage = passthroughConverter.toAmqpMessage(message);
+
+        assertThat(amqpMessage.getBody(), is(sameInstance(message.getPayload())));
+        assertThat(amqpMessage.getMessageProperties().getContentType(), is(equalTo("application/json")));
+        assertThat(amqpMessage.getMessageProperties().getContentEncoding(), is(equalTo("UTF-8")));
+        assertThat(amqpMessage.getMessageProperties().getMessageId(), is(equalTo("message-1")));
+        assertThat(amqpMessage.getMessageProperties().getHeaders().get("__TypeId__"), is(equalTo("Submission")));
+    }
+
+    @Test
+    public void whenAFixedMessageIsPassedThrough_ThenItsNewBodyIsSentWithTheOriginalProperties() {
+        String fixedBody = TEST_BODY.replace("Draft", "Submitted");
+        message.setBodyToReplay(fixedBody);
+
+        Message amqpMessage = passthroughConverter.toAmqpMessage(message);
+
+        assertThat(new String(amqpMessage.getBody(), StandardCharsets.UTF_8), is(equalTo(fixedBody)));
+        assertThat(amqpMessage.getMessageProperties().getContentType(), is(equalTo("application/json")));
+        assertThat(amqpMessage.getMessageProperties().getMessageId(), is(equalTo("message-1")));
+    }
+}
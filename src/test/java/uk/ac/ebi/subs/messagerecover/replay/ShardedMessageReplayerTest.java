@@ -0,0 +1,102 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.junit.Test;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ShardedMessageReplayerTest {
+
+    private static final int MESSAGE_COUNT = 300;
+    private static final List<String> ROUTING_KEYS =
+            Arrays.asList("test.sample.routingKey", "test.study.routingKey", "another.sample.routingKey");
+
+    private List<MessageToReplay> publishedMessages = Collections.synchronizedList(new ArrayList<>());
+    private List<MessageToReplay> deliveredMessages = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void whenReplayingOnSeveralWorkers_ThenTheMessagesOfARoutingKeyKeepTheirOrder() {
+        ShardedMessageReplayer replayer = new ShardedMessageReplayer(
+                RecordingReplayer::new, 4, 10, new ShardKeyExtractor(null));
+
+        List<MessageToReplay> messages = generateMessages();
+        messages.forEach(message -> replayer.replay(message, deliveredMessages::add));
+        replayer.flush();
+        replayer.close();
+
+        assertThat(publishedMessages.size(), is(equalTo(MESSAGE_COUNT)));
+        ROUTING_KEYS.forEach(routingKey ->
+                assertThat(messagesWithRoutingKey(publishedMessages, routingKey),
+                        is(equalTo(messagesWithRoutingKey(messages, routingKey)))));
+        assertThat(deliveredMessages, is(equalTo(messages)));
+    }
+
+    @Test
+    public void whenTheReplayerIsClosed_ThenItsWorkerThreadsAreStopped() {
+        long workerThreadCount = countWorkerThreads();
+        ShardedMessageReplayer replayer = new ShardedMessageReplayer(
+                RecordingReplayer::new, 4, 10, new ShardKeyExtractor(null));
+        replayer.replay(generateMessages().get(0), deliveredMessages::add);
+        replayer.flush();
+
+        assertThat(countWorkerThreads(), is(equalTo(workerThreadCount + 4)));
+
+        replayer.close();
+
+        assertThat(countWorkerThreads(), is(equalTo(workerThreadCount)));
+    }
+
+    @Test
+    public void whenAShardKeyPatternIsSet_ThenTheKeyIsTakenFromTheBody() {
+        MessageToReplay message = new MessageToReplay("test.sample.routingKey", null);
+        message.setBodyToReplay("{\"submissionId\":\"sub-1\",\"alias\":\"a\"}");
+
+        assertThat(new ShardKeyExtractor("\"submissionId\":\"([^\"]+)\"").apply(message), is(equalTo("sub-1")));
+        assertThat(new ShardKeyExtractor(null).apply(message), is(equalTo("test.sample.routingKey")));
+    }
+
+    private List<MessageToReplay> generateMessages() {
+        List<MessageToReplay> messages = new ArrayList<>();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            MessageToReplay message = new MessageToReplay(ROUTING_KEYS.get(i % ROUTING_KEYS.size()), "message " + i);
+            message.setBodyToReplay(message.getBody());
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    private static long countWorkerThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().startsWith("replay-worker-"))
+                .count();
+    }
+
+    private static List<MessageToReplay> messagesWithRoutingKey(List<MessageToReplay> messages, String routingKey) {
+        return messages.stream()
+                .filter(message -> message.getRoutingKey().equals(routingKey))
+                .collect(Collectors.toList());
+    }
+
+    private class RecordingReplayer implements MessageReplayer {
+
+        @Override
+        public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+            publishedMessages.add(message);
+            deliveryCallback.accept(message);
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+public class TokenBucketTest {
+
+    @Test
+    public void whenTheBurstIsUsedUp_ThenTheTokensAreHandedOutWithTheConfiguredRate() throws InterruptedException {
+        TokenBucket tokenBucket = new TokenBucket(100, 10);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 30; i++) {
+            tokenBucket.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(elapsedMillis, greaterThanOrEqualTo(190L));
+    }
+
+    @Test
+    public void whenTheBurstIsNotUsedUp_ThenTheTokensAreHandedOutImmediately() throws InterruptedException {
+        TokenBucket tokenBucket = new TokenBucket(1, 10);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            tokenBucket.acquire();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(elapsedMillis, lessThan(500L));
+    }
+}
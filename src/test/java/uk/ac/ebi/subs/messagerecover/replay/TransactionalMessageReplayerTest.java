@@ -0,0 +1,76 @@
+package uk.ac.ebi.subs.messagerecover.replay;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TransactionalMessageReplayerTest {
+
+    private static final String TEST_EXCHANGE = "usi-1:submission-exchange";
+    private static final String TEST_ROUTING_KEY = "usi.submission.test";
+
+    private RabbitTemplate rabbitTemplate;
+    private Channel channel;
+    private TransactionalMessageReplayer replayer;
+    private List<MessageToReplay> deliveredMessages = new ArrayList<>();
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        channel = mock(Channel.class);
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenAnswer(invocation ->
+                ((ChannelCallback<?>) invocation.getArguments()[0]).doInRabbit(channel));
+
+        replayer = new TransactionalMessageReplayer(rabbitTemplate, new ReplayMessageConverter(null, true),
+                TEST_EXCHANGE, 2);
+    }
+
+    @Test
+    public void whenABatchIsFull_ThenItIsPublishedInOneCommittedTransaction() throws Exception {
+        verify(rabbitTemplate).setChannelTransacted(true);
+
+        replayMessages(3);
+
+        verify(rabbitTemplate, times(1)).execute(any(ChannelCallback.class));
+        verify(channel, times(2)).basicPublish(eq(TEST_EXCHANGE), eq(TEST_ROUTING_KEY), anyBoolean(),
+                any(AMQP.BasicProperties.class), any(byte[].class));
+        verify(channel, times(1)).txCommit();
+        assertThat(deliveredMessages.size(), is(equalTo(2)));
+    }
+
+    @Test
+    public void whenTheReplayerIsFlushed_ThenTheLastBatchIsPublished() throws Exception {
+        replayMessages(3);
+        replayer.flush();
+
+        verify(rabbitTemplate, times(2)).execute(any(ChannelCallback.class));
+        verify(channel, times(2)).txCommit();
+        assertThat(deliveredMessages.size(), is(equalTo(3)));
+        assertThat(deliveredMessages.get(2).getBody(), is(equalTo("{\"id\":2}")));
+    }
+
+    private void replayMessages(int messageCount) {
+        for (int i = 0; i < messageCount; i++) {
+            replayer.replay(new MessageToReplay(TEST_ROUTING_KEY, "{\"id\":" + i + "}"), deliveredMessages::add);
+        }
+    }
+}
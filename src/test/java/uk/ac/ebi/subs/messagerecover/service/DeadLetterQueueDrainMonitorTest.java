@@ -0,0 +1,76 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.QDBManager;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DeadLetterQueueDrainMonitorTest {
+
+    private static final String TEST_RABBIT_QUEUE_NAME = "usi-submission-dead-letter";
+    private static final String TEST_QDB_QUEUE_NAME = "integrationtest__test";
+
+    private AMQP.Queue.DeclareOk rabbitQueueStatus;
+    private QDBManager qdbManager;
+    private RecoverProperties recoverProperties;
+    private DeadLetterQueueDrainMonitor drainMonitor;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        Channel channel = mock(Channel.class);
+        rabbitQueueStatus = mock(AMQP.Queue.DeclareOk.class);
+        when(channel.queueDeclarePassive(TEST_RABBIT_QUEUE_NAME)).thenReturn(rabbitQueueStatus);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.execute(any(ChannelCallback.class))).thenAnswer(invocation ->
+                ((ChannelCallback<?>) invocation.getArguments()[0]).doInRabbit(channel));
+        RabbitMessagingTemplate rabbitMessagingTemplate = mock(RabbitMessagingTemplate.class);
+        when(rabbitMessagingTemplate.getRabbitTemplate()).thenReturn(rabbitTemplate);
+
+        qdbManager = mock(QDBManager.class);
+        recoverProperties = new RecoverProperties();
+        recoverProperties.setDrainCheckIntervalInMs(1);
+        recoverProperties.setInputBindingRemovalTimeoutInSec(1);
+
+        drainMonitor = new DeadLetterQueueDrainMonitor(rabbitMessagingTemplate, qdbManager, recoverProperties);
+    }
+
+    @Test
+    public void whenTheRabbitQueueIsEmptyAndTheQDBQueueStopsGrowing_ThenTheQueueIsDrained() throws Exception {
+        when(rabbitQueueStatus.getMessageCount()).thenReturn(50, 0, 0, 0);
+        when(qdbManager.getQDBQueueMessageCount(TEST_QDB_QUEUE_NAME)).thenReturn(10L, 55L, 60L, 60L);
+
+        assertTrue(drainMonitor.awaitDrained(TEST_RABBIT_QUEUE_NAME, TEST_QDB_QUEUE_NAME));
+        verify(qdbManager, times(4)).getQDBQueueMessageCount(TEST_QDB_QUEUE_NAME);
+    }
+
+    @Test
+    public void whenTheRabbitQueueIsEmptyButTheQDBQueueIsStillGrowing_ThenItKeepsWaiting() throws Exception {
+        when(rabbitQueueStatus.getMessageCount()).thenReturn(0);
+        when(qdbManager.getQDBQueueMessageCount(TEST_QDB_QUEUE_NAME)).thenReturn(10L, 20L, 30L, 30L);
+
+        assertTrue(drainMonitor.awaitDrained(TEST_RABBIT_QUEUE_NAME, TEST_QDB_QUEUE_NAME));
+        verify(qdbManager, times(4)).getQDBQueueMessageCount(TEST_QDB_QUEUE_NAME);
+    }
+
+    @Test
+    public void whenTheRabbitQueueIsNotDrainedInTime_ThenTheTimeoutIsReported() throws Exception {
+        when(rabbitQueueStatus.getMessageCount()).thenReturn(5);
+        when(qdbManager.getQDBQueueMessageCount(TEST_QDB_QUEUE_NAME)).thenReturn(10L);
+
+        assertFalse(drainMonitor.awaitDrained(TEST_RABBIT_QUEUE_NAME, TEST_QDB_QUEUE_NAME));
+    }
+}
@@ -0,0 +1,158 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.amqp.rabbit.connection.Connection;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayer;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DirectDeadLetterQueueRecovererTest {
+
+    private static final String TEST_DEAD_LETTER_QUEUE_NAME = "usi-submission-dead-letter";
+    private static final String TEST_ROUTING_KEY = "usi.submission.test";
+
+    private Channel channel;
+    private AMQP.Queue.DeclareOk queueStatus;
+    private RecoverProperties recoverProperties;
+    private List<MessageToReplay> replayedMessages = new ArrayList<>();
+    private List<byte[]> queuedBodies = new ArrayList<>();
+    private List<AMQP.BasicProperties> queuedProperties = new ArrayList<>();
+    private DirectDeadLetterQueueRecoverer recoverer;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setup() throws Exception {
+        channel = mock(Channel.class);
+        queueStatus = mock(AMQP.Queue.DeclareOk.class);
+        when(channel.queueDeclarePassive(TEST_DEAD_LETTER_QUEUE_NAME)).thenReturn(queueStatus);
+        when(channel.basicConsume(eq(TEST_DEAD_LETTER_QUEUE_NAME), eq(false), any(Consumer.class)))
+                .thenAnswer(invocation -> {
+                    deliverQueuedMessages((Consumer) invocation.getArguments()[2]);
+                    return "test-consumer";
+                });
+        Connection connection = mock(Connection.class);
+        when(connection.createChannel(false)).thenReturn(channel);
+        ConnectionFactory connectionFactory = mock(ConnectionFactory.class);
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+        when(rabbitTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        RabbitMessagingTemplate rabbitMessagingTemplate = mock(RabbitMessagingTemplate.class);
+        when(rabbitMessagingTemplate.getRabbitTemplate()).thenReturn(rabbitTemplate);
+
+        recoverProperties = new RecoverProperties();
+        RecoverProperties.RabbitMQProp rabbitMQProp = new RecoverProperties.RabbitMQProp();
+        rabbitMQProp.setDeadLetterQueueName(TEST_DEAD_LETTER_QUEUE_NAME);
+        recoverProperties.setRabbitMQProp(rabbitMQProp);
+        RecoverProperties.QdbProp qdbProp = new RecoverProperties.QdbProp();
+        qdbProp.setMessageFilter(new RecoverProperties.QdbProp.MessageFilter());
+        recoverProperties.setQdbProp(qdbProp);
+        recoverProperties.getDirectProp().setIdleTimeoutInMs(100);
+
+        MessageReplayer messageReplayer = mock(MessageReplayer.class);
+        doAnswer(invocation -> {
+            MessageToReplay message = (MessageToReplay) invocation.getArguments()[0];
+            replayedMessages.add(message);
+            ((java.util.function.Consumer<MessageToReplay>) invocation.getArguments()[1]).accept(message);
+            return null;
+        }).when(messageReplayer).replay(any(MessageToReplay.class), any());
+        recoverer = new DirectDeadLetterQueueRecoverer(rabbitMessagingTemplate, mock(MessageRecoverService.class),
+                messageReplayer, recoverProperties, new RecoveryMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    public void whenTheReplayedMessagesAreDeadLetteredAgain_ThenOnlyTheQueuedOnesAreReplayed() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            queueMessage("{\"id\":" + i + "}", new AMQP.BasicProperties.Builder().build());
+        }
+        when(queueStatus.getMessageCount()).thenReturn(3);
+
+        long replayedMessageCount = recoverer.recoverMessages();
+
+        assertThat(replayedMessageCount, is(equalTo(3L)));
+        assertThat(replayedMessages.get(2).getBody(), is(equalTo("{\"id\":2}")));
+        assertThat(replayedMessages.get(2).getPayload(), is(nullValue()));
+        verify(channel, times(3)).basicAck(anyLong(), eq(false));
+        verify(channel).basicNack(0, true, true);
+    }
+
+    @Test
+    public void whenThePublisherHasNotSetTheTimestamp_ThenTheTimeOfTheDeadLetteringIsFiltered() throws Exception {
+        recoverProperties.getQdbProp().getMessageFilter().setFrom("2018-03-01T00:00:00Z");
+        queueMessage("{\"id\":0}", deadLetteredProperties("2018-02-01T10:00:00Z"));
+        queueMessage("{\"id\":1}", deadLetteredProperties("2018-03-02T10:00:00Z"));
+        when(queueStatus.getMessageCount()).thenReturn(2);
+
+        long replayedMessageCount = recoverer.recoverMessages();
+
+        assertThat(replayedMessageCount, is(equalTo(1L)));
+        assertThat(replayedMessages.get(0).getBody(), is(equalTo("{\"id\":1}")));
+        assertThat(replayedMessages.get(0).getMessageProperties().getTimestamp(),
+                is(equalTo(String.valueOf(Instant.parse("2018-03-02T10:00:00Z").toEpochMilli()))));
+        verify(channel, times(1)).basicAck(anyLong(), anyBoolean());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenADryRunIsEnabled_ThenTheRecovererIsNotCreated() {
+        recoverProperties.setTransferMode(RecoverProperties.TransferMode.DIRECT);
+        recoverProperties.getDryRunProp().setEnabled(true);
+
+        new DirectDeadLetterQueueRecoverer(mock(RabbitMessagingTemplate.class), mock(MessageRecoverService.class),
+                mock(MessageReplayer.class), recoverProperties, new RecoveryMetrics(new SimpleMeterRegistry()));
+    }
+
+    private void queueMessage(String body, AMQP.BasicProperties properties) {
+        queuedBodies.add(body.getBytes(StandardCharsets.UTF_8));
+        queuedProperties.add(properties);
+    }
+
+    private void deliverQueuedMessages(Consumer consumer) throws Exception {
+        for (int i = 0; i < queuedBodies.size(); i++) {
+            consumer.handleDelivery("test-consumer", new Envelope(i + 1, false, "", TEST_ROUTING_KEY),
+                    queuedProperties.get(i), queuedBodies.get(i));
+        }
+    }
+
+    private static AMQP.BasicProperties deadLetteredProperties(String deadLetteringTime) {
+        Map<String, Object> death = new HashMap<>();
+        death.put("reason", "rejected");
+        death.put("count", 1L);
+        death.put("time", Date.from(Instant.parse(deadLetteringTime)));
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("x-death", Collections.singletonList(death));
+
+        return new AMQP.BasicProperties.Builder().headers(headers).build();
+    }
+}
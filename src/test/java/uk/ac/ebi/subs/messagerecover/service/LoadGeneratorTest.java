@@ -0,0 +1,120 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LoadGeneratorTest {
+
+    private static final String DEAD_LETTER_EXCHANGE_NAME = "usi-1:dead-letter-exchange";
+    private static final int MESSAGE_COUNT = 1000;
+
+    private RabbitTemplate rabbitTemplate;
+    private RecoverProperties recoverProperties;
+    private RecoveryMetrics recoveryMetrics;
+    private LoadGenerator loadGenerator;
+
+    @Before
+    public void setup() {
+        rabbitTemplate = mock(RabbitTemplate.class);
+        RabbitMessagingTemplate rabbitMessagingTemplate = mock(RabbitMessagingTemplate.class);
+        when(rabbitMessagingTemplate.getRabbitTemplate()).thenReturn(rabbitTemplate);
+
+        recoverProperties = new RecoverProperties();
+        RecoverProperties.RabbitMQProp rabbitMQProp = new RecoverProperties.RabbitMQProp();
+        rabbitMQProp.setDeadLetterExchangeName(DEAD_LETTER_EXCHANGE_NAME);
+        recoverProperties.setRabbitMQProp(rabbitMQProp);
+        recoverProperties.getLoadTestProp().setEnabled(true);
+        recoverProperties.getLoadTestProp().setMessageCount(MESSAGE_COUNT);
+
+        recoveryMetrics = new RecoveryMetrics(new SimpleMeterRegistry());
+        loadGenerator = new LoadGenerator(recoverProperties, rabbitMessagingTemplate, recoveryMetrics);
+    }
+
+    @Test
+    public void whenTheMessagesArePublished_ThenTheirSizesAndRoutingKeysFollowTheWeights() {
+        recoverProperties.getLoadTestProp().getPayloadSizes().put("512", 3);
+        recoverProperties.getLoadTestProp().getPayloadSizes().put("4k", 1);
+        recoverProperties.getLoadTestProp().getRoutingKeys().put("usi.submission.loadtest", 1);
+        recoverProperties.getLoadTestProp().getRoutingKeys().put("usi.sample.loadtest", 1);
+
+        loadGenerator.publishMessages();
+
+        ArgumentCaptor<String> routingKeyCaptor = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(MESSAGE_COUNT)).send(eq(DEAD_LETTER_EXCHANGE_NAME), routingKeyCaptor.capture(),
+                messageCaptor.capture());
+
+        Map<Integer, Long> messageCountsBySize = messageCaptor.getAllValues().stream()
+                .collect(Collectors.groupingBy(message -> message.getBody().length, Collectors.counting()));
+        assertThat(messageCountsBySize.keySet().size(), is(equalTo(2)));
+        assertTrue(messageCountsBySize.get(512) > 650 && messageCountsBySize.get(512) < 850);
+        assertTrue(messageCountsBySize.get(4096) > 150 && messageCountsBySize.get(4096) < 350);
+
+        Map<String, Long> messageCountsByRoutingKey = routingKeyCaptor.getAllValues().stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+        assertTrue(messageCountsByRoutingKey.get("usi.submission.loadtest") > 400);
+        assertTrue(messageCountsByRoutingKey.get("usi.sample.loadtest") > 400);
+    }
+
+    @Test
+    public void whenTheRecoveryHasFinished_ThenTheReportContainsTheThroughputAndTheLatencies() {
+        loadGenerator.publishMessages();
+        List<Message> publishedMessages = captureMessages();
+        publishedMessages.forEach(message -> {
+            MessageToReplay messageToReplay =
+                    new MessageToReplay("usi.loadtest.message", new String(message.getBody()));
+            recoveryMetrics.recordFix(messageToReplay, () -> { });
+            recoveryMetrics.recordReplay(messageToReplay,
+                    (replayedMessage, callback) -> callback.accept(replayedMessage), deliveredMessage -> { });
+        });
+
+        String report = loadGenerator.buildReport(MESSAGE_COUNT);
+
+        assertThat(report, containsString("published messages         1000"));
+        assertThat(report, containsString("replayed messages          1000"));
+        assertThat(report, containsString("msg/s"));
+        assertThat(report, containsString("MB/s"));
+        assertThat(report, containsString("replay latency     p50"));
+        assertThat(report, containsString("peak heap"));
+    }
+
+    @Test
+    public void whenASizeHasAUnit_ThenItIsConvertedToBytes() {
+        assertThat(LoadGenerator.parseSize("512"), is(equalTo(512)));
+        assertThat(LoadGenerator.parseSize("16k"), is(equalTo(16 * 1024)));
+        assertThat(LoadGenerator.parseSize("1M"), is(equalTo(1024 * 1024)));
+        assertThat(LoadGenerator.generateBody(1, 16 * 1024).length, is(equalTo(16 * 1024)));
+    }
+
+    private List<Message> captureMessages() {
+        ArgumentCaptor<Message> messageCaptor = ArgumentCaptor.forClass(Message.class);
+        verify(rabbitTemplate, times(MESSAGE_COUNT)).send(eq(DEAD_LETTER_EXCHANGE_NAME), eq("usi.loadtest.message"),
+                messageCaptor.capture());
+
+        return messageCaptor.getAllValues();
+    }
+}
@@ -0,0 +1,86 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.fixer.MessageFixerChain;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.QDBManager;
+import uk.ac.ebi.subs.messagerecover.queuemanager.ReactiveQDBManager;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayer;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class MessageRecoverServiceTest {
+
+    private static final String TEST_RABBIT_QUEUE_NAME = "usi-submission-dead-letter";
+    private static final String TEST_QDB_QUEUE_NAME = "integrationtest__test";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private RecoverProperties recoverProperties;
+    private QDBManager qdbManager;
+
+    @Before
+    public void setup() {
+        recoverProperties = new RecoverProperties();
+        RecoverProperties.RabbitMQProp rabbitMQProp = new RecoverProperties.RabbitMQProp();
+        rabbitMQProp.setDeadLetterQueueName(TEST_RABBIT_QUEUE_NAME);
+        recoverProperties.setRabbitMQProp(rabbitMQProp);
+        RecoverProperties.QdbProp qdbProp = new RecoverProperties.QdbProp();
+        RecoverProperties.QdbProp.Queue queue = new RecoverProperties.QdbProp.Queue();
+        queue.setDeadLetterQueueName("integrationtest");
+        qdbProp.setQueue(queue);
+        recoverProperties.setQdbProp(qdbProp);
+        recoverProperties.getCheckpointProp()
+                .setFile(new File(temporaryFolder.getRoot(), "test.checkpoint").getPath());
+
+        qdbManager = mock(QDBManager.class);
+    }
+
+    @Test
+    public void whenAStoppedRecoveryIsResumed_ThenItsInputBindingIsRemovedWithoutANewTransfer() {
+        RecoveryCheckpoint stoppedCheckpoint = new RecoveryCheckpoint(recoverProperties);
+        stoppedCheckpoint.start(TEST_QDB_QUEUE_NAME);
+        doThrow(new IllegalStateException("The binding has been removed already")).when(qdbManager)
+                .removeInputBindingFromQDBDeadLetterQueue(anyString(), anyString());
+
+        MessageRecoverService recoverService = createRecoverService(new RecoveryCheckpoint(recoverProperties));
+        recoverService.transferMessagesToQDBDeadLetterQueue();
+
+        assertThat(recoverService.getQdbQueueName(), is(equalTo(TEST_QDB_QUEUE_NAME)));
+        verify(qdbManager).removeInputBindingFromQDBDeadLetterQueue(TEST_RABBIT_QUEUE_NAME, TEST_QDB_QUEUE_NAME);
+        verify(qdbManager, never()).createQDBDeadLetterQueue(anyString());
+        verify(qdbManager, never()).addInputBindingToQDBDeadLetterQueue(anyString(), anyString());
+    }
+
+    @Test
+    public void whenANewRecoveryIsStarted_ThenTheInputBindingIsRemovedAfterTheTransfer() {
+        MessageRecoverService recoverService = createRecoverService(new RecoveryCheckpoint(recoverProperties));
+        recoverService.transferMessagesToQDBDeadLetterQueue();
+
+        String qdbQueueName = recoverService.getQdbQueueName();
+        verify(qdbManager).createQDBDeadLetterQueue(qdbQueueName);
+        verify(qdbManager).addInputBindingToQDBDeadLetterQueue(TEST_RABBIT_QUEUE_NAME, qdbQueueName);
+        verify(qdbManager).removeInputBindingFromQDBDeadLetterQueue(TEST_RABBIT_QUEUE_NAME, qdbQueueName);
+    }
+
+    private MessageRecoverService createRecoverService(RecoveryCheckpoint recoveryCheckpoint) {
+        return new MessageRecoverService(recoverProperties, qdbManager, mock(ReactiveQDBManager.class),
+                mock(MessageReplayer.class), mock(MessageFixerChain.class), recoveryCheckpoint,
+                mock(DeadLetterQueueDrainMonitor.class), new RecoveryMetrics(new SimpleMeterRegistry()));
+    }
+}
@@ -0,0 +1,183 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class MessageSpoolTest {
+
+    private static final String TEST_QDB_QUEUE_NAME = "integrationtest__test";
+    private static final int SEGMENT_SIZE_IN_MB = 1;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void whenMessagesAreLargerThanASegment_ThenTheyAreReadBackInOrderFromSeveralSegments() throws Exception {
+        MessageSpool messageSpool = openSpool(TEST_QDB_QUEUE_NAME);
+        String largeBody = String.join("", Collections.nCopies(300 * 1024, "x"));
+        for (long id = 1; id <= 10; id++) {
+            messageSpool.append(message(id, largeBody + id));
+        }
+        messageSpool.append(message(11, String.join("", Collections.nCopies(2 * 1024 * 1024, "y"))));
+        messageSpool.markReadComplete();
+
+        List<MessageToReplay> messages = readAll(messageSpool);
+
+        assertThat(messages.size(), is(equalTo(11)));
+        for (int i = 0; i < 10; i++) {
+            MessageToReplay message = messages.get(i);
+            assertThat(message.getMessageProperties().getId(), is(equalTo(i + 1L)));
+            assertThat(message.getBody(), is(equalTo(largeBody + (i + 1))));
+            assertThat(message.getRoutingKey(), is(equalTo("test.routingKey")));
+            assertThat(message.getMessageProperties().getTimestamp(), is(equalTo("2017-03-01T10:00:00Z")));
+        }
+        assertThat(messages.get(10).getBody().length(), is(equalTo(2 * 1024 * 1024)));
+    }
+
+    @Test
+    public void whenAMessageHasAmqpPropertiesAndPayload_ThenTheyAreReadBack() throws Exception {
+        MessageSpool messageSpool = openSpool(TEST_QDB_QUEUE_NAME);
+        MessageToReplay message = message(1, "{\"id\":1}");
+        message.getMessageProperties().setContentType("application/json");
+        message.getMessageProperties().setMessageId("message-1");
+        message.getMessageProperties().setHeaders(Collections.singletonMap("__TypeId__", "Submission"));
+        message.setPayload(message.getBody().getBytes(StandardCharsets.UTF_8));
+        messageSpool.append(message);
+        messageSpool.markReadComplete();
+
+        MessageToReplay spooledMessage = readAll(messageSpool).get(0);
+
+        assertThat(spooledMessage.getMessageProperties(), is(equalTo(message.getMessageProperties())));
+        assertThat(spooledMessage.getPayload(), is(equalTo(message.getPayload())));
+    }
+
+    @Test
+    public void whenAMessageHasTypedHeaders_ThenTheirTypesAreReadBack() throws Exception {
+        MessageSpool messageSpool = openSpool(TEST_QDB_QUEUE_NAME);
+        Date deadLetteringTime = new Date(1519898400000L);
+        Map<String, Object> death = new HashMap<>();
+        death.put("count", 2L);
+        death.put("time", deadLetteringTime);
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("x-death", Collections.singletonList(death));
+        headers.put("retries", 3);
+        headers.put("signature", new byte[] {1, 2, 3});
+        MessageToReplay message = message(1, "{\"id\":1}");
+        message.getMessageProperties().setHeaders(headers);
+        messageSpool.append(message);
+        messageSpool.markReadComplete();
+
+        Map<String, Object> spooledHeaders = readAll(messageSpool).get(0).getMessageProperties().getHeaders();
+
+        assertThat(spooledHeaders.get("x-death"), is(equalTo(Collections.singletonList(death))));
+        assertThat(spooledHeaders.get("retries"), is(equalTo(3)));
+        assertThat((byte[]) spooledHeaders.get("signature"), is(equalTo(new byte[] {1, 2, 3})));
+    }
+
+    @Test
+    public void whenTheSpoolIsReopened_ThenTheReplayContinuesAfterTheLastDeliveredMessage() throws Exception {
+        MessageSpool messageSpool = openSpool(TEST_QDB_QUEUE_NAME);
+        for (long id = 1; id <= 10; id++) {
+            messageSpool.append(message(id, "message " + id));
+        }
+        messageSpool.messageReplayed(3);
+        messageSpool.messageReplayed(4);
+        messageSpool.saveReplayedId();
+
+        MessageSpool reopenedSpool = openSpool(TEST_QDB_QUEUE_NAME);
+
+        assertFalse(reopenedSpool.isReadComplete());
+        assertThat(reopenedSpool.getResumeFromId(), is(equalTo("11")));
+
+        reopenedSpool.append(message(11, "message 11"));
+        reopenedSpool.markReadComplete();
+        List<MessageToReplay> messages = readAll(reopenedSpool);
+
+        assertThat(messages.size(), is(equalTo(7)));
+        assertThat(messages.get(0).getBody(), is(equalTo("message 5")));
+        assertThat(messages.get(6).getBody(), is(equalTo("message 11")));
+    }
+
+    @Test
+    public void whenTheSpoolBelongsToAnotherQueue_ThenANewSpoolIsStarted() throws Exception {
+        MessageSpool messageSpool = openSpool(TEST_QDB_QUEUE_NAME);
+        messageSpool.append(message(1, "message 1"));
+        messageSpool.markReadComplete();
+
+        MessageSpool newSpool = openSpool("integrationtest__other");
+
+        assertFalse(newSpool.isReadComplete());
+        assertThat(newSpool.getResumeFromId(), is(nullValue()));
+        newSpool.markReadComplete();
+        assertTrue(readAll(newSpool).isEmpty());
+    }
+
+    @Test
+    public void whenTheReaderCatchesUpWithTheAppends_ThenItWaitsForTheNextMessages() throws Exception {
+        MessageSpool messageSpool = openSpool(TEST_QDB_QUEUE_NAME);
+        CompletableFuture<List<MessageToReplay>> readMessages = CompletableFuture.supplyAsync(() -> {
+            try {
+                return readAll(messageSpool);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        for (long id = 1; id <= 1000; id++) {
+            messageSpool.append(message(id, "message " + id));
+        }
+        messageSpool.markReadComplete();
+
+        List<MessageToReplay> messages = readMessages.get(5, TimeUnit.SECONDS);
+        assertThat(messages.size(), is(equalTo(1000)));
+        assertThat(messages.get(999).getBody(), is(equalTo("message 1000")));
+    }
+
+    private MessageSpool openSpool(String qdbQueueName) {
+        Path directory = temporaryFolder.getRoot().toPath().resolve("spool");
+
+        return new MessageSpool(directory, qdbQueueName, SEGMENT_SIZE_IN_MB);
+    }
+
+    private static List<MessageToReplay> readAll(MessageSpool messageSpool) throws InterruptedException {
+        List<MessageToReplay> messages = new ArrayList<>();
+        MessageSpool.Reader reader = messageSpool.reader();
+        MessageToReplay message;
+        while ((message = reader.next()) != null) {
+            messages.add(message);
+        }
+
+        return messages;
+    }
+
+    private static MessageToReplay message(long id, String body) {
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setId(id);
+        messageProperties.setRoutingKey("test.routingKey");
+        messageProperties.setTimestamp("2017-03-01T10:00:00Z");
+        messageProperties.setPayloadSize(body.length());
+
+        return new MessageToReplay(messageProperties, body);
+    }
+}
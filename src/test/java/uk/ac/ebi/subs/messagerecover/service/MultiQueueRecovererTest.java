@@ -0,0 +1,154 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.fixer.MessageFixerChain;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+import uk.ac.ebi.subs.messagerecover.queuemanager.QDBManager;
+import uk.ac.ebi.subs.messagerecover.queuemanager.ReactiveQDBManager;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayer;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MultiQueueRecovererTest {
+
+    private static final int MESSAGE_COUNT_PER_QUEUE = 10;
+
+    private RecoverProperties recoverProperties;
+    private QDBManager qdbManager;
+    private MultiQueueRecoverer multiQueueRecoverer;
+
+    private Map<String, List<MessageToReplay>> replayedMessages = new ConcurrentHashMap<>();
+    private Set<String> closedExchangeNames = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void setup() throws InterruptedException {
+        recoverProperties = new RecoverProperties();
+        RecoverProperties.RabbitMQProp rabbitMQProp = new RecoverProperties.RabbitMQProp();
+        rabbitMQProp.setExchangeName("default-exchange");
+        recoverProperties.setRabbitMQProp(rabbitMQProp);
+        recoverProperties.getPipelineProp().setBufferSize(2);
+        recoverProperties.getMultiQueueProp().setParallelism(2);
+
+        qdbManager = mock(QDBManager.class);
+        doAnswer(invocation -> {
+            String qdbQueueName = (String) invocation.getArguments()[0];
+            Consumer<MessageToReplay> messageConsumer = (Consumer<MessageToReplay>) invocation.getArguments()[2];
+            for (int i = 0; i < MESSAGE_COUNT_PER_QUEUE; i++) {
+                messageConsumer.accept(new MessageToReplay("test.routingKey", qdbQueueName));
+            }
+            return null;
+        }).when(qdbManager).filterMessagesFromQDBDeadLetterQueue(anyString(), anyString(), any(Consumer.class));
+
+        MessageReplayerFactory messageReplayerFactory = mock(MessageReplayerFactory.class);
+        when(messageReplayerFactory.create(anyString())).thenAnswer(invocation ->
+                new RecordingMessageReplayer((String) invocation.getArguments()[0]));
+
+        DeadLetterQueueDrainMonitor drainMonitor = mock(DeadLetterQueueDrainMonitor.class);
+        when(drainMonitor.awaitDrained(anyString(), anyString())).thenReturn(true);
+
+        multiQueueRecoverer = new MultiQueueRecoverer(recoverProperties, qdbManager, mock(ReactiveQDBManager.class),
+                messageReplayerFactory, mock(MessageFixerChain.class), drainMonitor,
+                new RecoveryMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Test
+    public void whenRecoveringSeveralQueues_ThenEachOfThemIsReplayedToItsOwnExchange() {
+        addQueueMapping("submission-dead-letter", "submission-qdb", "submission-exchange");
+        addQueueMapping("archive-dead-letter", null, null);
+        addQueueMapping("validation-dead-letter", "validation-qdb", "validation-exchange");
+
+        long replayedMessageCount = multiQueueRecoverer.recoverMessages();
+
+        assertThat(replayedMessageCount, is(equalTo(3L * MESSAGE_COUNT_PER_QUEUE)));
+        assertReplayedFrom("submission-exchange", "submission-qdb__");
+        assertReplayedFrom("default-exchange", "archive-dead-letter__");
+        assertReplayedFrom("validation-exchange", "validation-qdb__");
+        assertThat(closedExchangeNames, is(equalTo(new HashSet<>(
+                Arrays.asList("submission-exchange", "default-exchange", "validation-exchange")))));
+    }
+
+    @Test
+    public void whenTheRecoveryOfAQueueFails_ThenTheOtherQueuesAreStillRecovered() {
+        addQueueMapping("failing-dead-letter", "failing-qdb", "failing-exchange");
+        addQueueMapping("submission-dead-letter", "submission-qdb", "submission-exchange");
+        when(qdbManager.createQDBDeadLetterQueue(startsWith("failing-qdb")))
+                .thenThrow(new IllegalStateException("QDB is not available"));
+
+        try {
+            multiQueueRecoverer.recoverMessages();
+            fail("The recovery of the failing queue should have failed.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("failing-dead-letter"));
+        }
+
+        assertReplayedFrom("submission-exchange", "submission-qdb__");
+        assertThat(replayedMessages.get("failing-exchange").isEmpty(), is(true));
+        assertThat(closedExchangeNames, is(equalTo(new HashSet<>(
+                Arrays.asList("failing-exchange", "submission-exchange")))));
+    }
+
+    private void addQueueMapping(String deadLetterQueueName, String qdbDeadLetterQueueName, String exchangeName) {
+        RecoverProperties.MultiQueueProp.QueueMapping queueMapping =
+                new RecoverProperties.MultiQueueProp.QueueMapping();
+        queueMapping.setDeadLetterQueueName(deadLetterQueueName);
+        queueMapping.setQdbDeadLetterQueueName(qdbDeadLetterQueueName);
+        queueMapping.setExchangeName(exchangeName);
+        recoverProperties.getMultiQueueProp().getQueueMappings().add(queueMapping);
+    }
+
+    private void assertReplayedFrom(String exchangeName, String qdbQueueNamePrefix) {
+        List<MessageToReplay> messages = replayedMessages.get(exchangeName);
+
+        assertThat(messages.size(), is(equalTo(MESSAGE_COUNT_PER_QUEUE)));
+        messages.forEach(message -> assertThat(message.getBody().startsWith(qdbQueueNamePrefix), is(true)));
+    }
+
+    private class RecordingMessageReplayer implements MessageReplayer {
+        private final String exchangeName;
+        private final List<MessageToReplay> messages = new ArrayList<>();
+
+        private RecordingMessageReplayer(String exchangeName) {
+            this.exchangeName = exchangeName;
+            replayedMessages.put(exchangeName, messages);
+        }
+
+        @Override
+        public void replay(MessageToReplay message, Consumer<MessageToReplay> deliveryCallback) {
+            messages.add(message);
+            deliveryCallback.accept(message);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+            closedExchangeNames.add(exchangeName);
+        }
+    }
+}
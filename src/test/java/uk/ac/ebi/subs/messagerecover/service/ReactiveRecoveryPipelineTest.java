@@ -0,0 +1,119 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReactiveRecoveryPipelineTest {
+
+    private static final int MESSAGE_COUNT = 100;
+
+    private RecoverProperties recoverProperties;
+    private MessageRecoverService recoverService;
+    private ReactiveRecoveryPipeline recoveryPipeline;
+
+    private List<MessageToReplay> replayedMessages = Collections.synchronizedList(new ArrayList<>());
+    private AtomicInteger readMessageCount = new AtomicInteger();
+
+    @Before
+    public void setup() {
+        recoverProperties = new RecoverProperties();
+        recoverProperties.getPipelineProp().setBufferSize(2);
+
+        recoverService = mock(MessageRecoverService.class);
+        recoveryPipeline = new ReactiveRecoveryPipeline(recoverService, recoverProperties,
+                new RecoveryMetrics(new SimpleMeterRegistry()));
+
+        when(recoverService.streamFilterMessagesFromQDBDeadLetterQueue()).thenReturn(
+                Flux.range(0, MESSAGE_COUNT)
+                        .doOnNext(i -> readMessageCount.incrementAndGet())
+                        .map(i -> new MessageToReplay("test.routingKey", "message " + i)));
+
+        doAnswer(invocation -> {
+            MessageToReplay message = (MessageToReplay) invocation.getArguments()[0];
+            message.setBodyToReplay(message.getBody() + " fixed");
+            return null;
+        }).when(recoverService).fixFailedMessage(any(MessageToReplay.class));
+
+        doAnswer(invocation -> replayedMessages.add((MessageToReplay) invocation.getArguments()[0]))
+                .when(recoverService).replayFailedMessage(any(MessageToReplay.class));
+    }
+
+    @Test
+    public void whenRecoveringMessages_ThenAllOfThemAreFixedAndReplayedInOrder() {
+        assertAllMessagesAreFixedAndReplayedInOrder();
+    }
+
+    @Test
+    public void whenMessagesAreFixedInParallel_ThenTheyAreStillReplayedInOrder() {
+        recoverProperties.getPipelineProp().setBufferSize(10);
+        recoverProperties.getPipelineProp().setFixParallelism(4);
+        doAnswer(invocation -> {
+            MessageToReplay message = (MessageToReplay) invocation.getArguments()[0];
+            // the earlier messages take longer to fix, so they are completed out of order
+            Thread.sleep(message.getBody().endsWith("0") ? 5 : 0);
+            message.setBodyToReplay(message.getBody() + " fixed");
+            return null;
+        }).when(recoverService).fixFailedMessage(any(MessageToReplay.class));
+
+        assertAllMessagesAreFixedAndReplayedInOrder();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenFixingAMessageFails_ThenTheRecoveryFailsWithoutFlushing() {
+        doThrow(new RuntimeException("Invalid message"))
+                .when(recoverService).fixFailedMessage(any(MessageToReplay.class));
+
+        try {
+            recoveryPipeline.recoverMessages();
+        } finally {
+            verify(recoverService, never()).flushReplayedMessages();
+        }
+    }
+
+    @Test
+    public void whenTheReplayIsSlow_ThenTheReadingFollowsItsPace() {
+        doAnswer(invocation -> {
+            replayedMessages.add((MessageToReplay) invocation.getArguments()[0]);
+            if (replayedMessages.size() == 1) {
+                Thread.sleep(100);
+                assertTrue(readMessageCount.get() < MESSAGE_COUNT);
+            }
+            return null;
+        }).when(recoverService).replayFailedMessage(any(MessageToReplay.class));
+
+        assertAllMessagesAreFixedAndReplayedInOrder();
+    }
+
+    private void assertAllMessagesAreFixedAndReplayedInOrder() {
+        long replayedMessageCount = recoveryPipeline.recoverMessages();
+
+        assertThat(replayedMessageCount, is(equalTo((long) MESSAGE_COUNT)));
+        assertThat(replayedMessages.size(), is(equalTo(MESSAGE_COUNT)));
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertThat(replayedMessages.get(i).getBodyToReplay(), is(equalTo("message " + i + " fixed")));
+        }
+        verify(recoverService).flushReplayedMessages();
+    }
+}
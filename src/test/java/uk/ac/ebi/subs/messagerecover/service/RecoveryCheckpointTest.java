@@ -0,0 +1,69 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class RecoveryCheckpointTest {
+
+    private static final String TEST_QDB_QUEUE_NAME = "integrationtest__test";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private RecoverProperties recoverProperties;
+    private File checkpointFile;
+
+    @Before
+    public void setup() {
+        checkpointFile = new File(temporaryFolder.getRoot(), "test.checkpoint");
+        recoverProperties = new RecoverProperties();
+        recoverProperties.getCheckpointProp().setFile(checkpointFile.getPath());
+        recoverProperties.getCheckpointProp().setSaveInterval(2);
+    }
+
+    @Test
+    public void whenThereIsNoCheckpointFile_ThenTheRecoveryIsNotResumed() {
+        RecoveryCheckpoint checkpoint = new RecoveryCheckpoint(recoverProperties);
+
+        assertFalse(checkpoint.isResumed());
+        assertThat(checkpoint.getResumeFromId(), is(nullValue()));
+    }
+
+    @Test
+    public void whenARecoveryStopsAfterSavedMessages_ThenTheNextRunResumesAfterTheLastSavedMessage() {
+        RecoveryCheckpoint checkpoint = new RecoveryCheckpoint(recoverProperties);
+        checkpoint.start(TEST_QDB_QUEUE_NAME);
+        checkpoint.messageReplayed(10);
+        checkpoint.messageReplayed(11);
+        checkpoint.messageReplayed(12);
+
+        RecoveryCheckpoint resumedCheckpoint = new RecoveryCheckpoint(recoverProperties);
+
+        assertTrue(resumedCheckpoint.isResumed());
+        assertThat(resumedCheckpoint.getQdbQueueName(), is(equalTo(TEST_QDB_QUEUE_NAME)));
+        assertThat(resumedCheckpoint.getResumeFromId(), is(equalTo("12")));
+    }
+
+    @Test
+    public void whenTheRecoveryIsCompleted_ThenTheCheckpointFileIsRemoved() {
+        RecoveryCheckpoint checkpoint = new RecoveryCheckpoint(recoverProperties);
+        checkpoint.start(TEST_QDB_QUEUE_NAME);
+        checkpoint.messageReplayed(10);
+        checkpoint.complete();
+
+        assertFalse(checkpointFile.exists());
+        assertFalse(new RecoveryCheckpoint(recoverProperties).isResumed());
+    }
+}
@@ -0,0 +1,147 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.amqp.rabbit.core.RabbitMessagingTemplate;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.MetricsReporter;
+import uk.ac.ebi.subs.messagerecover.replay.MessageReplayer;
+import uk.ac.ebi.subs.messagerecover.replay.RenewableMessageReplayer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RecoveryDaemonTest {
+
+    private static final int VERIFY_TIMEOUT_IN_MS = 5000;
+
+    private RecoverProperties recoverProperties;
+    private MessageRecoverService recoverService;
+    private RecoveryPipeline recoveryPipeline;
+    private MetricsReporter metricsReporter;
+    private Queue<MessageReplayer> preparedReplayers = new ConcurrentLinkedQueue<>();
+    private List<MessageReplayer> createdReplayers = new CopyOnWriteArrayList<>();
+    private RenewableMessageReplayer messageReplayer;
+    private RecoveryDaemon recoveryDaemon;
+
+    @Before
+    public void setup() {
+        recoverProperties = new RecoverProperties();
+        recoverProperties.getDaemonProp().setIntervalInSec(0);
+
+        recoverService = mock(MessageRecoverService.class);
+        recoveryPipeline = mock(RecoveryPipeline.class);
+        metricsReporter = mock(MetricsReporter.class);
+        messageReplayer = new RenewableMessageReplayer(() -> {
+            MessageReplayer replayer = preparedReplayers.isEmpty()
+                    ? mock(MessageReplayer.class)
+                    : preparedReplayers.poll();
+            createdReplayers.add(replayer);
+            return replayer;
+        });
+        recoveryDaemon = new RecoveryDaemon(recoverProperties, recoverService, recoveryPipeline,
+                mock(ReactiveRecoveryPipeline.class), mock(DirectDeadLetterQueueRecoverer.class), messageReplayer,
+                mock(RabbitMessagingTemplate.class), metricsReporter);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        recoveryDaemon.destroy();
+    }
+
+    @Test
+    public void whenTheDaemonStarts_ThenTheNewMessagesAreTransferredAndReplayed() {
+        recoveryDaemon.start();
+        verify(metricsReporter, timeout(VERIFY_TIMEOUT_IN_MS)).report();
+
+        InOrder cycle = inOrder(recoverService, recoveryPipeline, metricsReporter);
+        cycle.verify(recoverService).transferNewMessagesToQDBDeadLetterQueue();
+        cycle.verify(recoveryPipeline).recoverMessages();
+        cycle.verify(recoverService).saveRecoveryProgress();
+        cycle.verify(metricsReporter).report();
+    }
+
+    @Test
+    public void whenACycleFails_ThenTheNextTriggerStillRunsACycle() {
+        when(recoveryPipeline.recoverMessages())
+                .thenThrow(new IllegalStateException("QDB is not available"))
+                .thenReturn(1L);
+        recoveryDaemon.start();
+        verify(metricsReporter, timeout(VERIFY_TIMEOUT_IN_MS)).report();
+
+        recoveryDaemon.trigger("test");
+
+        verify(recoveryPipeline, timeout(VERIFY_TIMEOUT_IN_MS).times(2)).recoverMessages();
+        verify(recoverService, timeout(VERIFY_TIMEOUT_IN_MS)).saveRecoveryProgress();
+    }
+
+    @Test
+    public void whenTheReplayerFailsInACycle_ThenTheNextCycleReplaysWithANewReplayer() {
+        MessageReplayer failedReplayer = mock(MessageReplayer.class);
+        doThrow(new IllegalStateException("Error happened replaying the messages")).when(failedReplayer).flush();
+        preparedReplayers.add(failedReplayer);
+        when(recoveryPipeline.recoverMessages()).thenAnswer(invocation -> {
+            messageReplayer.flush();
+            return 1L;
+        });
+        recoveryDaemon.start();
+        verify(metricsReporter, timeout(VERIFY_TIMEOUT_IN_MS)).report();
+
+        recoveryDaemon.trigger("test");
+
+        verify(recoverService, timeout(VERIFY_TIMEOUT_IN_MS)).saveRecoveryProgress();
+        verify(metricsReporter, timeout(VERIFY_TIMEOUT_IN_MS).times(2)).report();
+        assertThat(createdReplayers.size(), is(equalTo(2)));
+        verify(failedReplayer).close();
+        verify(createdReplayers.get(1)).flush();
+        verify(createdReplayers.get(1)).close();
+    }
+
+    @Test
+    public void whenAPostRequestArrives_ThenACycleIsTriggered() throws IOException {
+        int httpPort = findFreePort();
+        recoverProperties.getDaemonProp().setHttpPort(httpPort);
+        recoveryDaemon.start();
+        verify(metricsReporter, timeout(VERIFY_TIMEOUT_IN_MS)).report();
+
+        assertThat(sendRequest(httpPort, "GET"), is(equalTo(405)));
+        assertThat(sendRequest(httpPort, "POST"), is(equalTo(202)));
+
+        verify(recoveryPipeline, timeout(VERIFY_TIMEOUT_IN_MS).times(2)).recoverMessages();
+    }
+
+    private static int sendRequest(int httpPort, String method) throws IOException {
+        HttpURLConnection connection =
+                (HttpURLConnection) new URL("http://localhost:" + httpPort + "/recover").openConnection();
+        connection.setRequestMethod(method);
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package uk.ac.ebi.subs.messagerecover.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.ac.ebi.subs.messagerecover.config.RecoverProperties;
+import uk.ac.ebi.subs.messagerecover.metrics.RecoveryMetrics;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageProperties;
+import uk.ac.ebi.subs.messagerecover.queuemanager.MessageToReplay;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RecoveryPipelineTest {
+
+    private static final int MESSAGE_COUNT = 100;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private RecoverProperties recoverProperties;
+    private MessageRecoverService recoverService;
+    private RecoveryPipeline recoveryPipeline;
+
+    private List<MessageToReplay> replayedMessages = Collections.synchronizedList(new ArrayList<>());
+
+    @Before
+    public void setup() {
+        recoverProperties = new RecoverProperties();
+        recoverProperties.getPipelineProp().setBufferSize(2);
+
+        recoverService = mock(MessageRecoverService.class);
+        recoveryPipeline = new RecoveryPipeline(recoverService, recoverProperties,
+                new RecoveryMetrics(new SimpleMeterRegistry()));
+
+        doAnswer(invocation -> {
+            Consumer<MessageToReplay> messageConsumer = (Consumer<MessageToReplay>) invocation.getArguments()[0];
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                messageConsumer.accept(new MessageToReplay("test.routingKey", "message " + i));
+            }
+            return null;
+        }).when(recoverService).readFilterMessagesFromQDBDaedLetterQueue(any(Consumer.class));
+
+        doAnswer(invocation -> {
+            MessageToReplay message = (MessageToReplay) invocation.getArguments()[0];
+            message.setBodyToReplay(message.getBody() + " fixed");
+            return null;
+        }).when(recoverService).fixFailedMessage(any(MessageToReplay.class));
+
+        doAnswer(invocation -> replayedMessages.add((MessageToReplay) invocation.getArguments()[0]))
+                .when(recoverService).replayFailedMessage(any(MessageToReplay.class));
+    }
+
+    @Test
+    public void whenRecoveringMessages_ThenAllOfThemAreFixedAndReplayedInOrder() {
+        assertAllMessagesAreFixedAndReplayedInOrder();
+    }
+
+    @Test
+    public void whenMessagesAreFixedInParallel_ThenTheyAreStillReplayedInOrder() {
+        recoverProperties.getPipelineProp().setBufferSize(10);
+        recoverProperties.getPipelineProp().setFixParallelism(4);
+
+        assertAllMessagesAreFixedAndReplayedInOrder();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void whenReplayingAMessageFails_ThenTheRecoveryFails() {
+        doThrow(new RuntimeException("Broker is not available"))
+                .when(recoverService).replayFailedMessage(any(MessageToReplay.class));
+
+        recoveryPipeline.recoverMessages();
+    }
+
+    @Test
+    public void whenASpoolIsConfigured_ThenTheMessagesAreReplayedThroughItAndItIsClearedAtTheEnd() {
+        MessageSpool messageSpool = new MessageSpool(temporaryFolder.getRoot().toPath(), "integrationtest__test", 1);
+        when(recoverService.getMessageSpool()).thenReturn(messageSpool);
+        when(recoverService.readFilterMessagesFromQDBDaedLetterQueue(any(MessageSpool.class)))
+                .thenAnswer(invocation -> {
+                    for (int i = 0; i < MESSAGE_COUNT; i++) {
+                        MessageProperties messageProperties = new MessageProperties();
+                        messageProperties.setId(i + 1);
+                        messageProperties.setRoutingKey("test.routingKey");
+                        messageSpool.append(new MessageToReplay(messageProperties, "message " + i));
+                    }
+                    messageSpool.markReadComplete();
+                    return (long) MESSAGE_COUNT;
+                });
+
+        assertAllMessagesAreFixedAndReplayedInOrder();
+        assertFalse(messageSpool.isReadComplete());
+    }
+
+    private void assertAllMessagesAreFixedAndReplayedInOrder() {
+        long replayedMessageCount = recoveryPipeline.recoverMessages();
+
+        assertThat(replayedMessageCount, is(equalTo((long) MESSAGE_COUNT)));
+        assertThat(replayedMessages.size(), is(equalTo(MESSAGE_COUNT)));
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            assertThat(replayedMessages.get(i).getBodyToReplay(), is(equalTo("message " + i + " fixed")));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package uk.ac.ebi.subs.messagerecover.util;
+
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.SystemConfig;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-process AMQP 0-9-1 broker (Apache Qpid Broker-J) for the tests that should not depend on a real RabbitMQ.
+ * The broker keeps its messages in memory. It listens on a free port of localhost and has a single
+ * virtual host called `default`, the user is `guest` with the password `guest`.
+ * Only the standard AMQP features are supported, the RabbitMQ extensions (e.g. the dead letter exchanges
+ * and the x-death header) are not.
+ */
+public class EmbeddedAmqpBroker implements AutoCloseable {
+
+    public static final String VIRTUAL_HOST = "default";
+    public static final String USERNAME = "guest";
+    public static final String PASSWORD = "guest";
+
+    private static final String INITIAL_CONFIGURATION = "embedded-broker.json";
+
+    private final SystemLauncher systemLauncher = new SystemLauncher();
+    private final Path workDirectory;
+    private final int port;
+
+    public EmbeddedAmqpBroker() throws Exception {
+        workDirectory = Files.createTempDirectory("embedded-broker");
+        port = findFreePort();
+
+        Map<String, String> context = new HashMap<>();
+        context.put("qpid.amqp_port", String.valueOf(port));
+        context.put("qpid.work_dir", workDirectory.toString());
+
+        URL initialConfiguration = EmbeddedAmqpBroker.class.getClassLoader().getResource(INITIAL_CONFIGURATION);
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put(SystemConfig.TYPE, "Memory");
+        attributes.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION, initialConfiguration.toExternalForm());
+        attributes.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+        attributes.put(SystemConfig.CONTEXT, context);
+
+        systemLauncher.startup(attributes);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void close() {
+        systemLauncher.shutdown();
+        FileSystemUtils.deleteRecursively(workDirectory.toFile());
+    }
+
+    private static int findFreePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}